@@ -0,0 +1,98 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.codelibs.fess.helper.LanguageHelper;
+import org.codelibs.fess.helper.SystemHelper;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.config.ChatGptConfig;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Document;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Document.DocumentBuilder;
+import org.codelibs.fess.util.ComponentUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the per-document cost of building an index document at upsert time.
+ * Language detection is disabled because it is not part of this plugin.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CreateDocMapBenchmark {
+
+    @Param({ "100", "5000" })
+    public int textLength;
+
+    private ChatGptApiManager chatGptApiManager;
+
+    private ChatGptConfig config;
+
+    private FessConfig fessConfig;
+
+    private List<String> permissionList;
+
+    private Document document;
+
+    @Setup
+    public void setup() {
+        fessConfig = new FessConfig.SimpleImpl() {
+            private static final long serialVersionUID = 1L;
+        };
+        ComponentUtil.setFessConfig(fessConfig);
+        ComponentUtil.register(new SystemHelper(), "systemHelper");
+        ComponentUtil.register(new LanguageHelper() {
+            @Override
+            public void updateDocument(final Map<String, Object> doc) {
+                // nothing
+            }
+        }, "languageHelper");
+        chatGptApiManager = new ChatGptApiManager();
+        config = chatGptApiManager.loadConfig();
+        permissionList = Arrays.asList("Ruser1", "Rrole1");
+        final String text = "Fess is a full text search server. ".repeat(textLength / 35 + 1).substring(0, textLength);
+        document = new DocumentBuilder(text).id("ID1").source("file").sourceId("file.txt").author("taro")
+                .createdAt("2023-06-01T12:30:45Z").build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        ComponentUtil.setFessConfig(null);
+    }
+
+    @Benchmark
+    public Map<String, Object> createDocMap() {
+        return chatGptApiManager.createDocMap(permissionList, "20230601123045000", document, config, fessConfig);
+    }
+}
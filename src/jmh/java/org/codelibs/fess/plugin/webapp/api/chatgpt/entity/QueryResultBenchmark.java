@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.entity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Query.QueryBuilder;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.util.JsonEncoder;
+import org.codelibs.fess.util.ComponentUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures building and serializing query results from search hits.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryResultBenchmark {
+
+    @Param({ "3", "10", "50" })
+    public int topK;
+
+    @Param({ "100", "1000", "5000" })
+    public int textLength;
+
+    private Query query;
+
+    private List<Map<String, Object>> documentItems;
+
+    private QueryResult queryResult;
+
+    private final JsonEncoder encoder = new JsonEncoder();
+
+    @Setup
+    public void setup() {
+        final FessConfig fessConfig = new FessConfig.SimpleImpl() {
+            private static final long serialVersionUID = 1L;
+        };
+        ComponentUtil.setFessConfig(fessConfig);
+        query = new QueryBuilder("fess search").topK(topK).build();
+        final String text = "Fess is a full text search server with \"quotes\" and あ. ".repeat(textLength / 40 + 1).substring(0,
+                textLength);
+        documentItems = new ArrayList<>(topK);
+        for (int i = 0; i < topK; i++) {
+            final Map<String, Object> doc = new HashMap<>();
+            doc.put(fessConfig.getIndexFieldId(), "id" + i);
+            doc.put(fessConfig.getIndexFieldDocId(), "docid" + i);
+            doc.put(fessConfig.getIndexFieldLabel(), Arrays.asList("file"));
+            doc.put(fessConfig.getIndexFieldFilename(), "file" + i + ".txt");
+            doc.put(fessConfig.getIndexFieldUrl(), "https://example.com/file" + i + ".txt");
+            doc.put(fessConfig.getIndexFieldTimestamp(), "2023-06-01T12:30:45.000Z");
+            doc.put(fessConfig.getIndexFieldContent(), text);
+            doc.put("score", 10.0f - i);
+            documentItems.add(doc);
+        }
+        queryResult = QueryResult.create(query, documentItems, 5000);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ComponentUtil.setFessConfig(null);
+    }
+
+    @Benchmark
+    public QueryResult create() {
+        return QueryResult.create(query, documentItems, 5000);
+    }
+
+    @Benchmark
+    public String toJsonString() {
+        return queryResult.toJsonString();
+    }
+
+    @Benchmark
+    public int writeJson() {
+        // reuses the buffer as the query endpoint does within a request
+        encoder.reset();
+        queryResult.writeJson(encoder);
+        return encoder.length();
+    }
+
+    @Benchmark
+    public String createAndToJsonString() {
+        return QueryResult.create(query, documentItems, 5000).toJsonString();
+    }
+}
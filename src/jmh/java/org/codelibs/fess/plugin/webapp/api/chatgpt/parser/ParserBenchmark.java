@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.parser;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Document;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures parsing of request bodies with a varying number of elements.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+    @Param({ "1", "10", "100" })
+    public int size;
+
+    @Param({ "1000" })
+    public int textLength;
+
+    private byte[] queryBody;
+
+    private byte[] documentBody;
+
+    @Setup
+    public void setup() {
+        final StringBuilder queryBuf = new StringBuilder();
+        queryBuf.append("{\"queries\":[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                queryBuf.append(',');
+            }
+            queryBuf.append("{\"query\":\"fess search ").append(i).append("\",\"top_k\":5,\"operator\":\"and\",")
+                    .append("\"filter\":{\"source\":\"file\",\"author\":\"taro\",\"start_date\":\"2023-01-01T00:00:00Z\"}}");
+        }
+        queryBuf.append("]}");
+        queryBody = queryBuf.toString().getBytes(StandardCharsets.UTF_8);
+
+        final String text = "Fess is a full text search server. ".repeat(textLength / 35 + 1).substring(0, textLength);
+        final StringBuilder documentBuf = new StringBuilder();
+        documentBuf.append("{\"documents\":[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                documentBuf.append(',');
+            }
+            documentBuf.append("{\"id\":\"ID").append(i).append("\",\"text\":\"").append(text).append("\",")
+                    .append("\"metadata\":{\"source\":\"email\",\"source_id\":\"SOURCE_ID\",\"url\":\"https://example.com/")
+                    .append(i).append("\",\"author\":\"AUTHOR\",\"created_at\":\"2013-05-05 12:30:45\"}}");
+        }
+        documentBuf.append("]}");
+        documentBody = documentBuf.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Query[] parseQueries() throws Exception {
+        try (QueryParser parser = new QueryParser(new ByteArrayInputStream(queryBody))) {
+            return parser.parse();
+        }
+    }
+
+    @Benchmark
+    public Document[] parseDocuments() throws Exception {
+        try (DocumentParser parser = new DocumentParser(new ByteArrayInputStream(documentBody))) {
+            return parser.parse();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.query;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Query;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Query.QueryBuilder;
+import org.lastaflute.web.util.LaRequestUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures creating a Lucene query parser with and without an operator given by the request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CustomQueryParserBenchmark {
+
+    private CustomQueryParser customQueryParser;
+
+    private HttpServletRequest request;
+
+    @Setup
+    public void setup() {
+        customQueryParser = new CustomQueryParser();
+        final Query query = new QueryBuilder("fess").operator("or").build();
+        // a minimal request that only holds the query attribute
+        request = (HttpServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class }, (proxy, method, args) -> {
+                    if ("getAttribute".equals(method.getName()) && Query.QUERY.equals(args[0])) {
+                        return query;
+                    }
+                    return null;
+                });
+    }
+
+    @TearDown
+    public void tearDown() {
+        LaRequestUtil.setRequest(null);
+    }
+
+    @Benchmark
+    public org.apache.lucene.queryparser.classic.QueryParser withoutRequest() {
+        LaRequestUtil.setRequest(null);
+        return customQueryParser.createQueryParser();
+    }
+
+    @Benchmark
+    public org.apache.lucene.queryparser.classic.QueryParser withQueryOperator() {
+        LaRequestUtil.setRequest(request);
+        return customQueryParser.createQueryParser();
+    }
+}
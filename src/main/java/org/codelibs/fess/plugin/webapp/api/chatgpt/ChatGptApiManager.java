@@ -20,22 +20,42 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+import java.util.function.LongConsumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -44,18 +64,27 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.text.StringEscapeUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.codelibs.core.io.CopyUtil;
+import org.codelibs.core.exception.IORuntimeException;
+import org.codelibs.core.exception.InterruptedRuntimeException;
+import org.codelibs.core.io.InputStreamUtil;
 import org.codelibs.core.io.ResourceUtil;
 import org.codelibs.core.lang.StringUtil;
 import org.codelibs.core.security.MessageDigestUtil;
+import org.codelibs.core.timer.TimeoutManager;
+import org.codelibs.core.timer.TimeoutTask;
 import org.codelibs.fess.Constants;
 import org.codelibs.fess.api.BaseApiManager;
+import org.codelibs.fess.crawler.extractor.Extractor;
+import org.codelibs.fess.crawler.helper.MimeTypeHelper;
 import org.codelibs.fess.entity.FacetInfo;
 import org.codelibs.fess.entity.GeoInfo;
 import org.codelibs.fess.entity.HighlightInfo;
 import org.codelibs.fess.entity.SearchRenderData;
 import org.codelibs.fess.entity.SearchRequestParams;
+import org.codelibs.fess.entity.SearchRequestParams.SearchRequestType;
 import org.codelibs.fess.es.client.SearchEngineClient;
+import org.codelibs.fess.es.client.SearchEngineClient.SearchConditionBuilder;
+import org.codelibs.fess.exception.FessSystemException;
 import org.codelibs.fess.exception.InvalidAccessTokenException;
 import org.codelibs.fess.exception.InvalidQueryException;
 import org.codelibs.fess.exception.ResultOffsetExceededException;
@@ -64,19 +93,72 @@ import org.codelibs.fess.helper.SearchHelper;
 import org.codelibs.fess.helper.SystemHelper;
 import org.codelibs.fess.mylasta.direction.FessConfig;
 import org.codelibs.fess.plugin.webapp.api.chatgpt.auth.PluginAuthenticator;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.cache.QueryResultCache;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.config.ChatGptConfig;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.config.ChatGptConfig.ConfigBuilder;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.DeleteRequest;
 import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Document;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Document.DocumentBuilder;
 import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Document.Metadata;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.EmbeddingEncoding;
 import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Query;
 import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Query.Filter;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Query.Highlight;
 import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.QueryResult;
 import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Source;
 import org.codelibs.fess.plugin.webapp.api.chatgpt.exception.FessChatGptResponseException;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.executor.AsyncRequestExecutor;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.http.CompressingResponse;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.http.InflatingRequest;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.index.BulkIndexer;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.index.BulkIndexer.BulkRequester;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.index.DigestDeduplicator;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.index.PassageSplitter;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.index.UpsertIdCollector;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.job.Job;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.job.JobManager;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.limit.AdaptiveConcurrencyLimiter;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.limit.AdaptiveConcurrencyLimiter.Permit;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.limit.TokenBucket;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.limit.TokenQuota;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.metrics.CountingResponse;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.metrics.PluginMetrics;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.parser.DeleteParser;
 import org.codelibs.fess.plugin.webapp.api.chatgpt.parser.DocumentParser;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.parser.MultipartParser;
 import org.codelibs.fess.plugin.webapp.api.chatgpt.parser.QueryParser;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.query.ReciprocalRankFusion;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.query.SearchCursor;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.resource.StaticResource;
 import org.codelibs.fess.plugin.webapp.api.chatgpt.util.DateUtil;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.util.JsonEncoder;
 import org.codelibs.fess.util.ComponentUtil;
+import org.codelibs.fess.util.QueryResponseList;
+import org.dbflute.optional.OptionalEntity;
 import org.dbflute.optional.OptionalThing;
 import org.lastaflute.web.util.LaResponseUtil;
+import org.opensearch.OpenSearchTimeoutException;
+import org.opensearch.action.ActionFuture;
+import org.opensearch.action.get.MultiGetItemResponse;
+import org.opensearch.action.get.MultiGetRequest;
+import org.opensearch.action.get.MultiGetRequestBuilder;
+import org.opensearch.action.search.MultiSearchRequestBuilder;
+import org.opensearch.action.search.MultiSearchResponse;
+import org.opensearch.action.search.SearchRequestBuilder;
+import org.opensearch.index.query.BoolQueryBuilder;
+import org.opensearch.index.query.QueryBuilder;
+import org.opensearch.index.query.QueryBuilders;
+import org.opensearch.index.query.RangeQueryBuilder;
+import org.opensearch.index.reindex.BulkByScrollResponse;
+import org.opensearch.index.reindex.DeleteByQueryAction;
+import org.opensearch.index.reindex.DeleteByQueryRequest;
+import org.opensearch.search.SearchHit;
+import org.opensearch.search.builder.SearchSourceBuilder;
+import org.opensearch.search.fetch.subphase.FetchSourceContext;
+import org.opensearch.search.fetch.subphase.highlight.HighlightBuilder;
+import org.opensearch.search.fetch.subphase.highlight.HighlightField;
+import org.opensearch.search.sort.SortBuilders;
+import org.opensearch.search.sort.SortOrder;
 
 public class ChatGptApiManager extends BaseApiManager {
 
@@ -108,8 +190,101 @@ public class ChatGptApiManager extends BaseApiManager {
 
     protected static final String FESS_CHATGPT_AI_PLUGIN_NAME_FOR_MODEL = "fess.chatgpt.ai_plugin.name_for_model";
 
+    protected static final String FESS_CHATGPT_ASYNC_ENABLED = "fess.chatgpt.async.enabled";
+
+    protected static final String FESS_CHATGPT_ASYNC_MAX_CONCURRENCY = "fess.chatgpt.async.max_concurrency";
+
+    protected static final String FESS_CHATGPT_ASYNC_TIMEOUT = "fess.chatgpt.async.timeout";
+
+    protected static final String FESS_CHATGPT_CONCURRENCY_LIMIT_ENABLED = "fess.chatgpt.concurrency_limit.enabled";
+
+    protected static final String FESS_CHATGPT_CONCURRENCY_LIMIT_INITIAL = "fess.chatgpt.concurrency_limit.initial";
+
+    protected static final String FESS_CHATGPT_CONCURRENCY_LIMIT_MIN = "fess.chatgpt.concurrency_limit.min";
+
+    protected static final String FESS_CHATGPT_CONCURRENCY_LIMIT_MAX = "fess.chatgpt.concurrency_limit.max";
+
+    protected static final String FESS_CHATGPT_CONCURRENCY_LIMIT_TOLERANCE = "fess.chatgpt.concurrency_limit.tolerance";
+
+    protected static final int SC_TOO_MANY_REQUESTS = 429;
+
+    /** The endpoints that read or write documents. */
+    protected static final Set<String> API_ENDPOINTS = Set.of("query", "upsert", "upsert-file", "delete");
+
+    protected static final String FESS_CHATGPT_RATE_LIMIT_REQUESTS_PER_SECOND = "fess.chatgpt.rate_limit.requests_per_second";
+
+    protected static final String FESS_CHATGPT_RATE_LIMIT_DOCUMENTS_PER_SECOND = "fess.chatgpt.rate_limit.documents_per_second";
+
+    protected static final String FESS_CHATGPT_RATE_LIMIT_QUERY_COST_PER_SECOND = "fess.chatgpt.rate_limit.query_cost_per_second";
+
+    protected static final String FESS_CHATGPT_RATE_LIMIT_BURST_SECONDS = "fess.chatgpt.rate_limit.burst_seconds";
+
+    protected static final String FESS_CHATGPT_RATE_LIMIT_TOP_K_WEIGHT = "fess.chatgpt.rate_limit.top_k_weight";
+
+    protected static final String FESS_CHATGPT_QUERY_MULTI_SEARCH = "fess.chatgpt.query.multi_search";
+
+    protected static final String FESS_CHATGPT_UPSERT_BULK_SIZE = "fess.chatgpt.upsert.bulk.size";
+
+    protected static final String FESS_CHATGPT_UPSERT_BULK_BYTES = "fess.chatgpt.upsert.bulk.bytes";
+
+    protected static final String FESS_CHATGPT_UPSERT_BULK_THREADS = "fess.chatgpt.upsert.bulk.threads";
+
+    protected static final String FESS_CHATGPT_JOB_THREADS = "fess.chatgpt.job.threads";
+
+    protected static final String FESS_CHATGPT_JOB_QUEUE_SIZE = "fess.chatgpt.job.queue_size";
+
+    protected static final String FESS_CHATGPT_JOB_RETENTION = "fess.chatgpt.job.retention";
+
+    protected static final String FESS_CHATGPT_UPSERT_FILE_MAX_SIZE = "fess.chatgpt.upsert_file.max_size";
+
+    protected static final String FESS_CHATGPT_UPSERT_CHUNK_ENABLED = "fess.chatgpt.upsert.chunk.enabled";
+
+    protected static final String FESS_CHATGPT_UPSERT_CHUNK_SIZE = "fess.chatgpt.upsert.chunk.size";
+
+    protected static final String FESS_CHATGPT_UPSERT_CHUNK_OVERLAP = "fess.chatgpt.upsert.chunk.overlap";
+
+    protected static final String FESS_CHATGPT_UPSERT_DIGEST_FIELD = "fess.chatgpt.upsert.digest.field";
+
+    protected static final String FESS_CHATGPT_QUERY_CACHE_SIZE = "fess.chatgpt.query.cache.size";
+
+    protected static final String FESS_CHATGPT_QUERY_CACHE_TTL = "fess.chatgpt.query.cache.ttl";
+
+    protected static final String FESS_CHATGPT_WELL_KNOWN_CACHE_CONTROL = "fess.chatgpt.well_known.cache_control";
+
+    protected static final String FESS_CHATGPT_DOC_MAX_LENGTH = "fess.chatgpt.doc.max_length";
+
+    protected static final String FESS_CHATGPT_CONFIG_RELOAD_INTERVAL = "fess.chatgpt.config.reload_interval";
+
+    protected static final String FESS_CHATGPT_EMBEDDING_FIELD = "fess.chatgpt.embedding.field";
+
+    protected static final String FESS_CHATGPT_EMBEDDING_DIMENSION = "fess.chatgpt.embedding.dimension";
+
+    protected static final String FESS_CHATGPT_QUERY_HYBRID_RANK_WINDOW_SIZE = "fess.chatgpt.query.hybrid.rank_window_size";
+
+    protected static final String FESS_CHATGPT_QUERY_HYBRID_RANK_CONSTANT = "fess.chatgpt.query.hybrid.rank_constant";
+
+    protected static final String FESS_CHATGPT_COMPRESSION_ENABLED = "fess.chatgpt.compression.enabled";
+
+    protected static final String FESS_CHATGPT_COMPRESSION_THRESHOLD = "fess.chatgpt.compression.threshold";
+
+    protected static final String FESS_CHATGPT_COMPRESSION_LEVEL = "fess.chatgpt.compression.level";
+
+    protected static final String FESS_CHATGPT_COMPRESSION_MAX_INFLATED_SIZE = "fess.chatgpt.compression.max_inflated_size";
+
+    protected static final String FESS_CHATGPT_HIGHLIGHT_FRAGMENT_SIZE = "fess.chatgpt.highlight.fragment_size";
+
+    protected static final String FESS_CHATGPT_HIGHLIGHT_NUMBER_OF_FRAGMENTS = "fess.chatgpt.highlight.number_of_fragments";
+
+    protected static final String FESS_CHATGPT_DELETE_BATCH_SIZE = "fess.chatgpt.delete.batch_size";
+
+    protected static final String FESS_CHATGPT_DELETE_REQUESTS_PER_SECOND = "fess.chatgpt.delete.requests_per_second";
+
+    protected static final String FESS_CHATGPT_DELETE_SLICES = "fess.chatgpt.delete.slices";
+
     protected static final String CHATGPT_PERMISSION_LIST = "chatgpt.permissionList";
 
+    protected static final String CHATGPT_TOKEN_QUOTA = "chatgpt.tokenQuota";
+
     protected static final String LOCALHOST_URL = "http://localhost:8080";
 
     protected static final String OPENAPI_YAML_PATH = "/.well-known/openapi.yaml";
@@ -120,10 +295,33 @@ public class ChatGptApiManager extends BaseApiManager {
 
     protected static final String AUTHOR_FIELD = "author";
 
+    protected static final List<String> METADATA_FIELDS = List.of("source", "source_id", "url", "created_at", "author", "document_id");
+
     protected String mimeType = "application/json";
 
     protected PluginAuthenticator pluginAuthenticator;
 
+    protected AsyncRequestExecutor asyncRequestExecutor;
+
+    protected ExecutorService bulkExecutorService;
+
+    protected JobManager jobManager;
+
+    protected Map<String, AdaptiveConcurrencyLimiter> concurrencyLimiterMap = Collections.emptyMap();
+
+    // keyed by the token name, or an empty string if no token is required
+    protected final Map<String, TokenQuota> tokenQuotaMap = new ConcurrentHashMap<>();
+
+    protected QueryResultCache queryResultCache;
+
+    protected volatile Map<String, StaticResource> wellKnownResourceMap = Collections.emptyMap();
+
+    protected volatile ChatGptConfig config;
+
+    protected final PluginMetrics metrics = new PluginMetrics();
+
+    protected TimeoutTask configReloadTask;
+
     public ChatGptApiManager() {
         setPathPrefix("/chatgpt");
     }
@@ -136,31 +334,177 @@ public class ChatGptApiManager extends BaseApiManager {
 
         ComponentUtil.getWebApiManagerFactory().add(this);
         pluginAuthenticator = ComponentUtil.getComponent("pluginAuthenticator");
+        config = loadConfig();
+        if (config.isAsyncEnabled()) {
+            asyncRequestExecutor = new AsyncRequestExecutor(config.getAsyncMaxConcurrency(), config.getAsyncTimeout());
+        }
+        final AtomicInteger bulkThreadCounter = new AtomicInteger();
+        bulkExecutorService = Executors.newFixedThreadPool(config.getUpsertBulkThreads(), r -> {
+            final Thread thread = new Thread(r, "chatgpt-bulk-" + bulkThreadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        jobManager = new JobManager(config.getJobThreads(), config.getJobQueueSize(), config.getJobRetention());
+        if (config.isConcurrencyLimitEnabled()) {
+            concurrencyLimiterMap = createConcurrencyLimiters();
+        }
+        final long queryCacheSize = config.getQueryCacheSize();
+        if (queryCacheSize > 0) {
+            queryResultCache = new QueryResultCache(queryCacheSize, config.getQueryCacheTtl());
+            metrics.register("chatgpt_query_cache_hits_total", "Total number of query cache hits.", "counter",
+                    () -> queryResultCache.getStats().hitCount());
+            metrics.register("chatgpt_query_cache_misses_total", "Total number of query cache misses.", "counter",
+                    () -> queryResultCache.getStats().missCount());
+            metrics.register("chatgpt_query_cache_size", "Number of cached query results.", "gauge", () -> queryResultCache.size());
+        }
+        try {
+            loadWellKnownResources();
+        } catch (final Exception e) {
+            logger.warn("Failed to load .well-known resources. They are loaded on the first request.", e);
+        }
+        ComponentUtil.getSystemHelper().addUpdateConfigListener("ChatGptConfig", () -> {
+            reloadConfig();
+            return "Reloaded ChatGPT plugin settings.";
+        });
+        final long reloadInterval = config.getConfigReloadInterval();
+        if (reloadInterval > 0) {
+            configReloadTask = TimeoutManager.getInstance().addTimeoutTarget(() -> {
+                try {
+                    reloadConfig();
+                } catch (final Exception e) {
+                    logger.warn("Failed to reload settings.", e);
+                }
+            }, (int) reloadInterval, true);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (configReloadTask != null) {
+            configReloadTask.cancel();
+        }
+        if (asyncRequestExecutor != null) {
+            asyncRequestExecutor.close();
+        }
+        if (jobManager != null) {
+            jobManager.close();
+        }
+        if (bulkExecutorService != null) {
+            bulkExecutorService.shutdown();
+        }
     }
 
-    protected String[] getResponseFields() {
-        return System.getProperty(FESS_CHATGPT_RESPONSE_FIELDS, "source,filename,url,timestamp,doc_id,content," + AUTHOR_FIELD).split(",");
+    protected ChatGptConfig loadConfig() {
+        return new ConfigBuilder()//
+                .responseFields(
+                        System.getProperty(FESS_CHATGPT_RESPONSE_FIELDS, "source,filename,url,timestamp,doc_id,content," + AUTHOR_FIELD))//
+                .baseUrl(System.getProperty(FESS_CHATGPT_BASE_URL, "https://github.com/codelibs/fess-webapp-chatgpt"))//
+                .defaultRoles(System.getProperty(FESS_CHATGPT_DEFAULT_ROLES, "Rguest"))//
+                .defaultVirtualHosts(System.getProperty(FESS_CHATGPT_DEFAULT_VIRTUAL_HOSTS, StringUtil.EMPTY))//
+                .defaultHost(System.getProperty(FESS_CHATGPT_DEFAULT_HOST, "chatgpt"))//
+                .defaultConfigId(System.getProperty(FESS_CHATGPT_DEFAULT_CONFIG_ID, "chatgpt"))//
+                .docMaxLength(System.getProperty(FESS_CHATGPT_DOC_MAX_LENGTH, "5000"))//
+                .multiSearchEnabled(System.getProperty(FESS_CHATGPT_QUERY_MULTI_SEARCH, Constants.TRUE))//
+                .upsertBulkSize(System.getProperty(FESS_CHATGPT_UPSERT_BULK_SIZE, "100"))//
+                .upsertBulkBytes(System.getProperty(FESS_CHATGPT_UPSERT_BULK_BYTES, "5242880"))//
+                .upsertBulkThreads(System.getProperty(FESS_CHATGPT_UPSERT_BULK_THREADS, "4"))//
+                .upsertChunkEnabled(System.getProperty(FESS_CHATGPT_UPSERT_CHUNK_ENABLED, Constants.FALSE))//
+                .upsertChunkSize(System.getProperty(FESS_CHATGPT_UPSERT_CHUNK_SIZE, "1000"))//
+                .upsertChunkOverlap(System.getProperty(FESS_CHATGPT_UPSERT_CHUNK_OVERLAP, "100"))//
+                .upsertFileMaxSize(System.getProperty(FESS_CHATGPT_UPSERT_FILE_MAX_SIZE, "536870912"))//
+                .upsertDigestField(System.getProperty(FESS_CHATGPT_UPSERT_DIGEST_FIELD, StringUtil.EMPTY))//
+                .embeddingField(System.getProperty(FESS_CHATGPT_EMBEDDING_FIELD, StringUtil.EMPTY))//
+                .embeddingDimension(System.getProperty(FESS_CHATGPT_EMBEDDING_DIMENSION, "0"))//
+                .hybridRankWindowSize(System.getProperty(FESS_CHATGPT_QUERY_HYBRID_RANK_WINDOW_SIZE, "50"))//
+                .hybridRankConstant(System.getProperty(FESS_CHATGPT_QUERY_HYBRID_RANK_CONSTANT, "60"))//
+                .compressionEnabled(System.getProperty(FESS_CHATGPT_COMPRESSION_ENABLED, Constants.TRUE))//
+                .compressionThreshold(System.getProperty(FESS_CHATGPT_COMPRESSION_THRESHOLD, "1024"))//
+                .compressionLevel(System.getProperty(FESS_CHATGPT_COMPRESSION_LEVEL, "6"))//
+                .compressionMaxInflatedSize(System.getProperty(FESS_CHATGPT_COMPRESSION_MAX_INFLATED_SIZE, "536870912"))//
+                .highlightFragmentSize(System.getProperty(FESS_CHATGPT_HIGHLIGHT_FRAGMENT_SIZE, "100"))//
+                .highlightNumberOfFragments(System.getProperty(FESS_CHATGPT_HIGHLIGHT_NUMBER_OF_FRAGMENTS, "3"))//
+                .deleteBatchSize(System.getProperty(FESS_CHATGPT_DELETE_BATCH_SIZE, "1000"))//
+                .deleteRequestsPerSecond(System.getProperty(FESS_CHATGPT_DELETE_REQUESTS_PER_SECOND, "1000"))//
+                .deleteSlices(System.getProperty(FESS_CHATGPT_DELETE_SLICES, "auto"))//
+                .queryCacheSize(System.getProperty(FESS_CHATGPT_QUERY_CACHE_SIZE, "1000"))//
+                .queryCacheTtl(System.getProperty(FESS_CHATGPT_QUERY_CACHE_TTL, "60000"))//
+                .jobThreads(System.getProperty(FESS_CHATGPT_JOB_THREADS, "2"))//
+                .jobQueueSize(System.getProperty(FESS_CHATGPT_JOB_QUEUE_SIZE, "100"))//
+                .jobRetention(System.getProperty(FESS_CHATGPT_JOB_RETENTION, "3600000"))//
+                .asyncEnabled(System.getProperty(FESS_CHATGPT_ASYNC_ENABLED, Constants.FALSE))//
+                .asyncMaxConcurrency(System.getProperty(FESS_CHATGPT_ASYNC_MAX_CONCURRENCY, "100"))//
+                .asyncTimeout(System.getProperty(FESS_CHATGPT_ASYNC_TIMEOUT, "60000"))//
+                .concurrencyLimitEnabled(System.getProperty(FESS_CHATGPT_CONCURRENCY_LIMIT_ENABLED, Constants.FALSE))//
+                .concurrencyLimitInitial(System.getProperty(FESS_CHATGPT_CONCURRENCY_LIMIT_INITIAL, "20"))//
+                .concurrencyLimitMin(System.getProperty(FESS_CHATGPT_CONCURRENCY_LIMIT_MIN, "2"))//
+                .concurrencyLimitMax(System.getProperty(FESS_CHATGPT_CONCURRENCY_LIMIT_MAX, "200"))//
+                .concurrencyLimitTolerance(System.getProperty(FESS_CHATGPT_CONCURRENCY_LIMIT_TOLERANCE, "2.0"))//
+                .rateLimitTopKWeight(System.getProperty(FESS_CHATGPT_RATE_LIMIT_TOP_K_WEIGHT, "0.1"))//
+                .wellKnownCacheControl(System.getProperty(FESS_CHATGPT_WELL_KNOWN_CACHE_CONTROL, "public, max-age=3600"))//
+                .configReloadInterval(System.getProperty(FESS_CHATGPT_CONFIG_RELOAD_INTERVAL, "60"))//
+                .build();
     }
 
-    protected String getBaseUrl() {
-        return System.getProperty(FESS_CHATGPT_BASE_URL, "https://github.com/codelibs/fess-webapp-chatgpt");
+    protected ChatGptConfig getConfig() {
+        if (config == null) {
+            config = loadConfig();
+        }
+        return config;
     }
 
-    protected List<String> getDefaultRoleList() {
-        return Arrays.stream(System.getProperty(FESS_CHATGPT_DEFAULT_ROLES, "Rguest").split(",")).filter(StringUtil::isNotBlank).toList();
+    /**
+     * Reloads the settings and replaces the snapshot if they have changed, which also invalidates the query cache.
+     */
+    public void reloadConfig() {
+        final ChatGptConfig newConfig = loadConfig();
+        if (!newConfig.equals(config)) {
+            config = newConfig;
+            // cached results were created with the old settings, such as the response fields
+            invalidateQueryCache();
+            if (logger.isInfoEnabled()) {
+                logger.info("Reloaded {}", newConfig);
+            }
+        }
+        reloadTokenQuotas();
+        loadWellKnownResources();
     }
 
-    protected List<String> getDefaultVirtualHostList() {
-        return Arrays.stream(System.getProperty(FESS_CHATGPT_DEFAULT_VIRTUAL_HOSTS, StringUtil.EMPTY).split(","))
-                .filter(StringUtil::isNotBlank).toList();
+    /**
+     * Replaces the quotas whose limits have changed. The other quotas keep their buckets.
+     */
+    protected void reloadTokenQuotas() {
+        tokenQuotaMap.replaceAll((tokenName, quota) -> {
+            final TokenQuota newQuota = createTokenQuota(tokenName);
+            return newQuota.hasSameLimits(quota) ? quota : newQuota;
+        });
     }
 
-    protected String getDefaultHost() {
-        return System.getProperty(FESS_CHATGPT_DEFAULT_HOST, "chatgpt");
+    /**
+     * @param key The property key of the default value.
+     * @param tokenName The token name, which is appended to the key to override the default value for the token.
+     * @param defaultValue The value if no property is set.
+     * @return The setting for the token.
+     */
+    protected String getRateLimitProperty(final String key, final String tokenName, final String defaultValue) {
+        final String value = StringUtil.isNotEmpty(tokenName) ? System.getProperty(key + "." + tokenName) : null;
+        return value != null ? value : System.getProperty(key, defaultValue);
     }
 
-    protected String getDefaultConfigId() {
-        return System.getProperty(FESS_CHATGPT_DEFAULT_CONFIG_ID, "chatgpt");
+    /**
+     * Creates a limiter for each endpoint because queries and upserts have different latencies.
+     */
+    protected Map<String, AdaptiveConcurrencyLimiter> createConcurrencyLimiters() {
+        final ChatGptConfig config = getConfig();
+        final Map<String, AdaptiveConcurrencyLimiter> limiterMap = new HashMap<>();
+        for (final String endpoint : API_ENDPOINTS) {
+            final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(config.getConcurrencyLimitInitial(),
+                    config.getConcurrencyLimitMin(), config.getConcurrencyLimitMax(), config.getConcurrencyLimitTolerance());
+            metrics.register("chatgpt_concurrency_limit", "Current concurrency limit.", "gauge", limiter::getLimit, "endpoint", endpoint);
+            metrics.register("chatgpt_concurrency_in_flight", "Number of requests in flight.", "gauge", limiter::getInFlight, "endpoint",
+                    endpoint);
+            limiterMap.put(endpoint, limiter);
+        }
+        return limiterMap;
     }
 
     @Override
@@ -178,16 +522,10 @@ public class ChatGptApiManager extends BaseApiManager {
             throws IOException, ServletException {
         final String servletPath = request.getServletPath();
         switch (servletPath) {
-        case AI_PLUGIN_JSON_PATH: {
-            processAiPluginJson(response);
-            return;
-        }
-        case LOGO_PNG_PATH: {
-            processLogoPng(response);
-            return;
-        }
+        case AI_PLUGIN_JSON_PATH:
+        case LOGO_PNG_PATH:
         case OPENAPI_YAML_PATH: {
-            processOpenApiYaml(response);
+            processWellKnownResource(request, response, servletPath);
             return;
         }
         default:
@@ -195,17 +533,267 @@ public class ChatGptApiManager extends BaseApiManager {
         }
 
         final String[] values = servletPath.replaceAll("/+", "/").split("/");
+        if (asyncRequestExecutor != null && isAsyncRequest(request, values)
+                && asyncRequestExecutor.execute(request, response, (req, res) -> processRequest(req, res, values))) {
+            return;
+        }
+        processRequest(request, response, values);
+    }
+
+    protected boolean isAsyncRequest(final HttpServletRequest request, final String[] values) {
+        if (values.length > 2 && "post".equalsIgnoreCase(request.getMethod())) {
+            return API_ENDPOINTS.contains(values[2]);
+        }
+        return false;
+    }
+
+    protected void processRequest(final HttpServletRequest request, final HttpServletResponse response, final String[] values) {
+        final long startTime = System.nanoTime();
+        final String endpoint = getEndpointName(request, values);
+        final CountingResponse countingResponse = new CountingResponse(response);
+        final CompressingResponse compressingResponse = createCompressingResponse(request, countingResponse, endpoint);
+        final HttpServletResponse currentResponse = compressingResponse != null ? compressingResponse : countingResponse;
+        final HttpServletResponse previousResponse = LaResponseUtil.getResponse();
+        LaResponseUtil.setResponse(currentResponse);
+        final AdaptiveConcurrencyLimiter limiter = concurrencyLimiterMap.get(endpoint);
+        Permit permit = null;
+        try {
+            if (!authenticate(request, endpoint)) {
+                return;
+            }
+            permit = limiter != null ? limiter.tryAcquire() : null;
+            final String contentEncoding = request.getHeader("Content-Encoding");
+            if (limiter != null && permit == null) {
+                // shed the load at once rather than queueing the request behind slow ones
+                currentResponse.setHeader("Retry-After", Long.toString(limiter.getRetryAfterSeconds()));
+                writeErrorResponse(SC_TOO_MANY_REQUESTS, "Too many requests.", StringUtil.EMPTY_STRINGS);
+            } else if (InflatingRequest.isGzip(contentEncoding)) {
+                processRequest(new InflatingRequest(request, getConfig().getCompressionMaxInflatedSize()), currentResponse, values,
+                        endpoint);
+            } else if (StringUtil.isBlank(contentEncoding) || "identity".equalsIgnoreCase(contentEncoding.trim())) {
+                processRequest(request, currentResponse, values, endpoint);
+            } else {
+                writeErrorResponse(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, "Unsupported Content-Encoding: " + contentEncoding,
+                        StringUtil.EMPTY_STRINGS);
+            }
+        } finally {
+            if (compressingResponse != null) {
+                try {
+                    compressingResponse.finish();
+                } catch (final IOException e) {
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Failed to finish the compressed response.", e);
+                    }
+                }
+            }
+            if (permit != null) {
+                releasePermit(permit, countingResponse.getStatus());
+            }
+            LaResponseUtil.setResponse(previousResponse);
+            metrics.recordRequest(endpoint, countingResponse.getStatus(), System.nanoTime() - startTime, countingResponse.getCount());
+        }
+    }
+
+    /**
+     * Authenticates the request before it takes a permit of the concurrency limit,
+     * so that requests with a missing or invalid token cannot shed legitimate ones.
+     *
+     * @return false if the request is rejected and the error response is written.
+     */
+    protected boolean authenticate(final HttpServletRequest request, final String endpoint) {
+        final long authStartTime = System.nanoTime();
         try {
             request.setAttribute(CHATGPT_PERMISSION_LIST, pluginAuthenticator.authenticate(request));
+            return true;
+        } catch (final InvalidAccessTokenException e) {
+            writeErrorResponse(HttpServletResponse.SC_UNAUTHORIZED, e.getMessage(), e);
+        } catch (final Exception e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to authenticate {}", request.getServletPath(), e);
+            }
+            writeErrorResponse(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage(), e);
+        } finally {
+            // rejected tokens are timed too, since their lookups also hit the index
+            metrics.recordPhase(endpoint, PluginMetrics.PHASE_AUTH, System.nanoTime() - authStartTime);
+        }
+        return false;
+    }
+
+    /**
+     * Samples the latency of a successful request. A server error is taken as a sign of overload,
+     * and a client error says nothing about the load.
+     */
+    protected void releasePermit(final Permit permit, final int status) {
+        if (status >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR) {
+            permit.dropped();
+        } else if (status >= HttpServletResponse.SC_BAD_REQUEST) {
+            permit.ignore();
+        } else {
+            permit.success();
+        }
+    }
+
+    /**
+     * @return The response compressing the body of API responses, or null if the client does not accept gzip.
+     */
+    protected CompressingResponse createCompressingResponse(final HttpServletRequest request, final HttpServletResponse response,
+            final String endpoint) {
+        if (!API_ENDPOINTS.contains(endpoint)) {
+            return null;
+        }
+        final ChatGptConfig config = getConfig();
+        if (!config.isCompressionEnabled() || !StaticResource.acceptsGzip(request.getHeader("Accept-Encoding"))) {
+            return null;
+        }
+        return new CompressingResponse(response, config.getCompressionThreshold(), config.getCompressionLevel());
+    }
+
+    protected String getEndpointName(final HttpServletRequest request, final String[] values) {
+        if (values.length > 2) {
+            switch (values[2]) {
+            case "query":
+            case "upsert-file":
+            case "metrics":
+                return values[2];
+            case "upsert":
+                return values.length > 4 && "status".equals(values[3]) ? "upsert-status" : "upsert";
+            case "delete":
+                return values.length > 4 && "status".equals(values[3]) ? "delete-status" : "delete";
+            default:
+                break;
+            }
+        }
+        return "unknown";
+    }
+
+    protected boolean isRateLimited(final String endpoint) {
+        return API_ENDPOINTS.contains(endpoint);
+    }
+
+    /**
+     * @return The quota of the access token of the authenticated request.
+     */
+    protected TokenQuota getTokenQuota(final HttpServletRequest request) {
+        if (request.getAttribute(CHATGPT_TOKEN_QUOTA) instanceof final TokenQuota quota) {
+            return quota;
+        }
+        final String tokenName =
+                request.getAttribute(PluginAuthenticator.TOKEN_NAME) instanceof final String name ? name : StringUtil.EMPTY;
+        final TokenQuota quota = tokenQuotaMap.computeIfAbsent(tokenName, this::createTokenQuota);
+        request.setAttribute(CHATGPT_TOKEN_QUOTA, quota);
+        return quota;
+    }
+
+    protected TokenQuota createTokenQuota(final String tokenName) {
+        return new TokenQuota(createTokenBucket(FESS_CHATGPT_RATE_LIMIT_REQUESTS_PER_SECOND, tokenName),
+                createTokenBucket(FESS_CHATGPT_RATE_LIMIT_DOCUMENTS_PER_SECOND, tokenName),
+                createTokenBucket(FESS_CHATGPT_RATE_LIMIT_QUERY_COST_PER_SECOND, tokenName));
+    }
+
+    /**
+     * @return The bucket, or null if the rate is not limited.
+     */
+    protected TokenBucket createTokenBucket(final String key, final String tokenName) {
+        final double rate = Double.parseDouble(getRateLimitProperty(key, tokenName, "0"));
+        if (rate <= 0) {
+            return null;
+        }
+        final double burstSeconds = Double.parseDouble(getRateLimitProperty(FESS_CHATGPT_RATE_LIMIT_BURST_SECONDS, tokenName, "1"));
+        return new TokenBucket(rate, rate * burstSeconds);
+    }
+
+    /**
+     * Takes the cost from the bucket and sets the remaining quota to the response headers.
+     *
+     * @param bucket The bucket, or null if the rate is not limited.
+     * @param cost The number of tokens to take.
+     * @param name The suffix of the response headers.
+     * @param response The response.
+     */
+    protected void consumeQuota(final TokenBucket bucket, final double cost, final String name, final HttpServletResponse response) {
+        if (bucket == null) {
+            return;
+        }
+        final boolean consumed = bucket.tryConsume(cost);
+        response.setHeader("X-RateLimit-Limit-" + name, Long.toString(bucket.getCapacity()));
+        response.setHeader("X-RateLimit-Remaining-" + name, Long.toString(bucket.getRemaining()));
+        if (!consumed) {
+            response.setHeader("Retry-After", Long.toString(bucket.getRetryAfterSeconds(cost)));
+            throw new FessChatGptResponseException(SC_TOO_MANY_REQUESTS, "Rate limit exceeded: " + name.toLowerCase(Locale.ROOT),
+                    StringUtil.EMPTY_STRINGS);
+        }
+    }
+
+    /**
+     * Takes the cost from the bucket, waiting until the tokens are available, for a job that runs in the background.
+     */
+    protected void awaitQuota(final TokenBucket bucket, final double cost) {
+        if (bucket == null) {
+            return;
+        }
+        final long waitTime = bucket.reserve(cost);
+        if (waitTime > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitTime);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedRuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * @return The cost of the queries, where a query costs 1 plus its top_k multiplied by the weight.
+     */
+    protected double getQueryCost(final Query[] queries) {
+        final double topKWeight = getConfig().getRateLimitTopKWeight();
+        double cost = 0;
+        for (final Query query : queries) {
+            cost += 1 + query.getTopK() * topKWeight;
+        }
+        return cost;
+    }
+
+    protected void processRequest(final HttpServletRequest request, final HttpServletResponse response, final String[] values,
+            final String endpoint) {
+        final String servletPath = request.getServletPath();
+        try {
+            if (isRateLimited(endpoint)) {
+                consumeQuota(getTokenQuota(request).getRequestBucket(), 1, "Requests", response);
+            }
 
             if (values.length > 2) {
                 switch (values[2]) {
+                case "metrics": {
+                    if ("get".equalsIgnoreCase(request.getMethod())) {
+                        processMetrics(response);
+                        return;
+                    }
+                    break;
+                }
+                case "delete": {
+                    if (values.length > 4 && "status".equals(values[3]) && "get".equalsIgnoreCase(request.getMethod())) {
+                        processJobStatus(request, response, values[4]);
+                        return;
+                    }
+                    if ("post".equalsIgnoreCase(request.getMethod())) {
+                        processDelete(request, response);
+                        return;
+                    }
+                    break;
+                }
                 case "upsert-file": {
-                    // TODO
-                    writeErrorResponse(HttpServletResponse.SC_NOT_FOUND, "Your request is not supported.", StringUtil.EMPTY_STRINGS);
-                    return;
+                    if ("post".equalsIgnoreCase(request.getMethod())) {
+                        processUpsertFile(request, response);
+                        return;
+                    }
+                    break;
                 }
                 case "upsert": {
+                    if (values.length > 4 && "status".equals(values[3]) && "get".equalsIgnoreCase(request.getMethod())) {
+                        processJobStatus(request, response, values[4]);
+                        return;
+                    }
                     if ("post".equalsIgnoreCase(request.getMethod())) {
                         processUpsert(request, response);
                         return;
@@ -222,9 +810,6 @@ public class ChatGptApiManager extends BaseApiManager {
                     break;
                 }
             }
-        } catch (final InvalidAccessTokenException e) {
-            writeErrorResponse(HttpServletResponse.SC_UNAUTHORIZED, e.getMessage(), e);
-            return;
         } catch (final FessChatGptResponseException e) {
             writeErrorResponse(e.getStatus(), e.getMessage(), e.getLocations());
             return;
@@ -239,7 +824,46 @@ public class ChatGptApiManager extends BaseApiManager {
         writeErrorResponse(HttpServletResponse.SC_NOT_FOUND, "Cannot understand your request.", StringUtil.EMPTY_STRINGS);
     }
 
-    protected void processOpenApiYaml(final HttpServletResponse response) {
+    protected void processWellKnownResource(final HttpServletRequest request, final HttpServletResponse response, final String path) {
+        try {
+            StaticResource resource = wellKnownResourceMap.get(path);
+            if (resource == null) {
+                loadWellKnownResources();
+                resource = wellKnownResourceMap.get(path);
+            }
+            resource.write(request, response);
+        } catch (final Exception e) {
+            writeErrorResponse(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Cannot process your request.", e);
+        }
+    }
+
+    /**
+     * Renders the .well-known resources. A resource keeps its Last-Modified while its content is unchanged.
+     */
+    protected void loadWellKnownResources() {
+        final long now = System.currentTimeMillis();
+        final String cacheControl = getConfig().getWellKnownCacheControl();
+        final Map<String, StaticResource> resourceMap = new HashMap<>();
+        final BiConsumer<String, StaticResource> putResource = (path, resource) -> {
+            final StaticResource current = wellKnownResourceMap.get(path);
+            if (current != null && current.getEtag().equals(resource.getEtag())) {
+                resourceMap.put(path, current);
+            } else {
+                resourceMap.put(path, resource);
+            }
+        };
+        putResource.accept(AI_PLUGIN_JSON_PATH, new StaticResource(renderAiPluginJson().getBytes(Constants.CHARSET_UTF_8),
+                "application/json; charset=UTF-8", now, cacheControl));
+        putResource.accept(OPENAPI_YAML_PATH, new StaticResource(renderOpenApiYaml().getBytes(Constants.CHARSET_UTF_8),
+                "application/x-yaml; charset=UTF-8", now, cacheControl));
+        putResource.accept(LOGO_PNG_PATH, new StaticResource(readLogoPng(), "image/png", now, cacheControl));
+        wellKnownResourceMap = resourceMap;
+        if (logger.isDebugEnabled()) {
+            logger.debug("Loaded .well-known resources: {}", resourceMap.keySet());
+        }
+    }
+
+    protected String renderOpenApiYaml() {
         final StringBuilder buf = new StringBuilder(8000);
         try (final BufferedReader br = new BufferedReader(
                 new InputStreamReader(ResourceUtil.getResourceAsStream("/chatgpt/openapi.yaml"), Constants.CHARSET_UTF_8))) {
@@ -247,16 +871,14 @@ public class ChatGptApiManager extends BaseApiManager {
             while ((line = br.readLine()) != null) {
                 buf.append(line).append('\n');
             }
-
-            final String url = System.getProperty(FESS_CHATGPT_OPENAPI_URL, LOCALHOST_URL + "/chatgpt");
-            response.setStatus(HttpServletResponse.SC_OK);
-            write(buf.toString().replace(LOCALHOST_URL + "/chatgpt", url), "application/x-yaml", Constants.UTF_8);
-        } catch (final Exception e) {
-            writeErrorResponse(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Cannot process your request.", e);
+        } catch (final IOException e) {
+            throw new IORuntimeException(e);
         }
+        final String url = System.getProperty(FESS_CHATGPT_OPENAPI_URL, LOCALHOST_URL + "/chatgpt");
+        return buf.toString().replace(LOCALHOST_URL + "/chatgpt", url);
     }
 
-    protected void processAiPluginJson(final HttpServletResponse response) {
+    protected String renderAiPluginJson() {
         final StringBuilder buf = new StringBuilder(8000);
         try (final BufferedReader br = new BufferedReader(
                 new InputStreamReader(ResourceUtil.getResourceAsStream("/chatgpt/ai-plugin.json"), Constants.CHARSET_UTF_8))) {
@@ -264,12 +886,10 @@ public class ChatGptApiManager extends BaseApiManager {
             while ((line = br.readLine()) != null) {
                 buf.append(line).append('\n');
             }
-
-            response.setStatus(HttpServletResponse.SC_OK);
-            write(updateAiPluginContent(buf), "application/json", Constants.UTF_8);
-        } catch (final Exception e) {
-            writeErrorResponse(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Cannot process your request.", e);
+        } catch (final IOException e) {
+            throw new IORuntimeException(e);
         }
+        return updateAiPluginContent(buf);
     }
 
     protected String updateAiPluginContent(final StringBuilder contentBuf) {
@@ -300,82 +920,634 @@ public class ChatGptApiManager extends BaseApiManager {
         return content;
     }
 
-    protected void processLogoPng(final HttpServletResponse response) {
-        try (InputStream in = new BufferedInputStream(ResourceUtil.getResourceAsStream("/chatgpt/logo.png"));
-                OutputStream out = response.getOutputStream()) {
-            CopyUtil.copy(in, out);
+    protected byte[] readLogoPng() {
+        try (InputStream in = ResourceUtil.getResourceAsStream("/chatgpt/logo.png")) {
+            return InputStreamUtil.getBytes(in);
+        } catch (final IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    protected void processUpsert(final HttpServletRequest request, final HttpServletResponse response) {
+        if (Constants.TRUE.equalsIgnoreCase(request.getParameter("async"))) {
+            processUpsertJob(request, response);
+            return;
+        }
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final ChatGptConfig config = getConfig();
+        final String segment = createSegment();
+        try (DocumentParser parser = new DocumentParser(request.getInputStream())) {
+            final List<String> permissionList = getPermissionList(request);
+            final TokenBucket documentBucket = getTokenQuota(request).getDocumentBucket();
+            final UpsertIdCollector idCollector = new UpsertIdCollector();
+            final DigestDeduplicator deduplicator = createDigestDeduplicator(config, fessConfig);
+            final AtomicReference<FessChatGptResponseException> exceeded = new AtomicReference<>();
+            createBulkIndexer(config, fessConfig, deduplicator).index(parser.stream().takeWhile(d -> {
+                // the documents before the exceeded one are indexed and reported, and the rest are not read
+                try {
+                    consumeQuota(documentBucket, 1, "Documents", response);
+                    return true;
+                } catch (final FessChatGptResponseException e) {
+                    exceeded.set(e);
+                    return false;
+                }
+            }).flatMap(d -> createDocMaps(permissionList, segment, d, config, fessConfig, idCollector).stream()).iterator());
+            deleteStalePassages(idCollector, config, fessConfig);
+            refundUnchanged(documentBucket, idCollector, deduplicator);
+            if (exceeded.get() != null) {
+                response.setStatus(exceeded.get().getStatus());
+                write(createUpsertResponse(idCollector, deduplicator, exceeded.get().getMessage()), mimeType, Constants.UTF_8);
+            } else {
+                response.setStatus(HttpServletResponse.SC_OK);
+                write(createUpsertResponse(idCollector, deduplicator), mimeType, Constants.UTF_8);
+            }
+        } catch (final FessChatGptResponseException e) {
+            writeErrorResponse(e.getStatus(), e.getMessage(), e.getLocations());
         } catch (final Exception e) {
             writeErrorResponse(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Cannot process your request.", e);
+        } finally {
+            invalidateQueryCache();
         }
     }
 
-    protected void processUpsert(final HttpServletRequest request, final HttpServletResponse response) {
+    protected String createSegment() {
+        return new SimpleDateFormat("yyyyMMddHHmmssSSS").format(ComponentUtil.getSystemHelper().getCurrentTime());
+    }
+
+    protected void processUpsertJob(final HttpServletRequest request, final HttpServletResponse response) {
+        final List<String> permissionList = getPermissionList(request);
+        final TokenBucket documentBucket = getTokenQuota(request).getDocumentBucket();
+        final Path bodyFile;
+        try {
+            // the request body is not available after the response is sent
+            bodyFile = Files.createTempFile("chatgpt-upsert-", ".json");
+        } catch (final IOException e) {
+            writeErrorResponse(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Cannot process your request.", e);
+            return;
+        }
+        boolean submitted = false;
+        try {
+            try (InputStream in = request.getInputStream()) {
+                Files.copy(in, bodyFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            final Job job = jobManager.submit("upsert", permissionList, j -> {
+                try {
+                    runUpsertJob(j, bodyFile, permissionList, documentBucket);
+                } finally {
+                    deleteTempFile(bodyFile);
+                }
+            });
+            submitted = true;
+            response.setStatus(HttpServletResponse.SC_ACCEPTED);
+            response.setHeader("Location", pathPrefix + "/upsert/status/" + job.getId());
+            write(job.toJsonString(), mimeType, Constants.UTF_8);
+        } catch (final RejectedExecutionException e) {
+            writeErrorResponse(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many jobs are running.", StringUtil.EMPTY_STRINGS);
+        } catch (final FessChatGptResponseException e) {
+            writeErrorResponse(e.getStatus(), e.getMessage(), e.getLocations());
+        } catch (final Exception e) {
+            writeErrorResponse(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Cannot process your request.", e);
+        } finally {
+            if (!submitted) {
+                deleteTempFile(bodyFile);
+            }
+        }
+    }
+
+    /**
+     * Indexes the documents of a job. The job waits for the document quota rather than failing.
+     */
+    protected void runUpsertJob(final Job job, final Path bodyFile, final List<String> permissionList, final TokenBucket documentBucket) {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final String segment = createSegment();
+        final String index = fessConfig.getIndexDocumentUpdateIndex();
         final SearchEngineClient client = ComponentUtil.getSearchEngineClient();
+        final ChatGptConfig config = getConfig();
+        final Set<String> failedIdSet = ConcurrentHashMap.newKeySet();
+        final BulkRequester requester = docList -> {
+            try {
+                return client.addAll(index, docList, (doc, builder) -> {});
+            } catch (final Exception e) {
+                logger.warn("Failed to index {} documents in job {}", docList.size(), job.getId(), e);
+                // bulk requests contain passages, so failures are reported by their document ids
+                docList.stream().map(doc -> {
+                    final String parentId = (String) doc.get(fessConfig.getIndexFieldParentId());
+                    return StringUtil.isBlank(parentId) ? (String) doc.get(fessConfig.getIndexFieldId()) : parentId;
+                }).filter(failedIdSet::add).forEach(id -> job.addFailure(-1, id, e.getMessage()));
+                return StringUtil.EMPTY_STRINGS;
+            }
+        };
+        final DigestDeduplicator deduplicator = createDigestDeduplicator(config, fessConfig);
+        final BulkIndexer bulkIndexer = new BulkIndexer(config.getUpsertBulkSize(), config.getUpsertBulkBytes(), bulkExecutorService,
+                deduplicator.wrap(measureBulkRequester(requester)));
+        final AtomicInteger position = new AtomicInteger();
+        final UpsertIdCollector idCollector = new UpsertIdCollector();
+        try (DocumentParser parser = new DocumentParser(Files.newInputStream(bodyFile))) {
+            bulkIndexer.index(parser.stream().flatMap(document -> {
+                final int pos = position.getAndIncrement();
+                awaitQuota(documentBucket, 1);
+                try {
+                    return createDocMaps(permissionList, segment, document, config, fessConfig, idCollector).stream();
+                } catch (final Exception e) {
+                    job.addFailure(pos, document.getId(), e.getMessage());
+                    return Stream.empty();
+                }
+            }).iterator());
+            deleteStalePassages(idCollector, config, fessConfig);
+            refundUnchanged(documentBucket, idCollector, deduplicator);
+            job.addSucceeded(idCollector.getIdList().stream().filter(id -> !failedIdSet.contains(id)).toArray(String[]::new));
+            job.addUnchanged(deduplicator.getUnchangedIdList(idCollector));
+        } catch (final Exception e) {
+            logger.warn("Failed to process the job: {}", job.getId(), e);
+            job.fail(e.getMessage());
+        } finally {
+            invalidateQueryCache();
+        }
+    }
+
+    protected void processUpsertFile(final HttpServletRequest request, final HttpServletResponse response) {
+        final String boundary = MultipartParser.getBoundary(request.getContentType());
+        if (boundary == null) {
+            writeErrorResponse(HttpServletResponse.SC_BAD_REQUEST, "multipart/form-data is required.", StringUtil.EMPTY_STRINGS);
+            return;
+        }
         final FessConfig fessConfig = ComponentUtil.getFessConfig();
-        final String segment = new SimpleDateFormat("yyyyMMddHHmmssSSS").format(ComponentUtil.getSystemHelper().getCurrentTime());
-        try (DocumentParser parser = new DocumentParser(request.getInputStream())) {
-            final Document[] documents = parser.parse();
-            final List<Map<String, Object>> docList =
-                    Arrays.stream(documents).map(d -> createDocMap(request, segment, d, fessConfig)).toList();
-            final String[] docIds = client.addAll(fessConfig.getIndexDocumentUpdateIndex(), docList, (doc, builder) -> {});
-            final StringBuilder buf = new StringBuilder(1000);
-            buf.append("{\"ids\":[")
-                    .append(Arrays.stream(docIds).map(s -> "\"" + StringEscapeUtils.escapeJson(s) + "\"").collect(Collectors.joining(",")))
-                    .append("]}");
+        final String segment = createSegment();
+        final ChatGptConfig config = getConfig();
+        try (MultipartParser parser = new MultipartParser(request.getInputStream(), boundary, config.getUpsertFileMaxSize())) {
+            final List<MultipartParser.Part> partList = parser.parse();
+            final MultipartParser.Part filePart =
+                    partList.stream().filter(p -> "file".equals(p.getName()) && p.getFile() != null).findFirst().orElse(null);
+            if (filePart == null) {
+                writeErrorResponse(HttpServletResponse.SC_BAD_REQUEST, "No file is uploaded.", StringUtil.EMPTY_STRINGS);
+                return;
+            }
+            final TokenBucket documentBucket = getTokenQuota(request).getDocumentBucket();
+            consumeQuota(documentBucket, 1, "Documents", response);
+            final String text = extractText(filePart.getFile(), filePart.getFilename());
+            if (StringUtil.isBlank(text)) {
+                writeErrorResponse(HttpServletResponse.SC_BAD_REQUEST, "Cannot extract text from the file.", StringUtil.EMPTY_STRINGS);
+                return;
+            }
+            final DocumentBuilder builder = new DocumentBuilder(text);
+            partList.stream().filter(p -> "metadata".equals(p.getName()) && StringUtil.isNotBlank(p.getValue())).findFirst()
+                    .ifPresent(p -> DocumentParser.parseMetadata(p.getValue(), builder));
+            final Document document = builder.build();
+            if (document.getMetadata().getSource() == Source.UNKNOWN) {
+                builder.source(Source.FILE.name());
+            }
+            if (StringUtil.isBlank(document.getMetadata().getSourceId())) {
+                builder.sourceId(filePart.getFilename());
+            }
+            final UpsertIdCollector idCollector = new UpsertIdCollector();
+            final DigestDeduplicator deduplicator = createDigestDeduplicator(config, fessConfig);
+            createBulkIndexer(config, fessConfig, deduplicator)
+                    .index(createDocMaps(getPermissionList(request), segment, document, config, fessConfig, idCollector).iterator());
+            deleteStalePassages(idCollector, config, fessConfig);
+            refundUnchanged(documentBucket, idCollector, deduplicator);
             response.setStatus(HttpServletResponse.SC_OK);
-            write(buf.toString(), mimeType, Constants.UTF_8);
+            write(createUpsertResponse(idCollector, deduplicator), mimeType, Constants.UTF_8);
+        } catch (final FessChatGptResponseException e) {
+            writeErrorResponse(e.getStatus(), e.getMessage(), e.getLocations());
         } catch (final Exception e) {
             writeErrorResponse(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Cannot process your request.", e);
+        } finally {
+            invalidateQueryCache();
         }
     }
 
-    protected Map<String, Object> createDocMap(final HttpServletRequest request, final String segment, final Document document,
-            final FessConfig fessConfig) {
-        final SystemHelper systemHelper = ComponentUtil.getSystemHelper();
-        final Map<String, Object> docMap = new HashMap<>();
-        docMap.put(fessConfig.getIndexFieldContent(), document.getText());
-        final Metadata metadata = document.getMetadata();
-        if (metadata.getSource() != Source.UNKNOWN) {
-            docMap.put(fessConfig.getIndexFieldLabel(), Arrays.asList(metadata.getSource().name()));
+    protected String extractText(final Path file, final String filename) throws IOException {
+        final MimeTypeHelper mimeTypeHelper = ComponentUtil.getComponent("mimeTypeHelper");
+        final String mimeType;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            mimeType = mimeTypeHelper.getContentType(in, filename);
         }
-        if (StringUtil.isNotBlank(metadata.getSourceId())) {
-            docMap.put(fessConfig.getIndexFieldFilename(), metadata.getSourceId());
-        } else {
-            docMap.put(fessConfig.getIndexFieldFilename(), StringUtil.EMPTY);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Extract text from {} ({})", filename, mimeType);
         }
-        if (StringUtil.isNotBlank(metadata.getUrl())) {
-            docMap.put(fessConfig.getIndexFieldUrl(), metadata.getUrl());
-        } else {
-            final String digest = MessageDigestUtil.digest(ComponentUtil.getFessConfig().getIndexIdDigestAlgorithm(), document.getText());
-            docMap.put(fessConfig.getIndexFieldUrl(), getBaseUrl() + "?" + digest);
+        Extractor extractor = ComponentUtil.getExtractorFactory().getExtractor(mimeType);
+        if (extractor == null) {
+            extractor = ComponentUtil.getComponent("tikaExtractor");
         }
-        if (StringUtil.isNotBlank(metadata.getAuthor())) {
-            docMap.put(AUTHOR_FIELD, metadata.getAuthor());
+        final Map<String, String> params = new HashMap<>();
+        params.put("resourceName", filename);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            return extractor.getText(in, params).getContent();
         }
-        docMap.put(fessConfig.getIndexFieldContent(), document.getText());
-        final String createdAt =
+    }
+
+    protected void processJobStatus(final HttpServletRequest request, final HttpServletResponse response, final String jobId) {
+        final Job job = jobManager.getJob(jobId, getPermissionList(request));
+        if (job == null) {
+            writeErrorResponse(HttpServletResponse.SC_NOT_FOUND, "The job is not found.", StringUtil.EMPTY_STRINGS);
+            return;
+        }
+        response.setStatus(HttpServletResponse.SC_OK);
+        write(job.toJsonString(), mimeType, Constants.UTF_8);
+    }
+
+    protected void processDelete(final HttpServletRequest request, final HttpServletResponse response) {
+        final DeleteRequest deleteRequest;
+        try (DeleteParser parser = new DeleteParser(request.getInputStream())) {
+            deleteRequest = parser.parse();
+        } catch (final FessChatGptResponseException e) {
+            writeErrorResponse(e.getStatus(), e.getMessage(), e.getLocations());
+            return;
+        } catch (final Exception e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to parse a delete request.", e);
+            }
+            writeErrorResponse(HttpServletResponse.SC_BAD_REQUEST, "Cannot understand your request.", StringUtil.EMPTY_STRINGS);
+            return;
+        }
+        if (deleteRequest.isEmpty()) {
+            writeErrorResponse(HttpServletResponse.SC_BAD_REQUEST, "ids, filter or delete_all is required.", StringUtil.EMPTY_STRINGS);
+            return;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Delete documents: {}", deleteRequest);
+        }
+
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final ChatGptConfig config = getConfig();
+        if (Constants.TRUE.equalsIgnoreCase(request.getParameter("async"))) {
+            try {
+                final Job job = jobManager.submit("delete", getPermissionList(request), j -> {
+                    try {
+                        deleteDocuments(deleteRequest, config, fessConfig, null, j::addSucceeded);
+                    } finally {
+                        invalidateQueryCache();
+                    }
+                });
+                response.setStatus(HttpServletResponse.SC_ACCEPTED);
+                response.setHeader("Location", pathPrefix + "/delete/status/" + job.getId());
+                write(job.toJsonString(), mimeType, Constants.UTF_8);
+            } catch (final RejectedExecutionException e) {
+                writeErrorResponse(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many jobs are running.", StringUtil.EMPTY_STRINGS);
+            }
+            return;
+        }
+
+        try {
+            final long deleted = deleteDocuments(deleteRequest, config, fessConfig, fessConfig.getIndexDeleteTimeout(), count -> {});
+            response.setStatus(HttpServletResponse.SC_OK);
+            write("{\"success\":true,\"deleted\":" + deleted + "}", mimeType, Constants.UTF_8);
+        } catch (final OpenSearchTimeoutException e) {
+            // the delete keeps running in the cluster
+            writeErrorResponse(HttpServletResponse.SC_GATEWAY_TIMEOUT, "The delete did not finish in time. Use async=true for it.", e);
+        } catch (final Exception e) {
+            writeErrorResponse(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Cannot process your request.", e);
+        } finally {
+            invalidateQueryCache();
+        }
+    }
+
+    /**
+     * Deletes documents by ids, a filter or delete_all with delete-by-query.
+     * Only documents upserted through this plugin are matched, so crawled documents are never deleted.
+     *
+     * @param deleteRequest The delete request.
+     * @param config The settings.
+     * @param fessConfig The Fess settings.
+     * @param timeout The time to wait for each delete, or null to wait until it finishes.
+     * @param progress Receives the number of documents deleted by each step.
+     * @return The number of deleted documents.
+     */
+    protected long deleteDocuments(final DeleteRequest deleteRequest, final ChatGptConfig config, final FessConfig fessConfig,
+            final String timeout, final LongConsumer progress) {
+        if (deleteRequest.isDeleteAll()) {
+            final long deleted = deleteByQuery(createDeleteQuery(config, fessConfig), config, fessConfig, timeout);
+            progress.accept(deleted);
+            return deleted;
+        }
+        long deleted = 0;
+        final List<String> idList = deleteRequest.getIdList();
+        final int batchSize = config.getDeleteBatchSize() > 0 ? config.getDeleteBatchSize() : 1;
+        for (int i = 0; i < idList.size(); i += batchSize) {
+            final long count = deleteByIds(idList.subList(i, Math.min(i + batchSize, idList.size())), config, fessConfig, timeout);
+            progress.accept(count);
+            deleted += count;
+        }
+        final Filter filter = deleteRequest.getFilter();
+        if (filter != null && !filter.isEmpty()) {
+            final long count = deleteByQuery(createDeleteQuery(filter, config, fessConfig), config, fessConfig, timeout);
+            progress.accept(count);
+            deleted += count;
+        }
+        return deleted;
+    }
+
+    protected long deleteByIds(final List<String> idList, final ChatGptConfig config, final FessConfig fessConfig,
+            final String timeout) {
+        return deleteByQuery(createDeleteQuery(idList, config, fessConfig), config, fessConfig, timeout);
+    }
+
+    /**
+     * @return The query matching documents with the ids, and their passages, upserted through this plugin.
+     */
+    protected BoolQueryBuilder createDeleteQuery(final List<String> idList, final ChatGptConfig config, final FessConfig fessConfig) {
+        final String[] ids = idList.toArray(n -> new String[n]);
+        final BoolQueryBuilder boolQuery = createDeleteQuery(config, fessConfig);
+        if (config.isUpsertChunkEnabled()) {
+            // passages of split documents have the id of the original document as the parent id
+            return boolQuery.should(QueryBuilders.idsQuery().addIds(ids))
+                    .should(QueryBuilders.termsQuery(fessConfig.getIndexFieldParentId(), ids))
+                    .minimumShouldMatch(1);
+        }
+        return boolQuery.filter(QueryBuilders.idsQuery().addIds(ids));
+    }
+
+    /**
+     * Runs a delete-by-query throttled by requests per second and split into slices,
+     * so that a large purge does not compete with searches for the whole cluster.
+     *
+     * @param timeout The time to wait for the delete, or null to wait until it finishes.
+     */
+    protected long deleteByQuery(final QueryBuilder query, final ChatGptConfig config, final FessConfig fessConfig, final String timeout) {
+        final SearchEngineClient client = ComponentUtil.getSearchEngineClient();
+        final DeleteByQueryRequest request = new DeleteByQueryRequest(fessConfig.getIndexDocumentUpdateIndex()).setQuery(query)
+                .setBatchSize(config.getDeleteBatchSize())
+                .setRequestsPerSecond(config.getDeleteRequestsPerSecond())
+                .setSlices(config.getDeleteSlices())
+                .setAbortOnVersionConflict(false)
+                .setRefresh(true);
+        final ActionFuture<BulkByScrollResponse> future = client.execute(DeleteByQueryAction.INSTANCE, request);
+        final BulkByScrollResponse response = timeout != null ? future.actionGet(timeout) : future.actionGet();
+        if (!response.getBulkFailures().isEmpty() || !response.getSearchFailures().isEmpty()) {
+            logger.warn("Failed to delete some documents: bulkFailures={}, searchFailures={}", response.getBulkFailures().size(),
+                    response.getSearchFailures().size());
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Deleted {} documents by query in {}", response.getDeleted(), response.getTook());
+        }
+        return response.getDeleted();
+    }
+
+    /**
+     * @return The query matching documents upserted through this plugin.
+     */
+    protected BoolQueryBuilder createDeleteQuery(final ChatGptConfig config, final FessConfig fessConfig) {
+        return QueryBuilders.boolQuery().filter(QueryBuilders.termQuery(fessConfig.getIndexFieldConfigId(), config.getDefaultConfigId()));
+    }
+
+    protected BoolQueryBuilder createDeleteQuery(final Filter filter, final ChatGptConfig config, final FessConfig fessConfig) {
+        final BoolQueryBuilder boolQuery = createDeleteQuery(config, fessConfig);
+        if (StringUtil.isNotBlank(filter.getDocumentId())) {
+            boolQuery.filter(QueryBuilders.termQuery(fessConfig.getIndexFieldDocId(), filter.getDocumentId()));
+        }
+        if (filter.getSource() != Source.UNKNOWN) {
+            boolQuery.filter(QueryBuilders.termQuery(fessConfig.getIndexFieldLabel(), filter.getSource().name()));
+        }
+        if (StringUtil.isNotBlank(filter.getSourceId())) {
+            boolQuery.filter(QueryBuilders.termQuery(fessConfig.getIndexFieldFilename(), filter.getSourceId()));
+        }
+        if (StringUtil.isNotBlank(filter.getAuthor())) {
+            boolQuery.filter(QueryBuilders.termQuery(AUTHOR_FIELD, filter.getAuthor()));
+        }
+        final RangeQueryBuilder rangeQuery = createDateRangeQuery(filter, fessConfig);
+        if (rangeQuery != null) {
+            boolQuery.filter(rangeQuery);
+        }
+        return boolQuery;
+    }
+
+    /**
+     * @return The range query on the timestamp for the dates of the filter, or null if no date is set.
+     */
+    protected RangeQueryBuilder createDateRangeQuery(final Filter filter, final FessConfig fessConfig) {
+        final String startDate = filter.getStartDate();
+        final String endDate = filter.getEndDate();
+        if (StringUtil.isBlank(startDate) && StringUtil.isBlank(endDate)) {
+            return null;
+        }
+        final RangeQueryBuilder rangeQuery = QueryBuilders.rangeQuery(fessConfig.getIndexFieldTimestamp());
+        if (StringUtil.isNotBlank(startDate)) {
+            rangeQuery.gte(startDate);
+        }
+        if (StringUtil.isNotBlank(endDate)) {
+            rangeQuery.lte(endDate);
+        }
+        return rangeQuery;
+    }
+
+    protected void deleteTempFile(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (final IOException e) {
+            logger.warn("Failed to delete {}", path, e);
+        }
+    }
+
+    protected BulkIndexer createBulkIndexer(final ChatGptConfig config, final FessConfig fessConfig,
+            final DigestDeduplicator deduplicator) {
+        final SearchEngineClient client = ComponentUtil.getSearchEngineClient();
+        final String index = fessConfig.getIndexDocumentUpdateIndex();
+        return new BulkIndexer(config.getUpsertBulkSize(), config.getUpsertBulkBytes(), bulkExecutorService,
+                deduplicator.wrap(measureBulkRequester(docList -> client.addAll(index, docList, (doc, builder) -> {}))));
+    }
+
+    protected DigestDeduplicator createDigestDeduplicator(final ChatGptConfig config, final FessConfig fessConfig) {
+        final String digestField = config.getUpsertDigestField();
+        return new DigestDeduplicator(fessConfig.getIndexFieldId(), digestField, idList -> loadDigests(idList, digestField, fessConfig));
+    }
+
+    /**
+     * Gets the digests of indexed documents with a multi-get request.
+     *
+     * @return The digests by document id. Documents without a digest are not included.
+     */
+    protected Map<String, String> loadDigests(final List<String> idList, final String digestField, final FessConfig fessConfig) {
+        final SearchEngineClient client = ComponentUtil.getSearchEngineClient();
+        final String index = fessConfig.getIndexDocumentUpdateIndex();
+        final FetchSourceContext fetchSourceContext = new FetchSourceContext(true, new String[] { digestField }, null);
+        final MultiGetRequestBuilder multiGetRequestBuilder = client.prepareMultiGet();
+        idList.forEach(id -> multiGetRequestBuilder.add(new MultiGetRequest.Item(index, id).fetchSourceContext(fetchSourceContext)));
+        final Map<String, String> digestMap = new HashMap<>();
+        for (final MultiGetItemResponse item : multiGetRequestBuilder.execute().actionGet(fessConfig.getIndexSearchTimeout())
+                .getResponses()) {
+            if (!item.isFailed() && item.getResponse().isExists()
+                    && item.getResponse().getSourceAsMap().get(digestField) instanceof final String digest) {
+                digestMap.put(item.getId(), digest);
+            }
+        }
+        return digestMap;
+    }
+
+    protected String createUpsertResponse(final UpsertIdCollector idCollector, final DigestDeduplicator deduplicator) {
+        return createUpsertResponse(idCollector, deduplicator, null);
+    }
+
+    /**
+     * @param message The error message of a partial success, or null.
+     */
+    protected String createUpsertResponse(final UpsertIdCollector idCollector, final DigestDeduplicator deduplicator,
+            final String message) {
+        final StringBuilder buf = new StringBuilder(1000);
+        buf.append("{\"ids\":[")
+                .append(idCollector.getIdList().stream().map(s -> "\"" + StringEscapeUtils.escapeJson(s) + "\"")
+                        .collect(Collectors.joining(",")))
+                .append("],\"unchanged\":[")
+                .append(deduplicator.getUnchangedIdList(idCollector).stream().map(s -> "\"" + StringEscapeUtils.escapeJson(s) + "\"")
+                        .collect(Collectors.joining(",")))
+                .append(']');
+        if (message != null) {
+            buf.append(",\"detail\":[{\"msg\":\"").append(StringEscapeUtils.escapeJson(message)).append("\"}]");
+        }
+        buf.append('}');
+        return buf.toString();
+    }
+
+    /**
+     * Gives back the document quota taken by unchanged documents, which are not written.
+     */
+    protected void refundUnchanged(final TokenBucket documentBucket, final UpsertIdCollector idCollector,
+            final DigestDeduplicator deduplicator) {
+        if (documentBucket != null) {
+            documentBucket.refund(deduplicator.getUnchangedIdList(idCollector).size());
+        }
+    }
+
+    protected BulkRequester measureBulkRequester(final BulkRequester requester) {
+        return docList -> {
+            final long startTime = System.nanoTime();
+            boolean failed = true;
+            try {
+                final String[] ids = requester.request(docList);
+                failed = false;
+                return ids;
+            } finally {
+                metrics.recordBulk(docList.size(), System.nanoTime() - startTime, failed);
+            }
+        };
+    }
+
+    protected List<Map<String, Object>> createDocMaps(final List<String> permissionList, final String segment, final Document document,
+            final ChatGptConfig config, final FessConfig fessConfig, final UpsertIdCollector idCollector) {
+        final List<Map<String, Object>> docMapList = splitDocument(document, config, fessConfig).stream()
+                .map(d -> createDocMap(permissionList, segment, d, config, fessConfig)).toList();
+        docMapList.forEach(docMap -> idCollector.add((String) docMap.get(fessConfig.getIndexFieldId()),
+                (String) docMap.get(fessConfig.getIndexFieldParentId())));
+        return docMapList;
+    }
+
+    protected List<Document> splitDocument(final Document document, final ChatGptConfig config, final FessConfig fessConfig) {
+        final int chunkSize = config.getUpsertChunkSize();
+        // a client-supplied embedding represents the whole text, so the document is not split
+        if (!config.isUpsertChunkEnabled() || document.getText().length() <= chunkSize || document.getEmbedding() != null) {
+            return Collections.singletonList(document);
+        }
+        final List<String> passageList = new PassageSplitter(chunkSize, config.getUpsertChunkOverlap()).split(document.getText());
+        if (passageList.size() <= 1) {
+            return Collections.singletonList(document);
+        }
+        final String parentId;
+        if (StringUtil.isNotBlank(document.getId())) {
+            parentId = document.getId();
+        } else {
+            final String url = document.getMetadata().getUrl();
+            parentId = MessageDigestUtil.digest(fessConfig.getIndexIdDigestAlgorithm(),
+                    StringUtil.isNotBlank(url) ? url : document.getText());
+        }
+        final List<Document> documentList = new ArrayList<>(passageList.size());
+        for (int i = 0; i < passageList.size(); i++) {
+            documentList.add(new DocumentBuilder(passageList.get(i)).id(parentId + "-" + i).parentId(parentId)
+                    .metadata(document.getMetadata()).build());
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Split {} into {} passages", parentId, documentList.size());
+        }
+        return documentList;
+    }
+
+    /**
+     * Deletes passages of upserted documents that were not indexed this time,
+     * such as the tail of a document that became shorter.
+     */
+    protected void deleteStalePassages(final UpsertIdCollector idCollector, final ChatGptConfig config, final FessConfig fessConfig) {
+        if (!config.isUpsertChunkEnabled() || idCollector.getPassageIdMap().isEmpty()) {
+            return;
+        }
+        final SearchEngineClient client = ComponentUtil.getSearchEngineClient();
+        final String index = fessConfig.getIndexDocumentUpdateIndex();
+        final List<Map.Entry<String, List<String>>> entryList = new ArrayList<>(idCollector.getPassageIdMap().entrySet());
+        final int batchSize = config.getUpsertBulkSize();
+        for (int i = 0; i < entryList.size(); i += batchSize) {
+            final List<Map.Entry<String, List<String>>> batch = entryList.subList(i, Math.min(i + batchSize, entryList.size()));
+            final List<String> parentIdList = batch.stream().map(Map.Entry::getKey).toList();
+            final String[] passageIds = batch.stream().flatMap(e -> e.getValue().stream()).toArray(n -> new String[n]);
+            // limited to the documents of this plugin, as deletes by id are
+            final long count = client.deleteByQuery(index,
+                    createDeleteQuery(parentIdList, config, fessConfig).mustNot(QueryBuilders.idsQuery().addIds(passageIds)));
+            if (logger.isDebugEnabled()) {
+                logger.debug("Deleted {} stale passages", count);
+            }
+        }
+    }
+
+    protected List<String> getPermissionList(final HttpServletRequest request) {
+        if (request.getAttribute(CHATGPT_PERMISSION_LIST) instanceof final List<?> permissionList) {
+            return permissionList.stream().map(Object::toString).toList();
+        }
+        return Collections.emptyList();
+    }
+
+    protected Map<String, Object> createDocMap(final List<String> permissionList, final String segment, final Document document,
+            final ChatGptConfig config, final FessConfig fessConfig) {
+        final SystemHelper systemHelper = ComponentUtil.getSystemHelper();
+        final Map<String, Object> docMap = new HashMap<>();
+        docMap.put(fessConfig.getIndexFieldContent(), document.getText());
+        final Metadata metadata = document.getMetadata();
+        if (metadata.getSource() != Source.UNKNOWN) {
+            docMap.put(fessConfig.getIndexFieldLabel(), Arrays.asList(metadata.getSource().name()));
+        }
+        if (StringUtil.isNotBlank(metadata.getSourceId())) {
+            docMap.put(fessConfig.getIndexFieldFilename(), metadata.getSourceId());
+        } else {
+            docMap.put(fessConfig.getIndexFieldFilename(), StringUtil.EMPTY);
+        }
+        if (StringUtil.isNotBlank(metadata.getUrl())) {
+            docMap.put(fessConfig.getIndexFieldUrl(), metadata.getUrl());
+        } else {
+            final String digest = MessageDigestUtil.digest(fessConfig.getIndexIdDigestAlgorithm(), document.getText());
+            docMap.put(fessConfig.getIndexFieldUrl(), config.getBaseUrl() + "?" + digest);
+        }
+        if (StringUtil.isNotBlank(metadata.getAuthor())) {
+            docMap.put(AUTHOR_FIELD, metadata.getAuthor());
+        }
+        docMap.put(fessConfig.getIndexFieldContent(), document.getText());
+        final String createdAt =
                 DateUtil.format(metadata.getCreatedAt() != 0L ? metadata.getCreatedAt() : systemHelper.getCurrentTime().getTime());
         docMap.put(fessConfig.getIndexFieldTimestamp(), createdAt);
         docMap.put(fessConfig.getIndexFieldLastModified(), createdAt);
         docMap.put(fessConfig.getIndexFieldCreated(), createdAt);
 
-        final List<String> roleList = new ArrayList<>();
-        if (request.getAttribute(CHATGPT_PERMISSION_LIST) instanceof final List<?> permissionList) {
-            permissionList.stream().map(Object::toString).forEach(roleList::add);
-        }
-        roleList.addAll(getDefaultRoleList());
+        final List<String> defaultRoleList = config.getDefaultRoleList();
+        final List<String> roleList = new ArrayList<>(permissionList.size() + defaultRoleList.size());
+        roleList.addAll(permissionList);
+        roleList.addAll(defaultRoleList);
         docMap.put(fessConfig.getIndexFieldRole(), roleList);
+        if (config.getUpsertDigestField() != null) {
+            docMap.put(config.getUpsertDigestField(), createDigest(document, roleList, config, fessConfig));
+        }
         docMap.put(fessConfig.getIndexFieldFiletype(), "txt");
         docMap.put(fessConfig.getIndexFieldClickCount(), 0);
         docMap.put(fessConfig.getIndexFieldTitle(), StringUtil.EMPTY);
         docMap.put(fessConfig.getIndexFieldSegment(), segment);
         docMap.put(fessConfig.getIndexFieldDigest(), StringUtil.EMPTY);
-        docMap.put(fessConfig.getIndexFieldHost(), getDefaultHost());
+        docMap.put(fessConfig.getIndexFieldHost(), config.getDefaultHost());
         docMap.put(fessConfig.getIndexFieldFavoriteCount(), 0);
         docMap.put(fessConfig.getIndexFieldContentLength(), document.getText().length());
-        docMap.put(fessConfig.getIndexFieldVirtualHost(), getDefaultVirtualHostList());
-        docMap.put(fessConfig.getIndexFieldConfigId(), getDefaultConfigId());
-        docMap.put(fessConfig.getIndexFieldParentId(), StringUtil.EMPTY);
+        docMap.put(fessConfig.getIndexFieldVirtualHost(), config.getDefaultVirtualHostList());
+        docMap.put(fessConfig.getIndexFieldConfigId(), config.getDefaultConfigId());
+        if (StringUtil.isNotBlank(document.getParentId())) {
+            docMap.put(fessConfig.getIndexFieldParentId(), document.getParentId());
+        } else {
+            docMap.put(fessConfig.getIndexFieldParentId(), StringUtil.EMPTY);
+        }
+        if (document.getEmbedding() != null && config.getEmbeddingField() != null) {
+            validateEmbedding(document.getEmbedding(), config);
+            docMap.put(config.getEmbeddingField(), document.getEmbedding());
+        }
         docMap.put(fessConfig.getIndexFieldAnchor(), StringUtil.EMPTY_STRINGS);
         docMap.put(fessConfig.getIndexFieldBoost(), 1.0f);
         docMap.put(fessConfig.getIndexFieldMimetype(), "text/plain");
@@ -392,45 +1564,624 @@ public class ChatGptApiManager extends BaseApiManager {
         return docMap;
     }
 
+    /**
+     * Creates the digest of the values written for the document.
+     * Generated values, such as the timestamp of a document without created_at, are not included.
+     */
+    protected String createDigest(final Document document, final List<String> roleList, final ChatGptConfig config,
+            final FessConfig fessConfig) {
+        final Metadata metadata = document.getMetadata();
+        final StringBuilder buf = new StringBuilder(document.getText().length() + 200);
+        buf.append(document.getText()).append('\u0000').append(document.getParentId());
+        buf.append('\u0000').append(metadata.getSource()).append('\u0000').append(metadata.getSourceId());
+        buf.append('\u0000').append(metadata.getUrl()).append('\u0000').append(metadata.getAuthor());
+        buf.append('\u0000').append(metadata.getCreatedAt()).append('\u0000').append(roleList);
+        buf.append('\u0000').append(config.getBaseUrl()).append('\u0000').append(config.getDefaultHost());
+        buf.append('\u0000').append(config.getDefaultVirtualHostList()).append('\u0000').append(config.getDefaultConfigId());
+        if (document.getEmbedding() != null && config.getEmbeddingField() != null) {
+            buf.append('\u0000').append(Arrays.toString(document.getEmbedding()));
+        }
+        return MessageDigestUtil.digest(fessConfig.getIndexIdDigestAlgorithm(), buf.toString());
+    }
+
     protected void processQuery(final HttpServletRequest request, final HttpServletResponse response) {
         final FessConfig fessConfig = ComponentUtil.getFessConfig();
         request.setAttribute(Constants.SEARCH_LOG_ACCESS_TYPE, Constants.SEARCH_LOG_ACCESS_TYPE_JSON);
         try (QueryParser parser = new QueryParser(request.getInputStream())) {
-            final StringBuilder buf = new StringBuilder(1000);
-            buf.append("{\"results\":[");
-            for (final Query query : parser.parse()) {
-                buf.append(processQuery(request, response, query, fessConfig));
+            final long parseStartTime = System.nanoTime();
+            final Query[] queries = parser.parse();
+            metrics.recordPhase("query", PluginMetrics.PHASE_PARSE, System.nanoTime() - parseStartTime);
+            consumeQuota(getTokenQuota(request).getQueryCostBucket(), getQueryCost(queries), "Query-Cost", response);
+            final ChatGptConfig config = getConfig();
+            for (final Query query : queries) {
+                if (isHybridQuery(query, config)) {
+                    validateEmbedding(query.getEmbedding(), config);
+                }
+                // invalid queries are rejected before any result is written
+                getResponseFields(query, config, fessConfig);
+                if (query.isPaginated()) {
+                    if (isHybridQuery(query, config)) {
+                        throw new FessChatGptResponseException(HttpServletResponse.SC_BAD_REQUEST,
+                                "A query with an embedding cannot be paginated.", StringUtil.EMPTY_STRINGS);
+                    }
+                    decodeCursor(query);
+                }
+            }
+            final EmbeddingEncoding embeddingEncoding = EmbeddingEncoding.of(request.getParameter("embedding_encoding"));
+            if (queries.length > 1 && config.isMultiSearchEnabled()) {
+                final long searchStartTime = System.nanoTime();
+                final QueryResult[] queryResults = cachedMultiSearch(request, queries, fessConfig);
+                metrics.recordPhase("query", PluginMetrics.PHASE_SEARCH, System.nanoTime() - searchStartTime);
+                writeQueryResults(response, queryResults.length, i -> queryResults[i], embeddingEncoding);
+            } else {
+                final long[] searchTime = { 0L };
+                writeQueryResults(response, queries.length, i -> {
+                    final long searchStartTime = System.nanoTime();
+                    final QueryResult queryResult = cachedSearch(request, queries[i], fessConfig);
+                    searchTime[0] += System.nanoTime() - searchStartTime;
+                    return queryResult;
+                }, embeddingEncoding);
+                metrics.recordPhase("query", PluginMetrics.PHASE_SEARCH, searchTime[0]);
             }
-            buf.append("]}");
-            response.setStatus(HttpServletResponse.SC_OK);
-            write(buf.toString(), mimeType, Constants.UTF_8);
         } catch (final InvalidQueryException | ResultOffsetExceededException e) {
             if (logger.isDebugEnabled()) {
                 logger.debug("Failed to process a search request.", e);
             }
-            writeErrorResponse(HttpServletResponse.SC_BAD_REQUEST, "Cannot understand your query.", e);
-        } catch (final InvalidAccessTokenException e) {
-            if (logger.isDebugEnabled()) {
-                logger.debug("Invalid access token.", e);
-            }
-            writeErrorResponse(HttpServletResponse.SC_UNAUTHORIZED, e.getMessage(), e);
+            writeQueryErrorResponse(response, HttpServletResponse.SC_BAD_REQUEST, "Cannot understand your query.", e);
+        } catch (final FessChatGptResponseException e) {
+            writeErrorResponse(e.getStatus(), e.getMessage(), e.getLocations());
         } catch (final Exception e) {
             if (logger.isDebugEnabled()) {
                 logger.debug("Failed to process a search request.", e);
             }
-            writeErrorResponse(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Cannot process your request.", e);
+            writeQueryErrorResponse(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Cannot process your request.", e);
         }
     }
 
-    protected String processQuery(final HttpServletRequest request, final HttpServletResponse response, final Query query,
-            final FessConfig fessConfig) {
+    /**
+     * Writes {"results":[...]} to the response, flushing each query result as soon as it is serialized.
+     */
+    protected void writeQueryResults(final HttpServletResponse response, final int size, final IntFunction<QueryResult> queryResultProvider,
+            final EmbeddingEncoding embeddingEncoding) throws IOException {
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(mimeType + "; charset=" + Constants.UTF_8);
+        writeHeaders(response);
+        final Writer out = response.getWriter();
+        // reused for all query results of this request
+        final JsonEncoder encoder = new JsonEncoder();
+        long serializeTime = 0;
+        out.write("{\"results\":[");
+        for (int i = 0; i < size; i++) {
+            final QueryResult queryResult = queryResultProvider.apply(i);
+            final long startTime = System.nanoTime();
+            encoder.reset();
+            if (i > 0) {
+                encoder.append(',');
+            }
+            queryResult.writeJson(encoder, embeddingEncoding);
+            encoder.writeTo(out);
+            out.flush();
+            serializeTime += System.nanoTime() - startTime;
+        }
+        out.write("]}");
+        out.flush();
+        metrics.recordPhase("query", PluginMetrics.PHASE_SERIALIZE, serializeTime);
+    }
+
+    protected void processMetrics(final HttpServletResponse response) throws IOException {
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("text/plain; version=0.0.4; charset=" + Constants.UTF_8);
+        final Writer out = response.getWriter();
+        metrics.writeTo(out);
+        out.flush();
+    }
+
+    protected void writeQueryErrorResponse(final HttpServletResponse response, final int status, final String message, final Throwable t) {
+        if (response.isCommitted()) {
+            logger.warn("Failed to write query results: {}", message, t);
+            return;
+        }
+        response.resetBuffer();
+        writeErrorResponse(status, message, t);
+    }
+
+    protected QueryResult cachedSearch(final HttpServletRequest request, final Query query, final FessConfig fessConfig) {
+        if (queryResultCache == null) {
+            return search(request, query, fessConfig);
+        }
+        final QueryResultCache.Key key = createQueryCacheKey(request, query);
+        final QueryResult cached = queryResultCache.get(key, query);
+        if (cached != null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Hit the query cache: {}", key);
+            }
+            return cached;
+        }
+        final long generation = queryResultCache.getGeneration();
+        final QueryResult queryResult = search(request, query, fessConfig);
+        queryResultCache.put(key, queryResult, generation);
+        return queryResult;
+    }
+
+    protected QueryResult[] cachedMultiSearch(final HttpServletRequest request, final Query[] queries, final FessConfig fessConfig) {
+        if (queryResultCache == null) {
+            return multiSearch(request, queries, fessConfig);
+        }
+        final QueryResult[] queryResults = new QueryResult[queries.length];
+        final QueryResultCache.Key[] keys = new QueryResultCache.Key[queries.length];
+        final List<Integer> missList = new ArrayList<>();
+        for (int i = 0; i < queries.length; i++) {
+            keys[i] = createQueryCacheKey(request, queries[i]);
+            queryResults[i] = queryResultCache.get(keys[i], queries[i]);
+            if (queryResults[i] == null) {
+                missList.add(i);
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Hit the query cache: {}/{}", queries.length - missList.size(), queries.length);
+        }
+        if (missList.isEmpty()) {
+            return queryResults;
+        }
+        final long generation = queryResultCache.getGeneration();
+        final QueryResult[] missResults;
+        if (missList.size() == 1) {
+            missResults = new QueryResult[] { search(request, queries[missList.get(0)], fessConfig) };
+        } else {
+            missResults = multiSearch(request, missList.stream().map(i -> queries[i]).toArray(n -> new Query[n]), fessConfig);
+        }
+        for (int i = 0; i < missResults.length; i++) {
+            final int index = missList.get(i);
+            queryResults[index] = missResults[i];
+            queryResultCache.put(keys[index], missResults[i], generation);
+        }
+        return queryResults;
+    }
+
+    /**
+     * Creates a cache key from the query and everything that restricts the visible documents:
+     * the permissions of the access token, the roles of the request and the virtual host.
+     */
+    protected QueryResultCache.Key createQueryCacheKey(final HttpServletRequest request, final Query query) {
+        return QueryResultCache.createKey(query, getPermissionList(request),
+                ComponentUtil.getRoleQueryHelper().build(SearchRequestType.JSON), ComponentUtil.getVirtualHostHelper().getVirtualHostKey());
+    }
+
+    protected void invalidateQueryCache() {
+        if (queryResultCache != null) {
+            queryResultCache.invalidateAll();
+        }
+    }
+
+    protected QueryResult search(final HttpServletRequest request, final Query query, final FessConfig fessConfig) {
+        final ChatGptConfig config = getConfig();
+        if (isHybridQuery(query, config) || query.getHighlight() != null || query.isPaginated()) {
+            // the keyword and kNN searches are sent in one multi-search request, which also returns the hits as they are
+            return multiSearch(request, new Query[] { query }, fessConfig)[0];
+        }
         final SearchHelper searchHelper = ComponentUtil.getSearchHelper();
         final SearchRenderData data = new SearchRenderData();
-        final QueryRequestParams params = new QueryRequestParams(request, fessConfig, query, getResponseFields());
+        final QueryRequestParams params = new QueryRequestParams(request, fessConfig, query, getResponseFields(query, config, fessConfig));
         request.setAttribute(Query.QUERY, query);
         searchHelper.search(params, data, OptionalThing.empty());
-        final QueryResult queryResult = QueryResult.create(query, data);
-        return queryResult.toJsonString();
+        return QueryResult.create(query, data.getDocumentItems(), config.getDocMaxLength(), config.getEmbeddingField());
+    }
+
+    /**
+     * Searches the queries in one multi-search request.
+     * A query with an embedding adds a kNN search next to its keyword search, so both run concurrently,
+     * and their results are merged by reciprocal rank fusion.
+     * The requests are built without SearchHelper, so the search log of each keyword search is stored here.
+     */
+    protected QueryResult[] multiSearch(final HttpServletRequest request, final Query[] queries, final FessConfig fessConfig) {
+        final long startTime = System.currentTimeMillis();
+        final SearchEngineClient client = ComponentUtil.getSearchEngineClient();
+        final ChatGptConfig config = getConfig();
+        final MultiSearchRequestBuilder multiSearchRequestBuilder = client.prepareMultiSearch();
+        final QueryRequestParams[] paramsArray = new QueryRequestParams[queries.length];
+        final String[] queryStrings = new String[queries.length];
+        final int[] itemIndexes = new int[queries.length];
+        final int[] knnItemIndexes = new int[queries.length];
+        int numOfRequests = 0;
+        for (int i = 0; i < queries.length; i++) {
+            final boolean hybrid = isHybridQuery(queries[i], config);
+            final int pageSize = hybrid ? Math.max(queries[i].getTopK(), config.getHybridRankWindowSize()) : queries[i].getTopK();
+            final QueryRequestParams params =
+                    new QueryRequestParams(request, fessConfig, queries[i], getResponseFields(queries[i], config, fessConfig), pageSize);
+            paramsArray[i] = params;
+            // the operator of each query is resolved by CustomQueryParser while building the request
+            request.setAttribute(Query.QUERY, queries[i]);
+            queryStrings[i] = createQueryString(params);
+            final SearchRequestBuilder searchRequestBuilder = client.prepareSearch(fessConfig.getIndexDocumentSearchIndex());
+            if (buildSearchRequest(searchRequestBuilder, params, queryStrings[i])) {
+                if (queries[i].getHighlight() != null) {
+                    searchRequestBuilder.highlighter(createHighlightBuilder(queries[i], config, fessConfig));
+                }
+                if (queries[i].isPaginated()) {
+                    applyCursor(searchRequestBuilder, queries[i], fessConfig);
+                }
+                multiSearchRequestBuilder.add(searchRequestBuilder);
+                itemIndexes[i] = numOfRequests;
+                numOfRequests++;
+            } else {
+                itemIndexes[i] = -1;
+            }
+            if (hybrid) {
+                multiSearchRequestBuilder.add(buildKnnSearchRequest(client, queries[i], params, config, fessConfig));
+                knnItemIndexes[i] = numOfRequests;
+                numOfRequests++;
+            } else {
+                knnItemIndexes[i] = -1;
+            }
+        }
+
+        final MultiSearchResponse.Item[] items;
+        if (numOfRequests > 0) {
+            items = executeMultiSearch(multiSearchRequestBuilder, fessConfig);
+        } else {
+            items = new MultiSearchResponse.Item[0];
+        }
+        final long execTime = System.currentTimeMillis() - startTime;
+
+        final QueryResult[] queryResults = new QueryResult[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            final List<Map<String, Object>> documentItems = getDocumentItems(items, itemIndexes[i], queries[i], paramsArray[i]);
+            if (itemIndexes[i] >= 0) {
+                storeSearchLog(paramsArray[i], queryStrings[i], documentItems, startTime, execTime, fessConfig);
+            }
+            if (queries[i].getHighlight() != null) {
+                addHighlights(items, itemIndexes[i], documentItems, fessConfig.getIndexFieldContent());
+            }
+            if (knnItemIndexes[i] < 0) {
+                if (queries[i].isPaginated()) {
+                    // later pages are normalized by the maximum score of the first page, so that scores are comparable across pages
+                    final SearchCursor cursor = decodeCursor(queries[i]);
+                    final float maxScore = cursor != null ? cursor.getMaxScore() : QueryResult.getMaxScore(documentItems);
+                    queryResults[i] = QueryResult
+                            .create(queries[i], documentItems, config.getDocMaxLength(), config.getEmbeddingField(), maxScore)
+                            .withNextCursor(createNextCursor(items, itemIndexes[i], queries[i], maxScore));
+                } else {
+                    queryResults[i] = QueryResult.create(queries[i], documentItems, config.getDocMaxLength(), config.getEmbeddingField());
+                }
+                continue;
+            }
+            final List<Map<String, Object>> knnDocumentItems = getDocumentItems(items, knnItemIndexes[i], queries[i], paramsArray[i]);
+            if (queries[i].getHighlight() != null) {
+                addHighlights(items, knnItemIndexes[i], knnDocumentItems, fessConfig.getIndexFieldContent());
+            }
+            final List<Map<String, Object>> fusedItems = new ReciprocalRankFusion(config.getHybridRankConstant())
+                    .fuse(Arrays.asList(documentItems, knnDocumentItems), fessConfig.getIndexFieldId(), queries[i].getTopK());
+            if (logger.isDebugEnabled()) {
+                logger.debug("Fused {} keyword and {} kNN hits into {} hits", documentItems.size(), knnDocumentItems.size(),
+                        fusedItems.size());
+            }
+            queryResults[i] = QueryResult.create(queries[i], fusedItems, config.getDocMaxLength(), config.getEmbeddingField());
+        }
+        return queryResults;
+    }
+
+    protected MultiSearchResponse.Item[] executeMultiSearch(final MultiSearchRequestBuilder multiSearchRequestBuilder,
+            final FessConfig fessConfig) {
+        return multiSearchRequestBuilder.execute().actionGet(fessConfig.getIndexSearchTimeout()).getResponses();
+    }
+
+    /**
+     * Stores the search log and the query id for favorites as SearchHelper does.
+     * Related queries and contents are not looked up because the response does not return them.
+     *
+     * @param params The search parameters.
+     * @param queryString The query string sent to the search engine.
+     * @param documentItems The hits of the keyword search.
+     * @param requestedTime The time when the search started.
+     * @param execTime The time taken by the search.
+     * @param fessConfig The Fess settings.
+     */
+    protected void storeSearchLog(final QueryRequestParams params, final String queryString, final List<Map<String, Object>> documentItems,
+            final long requestedTime, final long execTime, final FessConfig fessConfig) {
+        if (!(documentItems instanceof final QueryResponseList queryResponseList)) {
+            return;
+        }
+        queryResponseList.setExecTime(execTime);
+        final String queryId = ComponentUtil.getQueryHelper().generateId();
+        if (fessConfig.isSearchLog()) {
+            ComponentUtil.getSearchLogHelper().addSearchLog(params,
+                    LocalDateTime.ofInstant(Instant.ofEpochMilli(requestedTime), ZoneId.systemDefault()), queryId, queryString,
+                    params.getStartPosition(), params.getPageSize(), queryResponseList);
+        }
+        if (fessConfig.isUserFavorite()) {
+            ComponentUtil.getUserInfoHelper().storeQueryId(queryId, documentItems);
+        }
+    }
+
+    protected List<Map<String, Object>> getDocumentItems(final MultiSearchResponse.Item[] items, final int index, final Query query,
+            final QueryRequestParams params) {
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        final MultiSearchResponse.Item item = items[index];
+        if (item.isFailure()) {
+            throw new FessSystemException("Failed to search " + query.getQuery(), item.getFailure());
+        }
+        final QueryResponseList queryResponseList = ComponentUtil.getQueryResponseList();
+        queryResponseList.init(OptionalEntity.of(item.getResponse()), params.getStartPosition(), params.getPageSize());
+        return queryResponseList;
+    }
+
+    /**
+     * Narrows the response fields to the fields that the query includes and does not exclude,
+     * so that the search engine does not load the others. The content is also dropped if only the highlight fragments are returned.
+     * An included name is rejected if none of its fields is a response field.
+     */
+    protected String[] getResponseFields(final Query query, final ChatGptConfig config, final FessConfig fessConfig) {
+        final Highlight highlight = query.getHighlight();
+        final boolean textExcluded = highlight != null && !highlight.isTextIncluded();
+        if (!textExcluded && query.getIncludeFieldList() == null && query.getExcludeFieldList() == null) {
+            return config.getResponseFields();
+        }
+        final Set<String> includeFieldSet;
+        if (query.getIncludeFieldList() != null) {
+            final List<String> responseFieldList = Arrays.asList(config.getResponseFields());
+            for (final String name : query.getIncludeFieldList()) {
+                if (getSourceFields(List.of(name), config, fessConfig).stream().noneMatch(responseFieldList::contains)) {
+                    // the field is not loaded, so it would be dropped from the results
+                    throw new FessChatGptResponseException(HttpServletResponse.SC_BAD_REQUEST, "Unavailable field: " + name,
+                            StringUtil.EMPTY_STRINGS);
+                }
+            }
+            includeFieldSet = getSourceFields(query.getIncludeFieldList(), config, fessConfig);
+        } else {
+            includeFieldSet = null;
+        }
+        final Set<String> excludeFieldSet =
+                query.getExcludeFieldList() != null ? getSourceFields(query.getExcludeFieldList(), config, fessConfig) : new HashSet<>();
+        if (textExcluded) {
+            excludeFieldSet.add(fessConfig.getIndexFieldContent());
+        }
+        final String[] responseFields = Arrays.stream(config.getResponseFields())
+                .filter(s -> (includeFieldSet == null || includeFieldSet.contains(s)) && !excludeFieldSet.contains(s))
+                .toArray(n -> new String[n]);
+        if (responseFields.length == 0) {
+            // no source field matches the id, whereas an empty array loads the whole source
+            return new String[] { fessConfig.getIndexFieldId() };
+        }
+        return responseFields;
+    }
+
+    /**
+     * Maps the names of result fields to the fields in the index.
+     *
+     * @param nameList The names of result fields: text, embedding, metadata, or a field of metadata such as url.
+     * @return The fields in the index.
+     */
+    protected Set<String> getSourceFields(final List<String> nameList, final ChatGptConfig config, final FessConfig fessConfig) {
+        final Set<String> fieldSet = new HashSet<>();
+        for (final String name : nameList) {
+            switch (name) {
+            case "text":
+                fieldSet.add(fessConfig.getIndexFieldContent());
+                break;
+            case "embedding":
+                if (config.getEmbeddingField() != null) {
+                    fieldSet.add(config.getEmbeddingField());
+                }
+                break;
+            case "metadata":
+                fieldSet.addAll(getSourceFields(METADATA_FIELDS, config, fessConfig));
+                break;
+            case "source":
+                fieldSet.add(fessConfig.getIndexFieldLabel());
+                break;
+            case "source_id":
+                fieldSet.add(fessConfig.getIndexFieldFilename());
+                break;
+            case "url":
+                fieldSet.add(fessConfig.getIndexFieldUrl());
+                break;
+            case "created_at":
+                fieldSet.add(fessConfig.getIndexFieldTimestamp());
+                break;
+            case "author":
+                fieldSet.add(AUTHOR_FIELD);
+                break;
+            case "document_id":
+                fieldSet.add(fessConfig.getIndexFieldDocId());
+                break;
+            default:
+                throw new FessChatGptResponseException(HttpServletResponse.SC_BAD_REQUEST, "Unknown field: " + name,
+                        StringUtil.EMPTY_STRINGS);
+            }
+        }
+        return fieldSet;
+    }
+
+    /**
+     * Highlights the content with plain text fragments. A hit without a matching fragment gets the beginning of the content.
+     */
+    protected HighlightBuilder createHighlightBuilder(final Query query, final ChatGptConfig config, final FessConfig fessConfig) {
+        final Highlight highlight = query.getHighlight();
+        final int docMaxLength = Math.max(config.getDocMaxLength(), 1);
+        final int fragmentSize = Math.min(highlight.getFragmentSize() > 0 ? highlight.getFragmentSize() : config.getHighlightFragmentSize(),
+                docMaxLength);
+        // the fragments of a document do not exceed the maximum length of its text
+        final int numberOfFragments = Math.min(
+                highlight.getNumberOfFragments() > 0 ? highlight.getNumberOfFragments() : config.getHighlightNumberOfFragments(),
+                Math.max(docMaxLength / fragmentSize, 1));
+        return new HighlightBuilder().field(fessConfig.getIndexFieldContent(), fragmentSize, numberOfFragments).noMatchSize(fragmentSize)
+                .preTags(StringUtil.EMPTY).postTags(StringUtil.EMPTY);
+    }
+
+    /**
+     * Adds the highlight fragments of the search hits to the document items, which are in the same order as the hits.
+     */
+    protected void addHighlights(final MultiSearchResponse.Item[] items, final int index, final List<Map<String, Object>> documentItems,
+            final String field) {
+        if (index < 0) {
+            return;
+        }
+        final SearchHit[] hits = items[index].getResponse().getHits().getHits();
+        for (int i = 0; i < hits.length && i < documentItems.size(); i++) {
+            final HighlightField highlightField = hits[i].getHighlightFields().get(field);
+            if (highlightField != null && highlightField.fragments() != null) {
+                documentItems.get(i).put(QueryResult.HIGHLIGHTS,
+                        Arrays.stream(highlightField.fragments()).map(Object::toString).toArray(n -> new String[n]));
+            }
+        }
+    }
+
+    /**
+     * Sorts the hits by score and then by document id, so that a page ends at a stable position, and starts after the cursor.
+     * Unlike an offset, search_after does not make the search engine collect the hits of the previous pages.
+     */
+    protected void applyCursor(final SearchRequestBuilder searchRequestBuilder, final Query query, final FessConfig fessConfig) {
+        final SearchSourceBuilder sourceBuilder = searchRequestBuilder.request().source();
+        if (sourceBuilder.sorts() != null) {
+            sourceBuilder.sorts().clear();
+        }
+        sourceBuilder.sort(SortBuilders.scoreSort()).sort(SortBuilders.fieldSort(fessConfig.getIndexFieldDocId()).order(SortOrder.ASC))
+                .trackScores(true);
+        final SearchCursor cursor = decodeCursor(query);
+        if (cursor != null) {
+            sourceBuilder.searchAfter(cursor.getSearchAfter());
+        }
+    }
+
+    /**
+     * @return The cursor of the query, or null for the first page.
+     */
+    protected SearchCursor decodeCursor(final Query query) {
+        if (query.getCursor() == null) {
+            return null;
+        }
+        final SearchCursor cursor;
+        try {
+            cursor = SearchCursor.decode(query.getCursor());
+        } catch (final IllegalArgumentException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to decode the cursor.", e);
+            }
+            throw new FessChatGptResponseException(HttpServletResponse.SC_BAD_REQUEST, "Invalid cursor.", StringUtil.EMPTY_STRINGS);
+        }
+        if (!cursor.getFingerprint().equals(createCursorFingerprint(query))) {
+            throw new FessChatGptResponseException(HttpServletResponse.SC_BAD_REQUEST, "The cursor does not belong to the query.",
+                    StringUtil.EMPTY_STRINGS);
+        }
+        return cursor;
+    }
+
+    /**
+     * @return The cursor after the last hit, or null if the page is the last one.
+     */
+    protected String createNextCursor(final MultiSearchResponse.Item[] items, final int index, final Query query, final float maxScore) {
+        if (index < 0) {
+            return null;
+        }
+        final SearchHit[] hits = items[index].getResponse().getHits().getHits();
+        // a page shorter than top_k is the last one
+        if (hits.length == 0 || hits.length < query.getTopK()) {
+            return null;
+        }
+        final Object[] sortValues = hits[hits.length - 1].getSortValues();
+        if (sortValues.length < 2 || !(sortValues[0] instanceof final Number score) || sortValues[1] == null) {
+            return null;
+        }
+        return new SearchCursor(createCursorFingerprint(query), maxScore, score.floatValue(), sortValues[1].toString()).encode();
+    }
+
+    /**
+     * @return The hash of the conditions that decide the order of the hits. top_k and the returned fields may change between pages.
+     */
+    protected String createCursorFingerprint(final Query query) {
+        // stable across restarts and nodes, unlike the hash code of an enum
+        final String operator = query.getOperator() != null ? query.getOperator().name() : StringUtil.EMPTY;
+        final StringBuilder buf = new StringBuilder(200);
+        // each value is prefixed with its length, so that a value cannot run into the next one
+        for (final String value : new String[] { query.getQuery(), operator, query.getFilter().toString() }) {
+            final String text = value != null ? value : StringUtil.EMPTY;
+            buf.append(text.length()).append(':').append(text);
+        }
+        // 128 bits are enough to tell queries apart and keep the cursor short
+        return MessageDigestUtil.digest("SHA-256", buf.toString()).substring(0, 32);
+    }
+
+    protected boolean isHybridQuery(final Query query, final ChatGptConfig config) {
+        return query.getEmbedding() != null && config.getEmbeddingField() != null;
+    }
+
+    protected void validateEmbedding(final float[] embedding, final ChatGptConfig config) {
+        if (embedding.length == 0) {
+            throw new FessChatGptResponseException(HttpServletResponse.SC_BAD_REQUEST, "The embedding is empty.", StringUtil.EMPTY_STRINGS);
+        }
+        final int dimension = config.getEmbeddingDimension();
+        if (dimension > 0 && embedding.length != dimension) {
+            throw new FessChatGptResponseException(HttpServletResponse.SC_BAD_REQUEST,
+                    "The embedding has " + embedding.length + " dimensions, but " + dimension + " are expected.", StringUtil.EMPTY_STRINGS);
+        }
+        for (final float value : embedding) {
+            if (!Float.isFinite(value)) {
+                throw new FessChatGptResponseException(HttpServletResponse.SC_BAD_REQUEST, "The embedding contains an invalid value.",
+                        StringUtil.EMPTY_STRINGS);
+            }
+        }
+    }
+
+    /**
+     * Builds the kNN search for the query embedding.
+     * The keyword search gets the access control and filters from Fess, so the same restrictions are applied here.
+     */
+    protected SearchRequestBuilder buildKnnSearchRequest(final SearchEngineClient client, final Query query,
+            final QueryRequestParams params, final ChatGptConfig config, final FessConfig fessConfig) {
+        final int size = params.getPageSize();
+        final String knnQuery = createKnnQuery(config.getEmbeddingField(), query.getEmbedding(), size);
+        final BoolQueryBuilder boolQuery = QueryBuilders.boolQuery().must(QueryBuilders.wrapperQuery(knnQuery));
+        params.getFields().forEach((name, values) -> boolQuery.filter(QueryBuilders.termsQuery(name, values)));
+        final RangeQueryBuilder rangeQuery = createDateRangeQuery(query.getFilter(), fessConfig);
+        if (rangeQuery != null) {
+            boolQuery.filter(rangeQuery);
+        }
+        final Set<String> roleSet = ComponentUtil.getRoleQueryHelper().build(params.getType());
+        if (!roleSet.isEmpty()) {
+            boolQuery.filter(QueryBuilders.termsQuery(fessConfig.getIndexFieldRole(), roleSet));
+        }
+        final String virtualHostKey = ComponentUtil.getVirtualHostHelper().getVirtualHostKey();
+        if (StringUtil.isNotBlank(virtualHostKey)) {
+            boolQuery.filter(QueryBuilders.termQuery(fessConfig.getIndexFieldVirtualHost(), virtualHostKey));
+        }
+        final SearchRequestBuilder searchRequestBuilder = client.prepareSearch(fessConfig.getIndexDocumentSearchIndex()).setQuery(boolQuery)
+                .setSize(size).setFetchSource(params.getResponseFields(), null);
+        if (query.getHighlight() != null) {
+            // the kNN query has no terms to highlight
+            searchRequestBuilder.highlighter(createHighlightBuilder(query, config, fessConfig)
+                    .highlightQuery(QueryBuilders.matchQuery(fessConfig.getIndexFieldContent(), query.getQuery())));
+        }
+        return searchRequestBuilder;
+    }
+
+    protected String createKnnQuery(final String field, final float[] vector, final int k) {
+        final StringBuilder buf = new StringBuilder(vector.length * 12 + 100);
+        buf.append("{\"knn\":{\"").append(StringEscapeUtils.escapeJson(field)).append("\":{\"vector\":[");
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                buf.append(',');
+            }
+            buf.append(vector[i]);
+        }
+        buf.append("],\"k\":").append(k).append("}}}");
+        return buf.toString();
+    }
+
+    protected String createQueryString(final QueryRequestParams params) {
+        return ComponentUtil.getQueryStringBuilder().params(params).build();
+    }
+
+    protected boolean buildSearchRequest(final SearchRequestBuilder searchRequestBuilder, final QueryRequestParams params,
+            final String query) {
+        return SearchConditionBuilder.builder(searchRequestBuilder)//
+                .query(query)//
+                .offset(params.getStartPosition())//
+                .size(params.getPageSize())//
+                .responseFields(params.getResponseFields())//
+                .searchRequestType(params.getType())//
+                .build();
     }
 
     protected void writeErrorResponse(final int status, final String message, final Throwable t) {
@@ -491,13 +2242,20 @@ public class ChatGptApiManager extends BaseApiManager {
         private final FessConfig fessConfig;
         private final Query query;
         private final String[] responseFields;
+        private final int pageSize;
 
         protected QueryRequestParams(final HttpServletRequest request, final FessConfig fessConfig, final Query query,
                 final String[] responseFields) {
+            this(request, fessConfig, query, responseFields, query.getTopK());
+        }
+
+        protected QueryRequestParams(final HttpServletRequest request, final FessConfig fessConfig, final Query query,
+                final String[] responseFields, final int pageSize) {
             this.request = request;
             this.fessConfig = fessConfig;
             this.query = query;
             this.responseFields = responseFields;
+            this.pageSize = pageSize;
         }
 
         @Override
@@ -566,7 +2324,7 @@ public class ChatGptApiManager extends BaseApiManager {
 
         @Override
         public int getPageSize() {
-            return query.getTopK();
+            return pageSize;
         }
 
         @Override
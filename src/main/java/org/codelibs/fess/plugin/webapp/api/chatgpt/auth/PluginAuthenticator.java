@@ -19,7 +19,12 @@ import static org.codelibs.core.stream.StreamUtil.stream;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.servlet.http.HttpServletRequest;
 
 import org.apache.commons.text.StringEscapeUtils;
@@ -27,12 +32,106 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.codelibs.core.lang.StringUtil;
 import org.codelibs.fess.es.config.exbhv.AccessTokenBhv;
+import org.codelibs.fess.es.config.exentity.AccessToken;
 import org.codelibs.fess.exception.InvalidAccessTokenException;
 import org.codelibs.fess.util.ComponentUtil;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
 public class PluginAuthenticator {
     private static final Logger logger = LogManager.getLogger(PluginAuthenticator.class);
 
+    /**
+     * The request attribute for the name of the authenticated access token.
+     */
+    public static final String TOKEN_NAME = "chatgpt.tokenName";
+
+    protected LoadingCache<String, AccessTokenEntry> tokenCache;
+
+    protected ScheduledExecutorService refreshExecutor;
+
+    // the number of access tokens and their last updated time
+    protected volatile String accessTokenVersion;
+
+    @PostConstruct
+    public void init() {
+        final long cacheSize = getTokenCacheSize();
+        if (cacheSize <= 0) {
+            return;
+        }
+        refreshExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "chatgpt-token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        tokenCache = createTokenCache(cacheSize);
+        final long checkInterval = getTokenCacheCheckInterval();
+        if (checkInterval > 0) {
+            // the admin UI does not notify plugins when a token is edited or deleted
+            refreshExecutor.scheduleWithFixedDelay(this::checkAccessTokens, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+        }
+        ComponentUtil.getSystemHelper().addUpdateConfigListener("ChatGptAccessToken", () -> {
+            invalidate();
+            return "Invalidated ChatGPT access token cache.";
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+        }
+    }
+
+    protected LoadingCache<String, AccessTokenEntry> createTokenCache(final long cacheSize) {
+        // entries are reloaded in the background, so a changed token is picked up without blocking requests
+        return CacheBuilder.newBuilder().maximumSize(cacheSize)//
+                .expireAfterWrite(getTokenCacheTtl(), TimeUnit.MILLISECONDS)//
+                .refreshAfterWrite(getTokenCacheRefresh(), TimeUnit.MILLISECONDS)//
+                .build(CacheLoader.asyncReloading(CacheLoader.from(this::loadAccessTokenEntry), refreshExecutor));
+    }
+
+    /**
+     * Discards cached tokens so that changes in the admin UI take effect on the next request.
+     */
+    public void invalidate() {
+        if (tokenCache != null) {
+            tokenCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Invalidates the cache when an access token was created, edited or deleted since the last check.
+     */
+    protected void checkAccessTokens() {
+        try {
+            final String version = loadAccessTokenVersion();
+            final String previous = accessTokenVersion;
+            accessTokenVersion = version;
+            if (previous != null && !previous.equals(version)) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Access tokens are changed: {} -> {}", previous, version);
+                }
+                invalidate();
+            }
+        } catch (final Exception e) {
+            logger.warn("Failed to check access tokens.", e);
+        }
+    }
+
+    protected String loadAccessTokenVersion() {
+        final AccessTokenBhv accessTokenBhv = ComponentUtil.getComponent(AccessTokenBhv.class);
+        final int count = accessTokenBhv.selectCount(cb -> {});
+        final Long updatedTime = accessTokenBhv.selectList(cb -> {
+            cb.query().addOrderBy_UpdatedTime_Desc();
+            cb.fetchFirst(1);
+        }).stream().findFirst().map(AccessToken::getUpdatedTime).orElse(null);
+        return count + ":" + updatedTime;
+    }
+
     public String getAiPluginJson() {
         final String verificationToken = getverificationToken();
         if (StringUtil.isBlank(verificationToken)) {
@@ -61,20 +160,52 @@ public class PluginAuthenticator {
             throw new InvalidAccessTokenException("no_token", "The token is specified.");
         }
 
-        return ComponentUtil.getComponent(AccessTokenBhv.class).selectEntity(cb -> {
-            cb.query().setToken_Term(token);
-        }).map(accessToken -> {
-            final Long expiredTime = accessToken.getExpiredTime();
-            if (expiredTime != null && expiredTime.longValue() > 0
-                    && expiredTime.longValue() < ComponentUtil.getSystemHelper().getCurrentTimeAsLong()) {
-                throw new InvalidAccessTokenException("expired_token", "The token is expired.");
+        final AccessTokenEntry entry = getAccessTokenEntry(token);
+        if (entry.permissionList == null) {
+            throw new InvalidAccessTokenException("invalid_token", "Your token is invalid.");
+        }
+        // checked on every request because a cached token may expire
+        final Long expiredTime = entry.expiredTime;
+        if (expiredTime != null && expiredTime.longValue() > 0
+                && expiredTime.longValue() < ComponentUtil.getSystemHelper().getCurrentTimeAsLong()) {
+            throw new InvalidAccessTokenException("expired_token", "The token is expired.");
+        }
+        if (entry.permissionList.isEmpty()) {
+            throw new InvalidAccessTokenException("no_permissions", "Your token does not contain permissions for this system.");
+        }
+        request.setAttribute(TOKEN_NAME, entry.name);
+        return entry.permissionList;
+    }
+
+    protected AccessTokenEntry getAccessTokenEntry(final String token) {
+        if (tokenCache == null) {
+            return loadAccessTokenEntry(token);
+        }
+        try {
+            final AccessTokenEntry entry = tokenCache.getUnchecked(token);
+            if (entry.permissionList == null && System.currentTimeMillis() - entry.loadedTime > getTokenCacheNegativeTtl()) {
+                // unknown tokens are kept for a shorter time so that a new token becomes valid soon
+                tokenCache.invalidate(token);
+                return tokenCache.getUnchecked(token);
             }
-            final List<String> permissionList = stream(accessToken.getPermissions()).get(stream -> stream.distinct().toList());
-            if (permissionList.isEmpty()) {
-                throw new InvalidAccessTokenException("no_permissions", "Your token does not contain permissions for this system.");
+            return entry;
+        } catch (final UncheckedExecutionException e) {
+            if (e.getCause() instanceof final RuntimeException cause) {
+                throw cause;
             }
-            return permissionList;
-        }).orElseThrow(() -> new InvalidAccessTokenException("invalid_token", "Your token is invalid."));
+            throw e;
+        }
+    }
+
+    protected AccessTokenEntry loadAccessTokenEntry(final String token) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Load an access token.");
+        }
+        return ComponentUtil.getComponent(AccessTokenBhv.class).selectEntity(cb -> {
+            cb.query().setToken_Term(token);
+        }).map(accessToken -> new AccessTokenEntry(accessToken.getName(), accessToken.getExpiredTime(),
+                stream(accessToken.getPermissions()).get(stream -> stream.distinct().toList())))
+                .orElseGet(() -> new AccessTokenEntry(null, null, null));
     }
 
     public boolean isAuthenticated() {
@@ -84,4 +215,41 @@ public class PluginAuthenticator {
     protected String getverificationToken() {
         return System.getProperty("fess.chatgpt.verification_token", StringUtil.EMPTY);
     }
+
+    protected long getTokenCacheSize() {
+        return Long.parseLong(System.getProperty("fess.chatgpt.token_cache.size", "1000"));
+    }
+
+    protected long getTokenCacheTtl() {
+        return Long.parseLong(System.getProperty("fess.chatgpt.token_cache.ttl", "300000"));
+    }
+
+    protected long getTokenCacheRefresh() {
+        return Long.parseLong(System.getProperty("fess.chatgpt.token_cache.refresh", "60000"));
+    }
+
+    protected long getTokenCacheNegativeTtl() {
+        return Long.parseLong(System.getProperty("fess.chatgpt.token_cache.negative_ttl", "10000"));
+    }
+
+    protected long getTokenCacheCheckInterval() {
+        return Long.parseLong(System.getProperty("fess.chatgpt.token_cache.check_interval", "5000"));
+    }
+
+    protected static class AccessTokenEntry {
+        protected final String name;
+
+        protected final Long expiredTime;
+
+        // null if the token is not found
+        protected final List<String> permissionList;
+
+        protected final long loadedTime = System.currentTimeMillis();
+
+        protected AccessTokenEntry(final String name, final Long expiredTime, final List<String> permissionList) {
+            this.name = name;
+            this.expiredTime = expiredTime;
+            this.permissionList = permissionList;
+        }
+    }
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Query;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Query.Filter;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Query.Highlight;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.QueryResult;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Caches query results by the normalized query and the permissions of the caller.
+ */
+public class QueryResultCache {
+
+    protected final Cache<Key, QueryResult> cache;
+
+    protected final AtomicLong generation = new AtomicLong();
+
+    public QueryResultCache(final long maxSize, final long ttl) {
+        cache = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(ttl, TimeUnit.MILLISECONDS).recordStats().build();
+    }
+
+    /**
+     * @param key The key.
+     * @param query The query to echo in the result.
+     * @return The cached result, or null if not found.
+     */
+    public QueryResult get(final Key key, final Query query) {
+        final QueryResult queryResult = cache.getIfPresent(key);
+        if (queryResult == null) {
+            return null;
+        }
+        return queryResult.withQuery(query.getQuery());
+    }
+
+    /**
+     * Returns the current generation. Pass it to {@link #put(Key, QueryResult, long)}
+     * so that a result searched before an invalidation is not stored.
+     *
+     * @return The generation.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    public void put(final Key key, final QueryResult queryResult, final long generation) {
+        if (this.generation.get() == generation) {
+            cache.put(key, queryResult);
+        }
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public static Key createKey(final Query query, final Collection<String> permissions, final Collection<String> roles,
+            final String virtualHost) {
+        return new Key(query, permissions, roles, virtualHost);
+    }
+
+    protected static String normalize(final String query) {
+        if (query == null) {
+            return null;
+        }
+        return query.strip().replaceAll("\\s+", " ");
+    }
+
+    protected static List<String> sort(final Collection<String> values) {
+        if (values == null || values.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<String> list = new ArrayList<>(values);
+        Collections.sort(list);
+        return list;
+    }
+
+    public static class Key {
+        protected final String query;
+        protected final String operator;
+        protected final int topK;
+        protected final String documentId;
+        protected final String source;
+        protected final String sourceId;
+        protected final String author;
+        protected final String startDate;
+        protected final String endDate;
+        protected final List<String> permissions;
+        protected final List<String> roles;
+        protected final String virtualHost;
+        protected final float[] embedding;
+        protected final Highlight highlight;
+        protected final List<String> includeFieldList;
+        protected final List<String> excludeFieldList;
+        protected final boolean paginated;
+        protected final String cursor;
+        protected final int hashCode;
+
+        protected Key(final Query query, final Collection<String> permissions, final Collection<String> roles, final String virtualHost) {
+            final Filter filter = query.getFilter();
+            this.query = normalize(query.getQuery());
+            this.operator = query.getOperator() != null ? query.getOperator().name() : null;
+            this.topK = query.getTopK();
+            this.documentId = filter.getDocumentId();
+            this.source = filter.getSource().name();
+            this.sourceId = filter.getSourceId();
+            this.author = filter.getAuthor();
+            this.startDate = filter.getStartDate();
+            this.endDate = filter.getEndDate();
+            this.permissions = sort(permissions);
+            this.roles = sort(roles);
+            this.virtualHost = virtualHost;
+            this.embedding = query.getEmbedding();
+            this.highlight = query.getHighlight();
+            this.includeFieldList = query.getIncludeFieldList();
+            this.excludeFieldList = query.getExcludeFieldList();
+            this.paginated = query.isPaginated();
+            this.cursor = query.getCursor();
+            this.hashCode = Objects.hash(this.query, operator, topK, documentId, source, sourceId, author, startDate, endDate,
+                    this.permissions, this.roles, virtualHost, Arrays.hashCode(embedding), highlight, includeFieldList, excludeFieldList,
+                    paginated, cursor);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof final Key other)) {
+                return false;
+            }
+            return hashCode == other.hashCode && topK == other.topK && Objects.equals(query, other.query)
+                    && Objects.equals(operator, other.operator) && Objects.equals(documentId, other.documentId)
+                    && Objects.equals(source, other.source) && Objects.equals(sourceId, other.sourceId)
+                    && Objects.equals(author, other.author) && Objects.equals(startDate, other.startDate)
+                    && Objects.equals(endDate, other.endDate) && permissions.equals(other.permissions) && roles.equals(other.roles)
+                    && Objects.equals(virtualHost, other.virtualHost) && Arrays.equals(embedding, other.embedding)
+                    && Objects.equals(highlight, other.highlight) && Objects.equals(includeFieldList, other.includeFieldList)
+                    && Objects.equals(excludeFieldList, other.excludeFieldList) && paginated == other.paginated
+                    && Objects.equals(cursor, other.cursor);
+        }
+
+        @Override
+        public String toString() {
+            return "Key [query=" + query + ", operator=" + operator + ", topK=" + topK + ", documentId=" + documentId + ", source="
+                    + source + ", sourceId=" + sourceId + ", author=" + author + ", startDate=" + startDate + ", endDate=" + endDate
+                    + ", permissions=" + permissions + ", roles=" + roles + ", virtualHost=" + virtualHost + ", embedding="
+                    + (embedding != null ? embedding.length + " dims" : null) + ", highlight=" + highlight
+                    + ", includeFieldList=" + includeFieldList + ", excludeFieldList=" + excludeFieldList + ", paginated=" + paginated
+                    + ", cursor=" + cursor + "]";
+        }
+    }
+}
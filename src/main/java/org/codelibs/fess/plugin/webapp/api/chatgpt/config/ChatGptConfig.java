@@ -0,0 +1,791 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.config;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import org.codelibs.core.lang.StringUtil;
+
+/**
+ * An immutable snapshot of the plugin settings.
+ * A new snapshot replaces the current one when the settings are reloaded.
+ * The settings of thread pools, caches, limiters and the reload interval are read only when the plugin starts.
+ */
+public class ChatGptConfig {
+    protected final String[] responseFields;
+
+    protected final String baseUrl;
+
+    protected final List<String> defaultRoleList;
+
+    protected final List<String> defaultVirtualHostList;
+
+    protected final String defaultHost;
+
+    protected final String defaultConfigId;
+
+    protected final int docMaxLength;
+
+    protected final boolean multiSearchEnabled;
+
+    protected final int upsertBulkSize;
+
+    protected final long upsertBulkBytes;
+
+    protected final int upsertBulkThreads;
+
+    protected final boolean upsertChunkEnabled;
+
+    protected final int upsertChunkSize;
+
+    protected final int upsertChunkOverlap;
+
+    protected final long upsertFileMaxSize;
+
+    protected final String upsertDigestField;
+
+    protected final String embeddingField;
+
+    protected final int embeddingDimension;
+
+    protected final int hybridRankWindowSize;
+
+    protected final int hybridRankConstant;
+
+    protected final boolean compressionEnabled;
+
+    protected final int compressionThreshold;
+
+    protected final int compressionLevel;
+
+    protected final long compressionMaxInflatedSize;
+
+    protected final int deleteBatchSize;
+
+    protected final float deleteRequestsPerSecond;
+
+    protected final int deleteSlices;
+
+    protected final int highlightFragmentSize;
+
+    protected final int highlightNumberOfFragments;
+
+    protected final long queryCacheSize;
+
+    protected final long queryCacheTtl;
+
+    protected final int jobThreads;
+
+    protected final int jobQueueSize;
+
+    protected final long jobRetention;
+
+    protected final boolean asyncEnabled;
+
+    protected final int asyncMaxConcurrency;
+
+    protected final long asyncTimeout;
+
+    protected final boolean concurrencyLimitEnabled;
+
+    protected final int concurrencyLimitInitial;
+
+    protected final int concurrencyLimitMin;
+
+    protected final int concurrencyLimitMax;
+
+    protected final double concurrencyLimitTolerance;
+
+    protected final double rateLimitTopKWeight;
+
+    protected final String wellKnownCacheControl;
+
+    protected final long configReloadInterval;
+
+    protected ChatGptConfig(final ConfigBuilder builder) {
+        responseFields = builder.responseFields;
+        baseUrl = builder.baseUrl;
+        defaultRoleList = builder.defaultRoleList;
+        defaultVirtualHostList = builder.defaultVirtualHostList;
+        defaultHost = builder.defaultHost;
+        defaultConfigId = builder.defaultConfigId;
+        docMaxLength = builder.docMaxLength;
+        multiSearchEnabled = builder.multiSearchEnabled;
+        upsertBulkSize = builder.upsertBulkSize;
+        upsertBulkBytes = builder.upsertBulkBytes;
+        upsertBulkThreads = builder.upsertBulkThreads;
+        upsertChunkEnabled = builder.upsertChunkEnabled;
+        upsertChunkSize = builder.upsertChunkSize;
+        upsertChunkOverlap = builder.upsertChunkOverlap;
+        upsertFileMaxSize = builder.upsertFileMaxSize;
+        upsertDigestField = builder.upsertDigestField;
+        embeddingField = builder.embeddingField;
+        embeddingDimension = builder.embeddingDimension;
+        hybridRankWindowSize = builder.hybridRankWindowSize;
+        hybridRankConstant = builder.hybridRankConstant;
+        compressionEnabled = builder.compressionEnabled;
+        compressionThreshold = builder.compressionThreshold;
+        compressionLevel = builder.compressionLevel;
+        compressionMaxInflatedSize = builder.compressionMaxInflatedSize;
+        deleteBatchSize = builder.deleteBatchSize;
+        deleteRequestsPerSecond = builder.deleteRequestsPerSecond;
+        deleteSlices = builder.deleteSlices;
+        highlightFragmentSize = builder.highlightFragmentSize;
+        highlightNumberOfFragments = builder.highlightNumberOfFragments;
+        queryCacheSize = builder.queryCacheSize;
+        queryCacheTtl = builder.queryCacheTtl;
+        jobThreads = builder.jobThreads;
+        jobQueueSize = builder.jobQueueSize;
+        jobRetention = builder.jobRetention;
+        asyncEnabled = builder.asyncEnabled;
+        asyncMaxConcurrency = builder.asyncMaxConcurrency;
+        asyncTimeout = builder.asyncTimeout;
+        concurrencyLimitEnabled = builder.concurrencyLimitEnabled;
+        concurrencyLimitInitial = builder.concurrencyLimitInitial;
+        concurrencyLimitMin = builder.concurrencyLimitMin;
+        concurrencyLimitMax = builder.concurrencyLimitMax;
+        concurrencyLimitTolerance = builder.concurrencyLimitTolerance;
+        rateLimitTopKWeight = builder.rateLimitTopKWeight;
+        wellKnownCacheControl = builder.wellKnownCacheControl;
+        configReloadInterval = builder.configReloadInterval;
+    }
+
+    /**
+     * @return The response fields, which include the embedding field if it is set. The array is shared and must not be modified.
+     */
+    public String[] getResponseFields() {
+        return responseFields;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public List<String> getDefaultRoleList() {
+        return defaultRoleList;
+    }
+
+    public List<String> getDefaultVirtualHostList() {
+        return defaultVirtualHostList;
+    }
+
+    public String getDefaultHost() {
+        return defaultHost;
+    }
+
+    public String getDefaultConfigId() {
+        return defaultConfigId;
+    }
+
+    public int getDocMaxLength() {
+        return docMaxLength;
+    }
+
+    public boolean isMultiSearchEnabled() {
+        return multiSearchEnabled;
+    }
+
+    public int getUpsertBulkSize() {
+        return upsertBulkSize;
+    }
+
+    public long getUpsertBulkBytes() {
+        return upsertBulkBytes;
+    }
+
+    public int getUpsertBulkThreads() {
+        return upsertBulkThreads;
+    }
+
+    public boolean isUpsertChunkEnabled() {
+        return upsertChunkEnabled;
+    }
+
+    public int getUpsertChunkSize() {
+        return upsertChunkSize;
+    }
+
+    public int getUpsertChunkOverlap() {
+        return upsertChunkOverlap;
+    }
+
+    public long getUpsertFileMaxSize() {
+        return upsertFileMaxSize;
+    }
+
+    /**
+     * @return The field storing the digest of upserted documents, or null if unchanged documents are rewritten.
+     */
+    public String getUpsertDigestField() {
+        return upsertDigestField;
+    }
+
+    /**
+     * @return The dense vector field for embeddings, or null if embeddings are not stored.
+     */
+    public String getEmbeddingField() {
+        return embeddingField;
+    }
+
+    /**
+     * @return The dimension of embeddings, or 0 if it is not checked.
+     */
+    public int getEmbeddingDimension() {
+        return embeddingDimension;
+    }
+
+    public int getHybridRankWindowSize() {
+        return hybridRankWindowSize;
+    }
+
+    public int getHybridRankConstant() {
+        return hybridRankConstant;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    /**
+     * @return The response size in bytes below which responses are sent uncompressed.
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * @return The maximum size in bytes of a gzip request body after inflating.
+     */
+    public long getCompressionMaxInflatedSize() {
+        return compressionMaxInflatedSize;
+    }
+
+    public int getDeleteBatchSize() {
+        return deleteBatchSize;
+    }
+
+    /**
+     * @return The throttle of delete-by-query in documents per second, or {@link Float#POSITIVE_INFINITY} if it is not throttled.
+     */
+    public float getDeleteRequestsPerSecond() {
+        return deleteRequestsPerSecond;
+    }
+
+    /**
+     * @return The number of slices of delete-by-query, or 0 to let the search engine decide it.
+     */
+    public int getDeleteSlices() {
+        return deleteSlices;
+    }
+
+    public int getHighlightFragmentSize() {
+        return highlightFragmentSize;
+    }
+
+    public int getHighlightNumberOfFragments() {
+        return highlightNumberOfFragments;
+    }
+
+    /**
+     * @return The maximum number of cached query results, or 0 if the cache is disabled.
+     */
+    public long getQueryCacheSize() {
+        return queryCacheSize;
+    }
+
+    /**
+     * @return The milliseconds for which a query result is cached.
+     */
+    public long getQueryCacheTtl() {
+        return queryCacheTtl;
+    }
+
+    public int getJobThreads() {
+        return jobThreads;
+    }
+
+    public int getJobQueueSize() {
+        return jobQueueSize;
+    }
+
+    /**
+     * @return The milliseconds for which a finished job is kept.
+     */
+    public long getJobRetention() {
+        return jobRetention;
+    }
+
+    public boolean isAsyncEnabled() {
+        return asyncEnabled;
+    }
+
+    public int getAsyncMaxConcurrency() {
+        return asyncMaxConcurrency;
+    }
+
+    /**
+     * @return The milliseconds after which an async request times out.
+     */
+    public long getAsyncTimeout() {
+        return asyncTimeout;
+    }
+
+    public boolean isConcurrencyLimitEnabled() {
+        return concurrencyLimitEnabled;
+    }
+
+    public int getConcurrencyLimitInitial() {
+        return concurrencyLimitInitial;
+    }
+
+    public int getConcurrencyLimitMin() {
+        return concurrencyLimitMin;
+    }
+
+    public int getConcurrencyLimitMax() {
+        return concurrencyLimitMax;
+    }
+
+    public double getConcurrencyLimitTolerance() {
+        return concurrencyLimitTolerance;
+    }
+
+    /**
+     * @return The query cost of a result in top_k.
+     */
+    public double getRateLimitTopKWeight() {
+        return rateLimitTopKWeight;
+    }
+
+    public String getWellKnownCacheControl() {
+        return wellKnownCacheControl;
+    }
+
+    /**
+     * @return The seconds between reloads of the settings, or 0 if they are not reloaded periodically.
+     */
+    public long getConfigReloadInterval() {
+        return configReloadInterval;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(Arrays.hashCode(responseFields), baseUrl, defaultRoleList, defaultVirtualHostList, defaultHost, defaultConfigId,
+                docMaxLength, multiSearchEnabled, upsertBulkSize, upsertBulkBytes, upsertBulkThreads, upsertChunkEnabled, upsertChunkSize,
+                upsertChunkOverlap, upsertFileMaxSize, upsertDigestField, embeddingField, embeddingDimension, hybridRankWindowSize,
+                hybridRankConstant, compressionEnabled, compressionThreshold, compressionLevel, compressionMaxInflatedSize, deleteBatchSize,
+                deleteRequestsPerSecond, deleteSlices, highlightFragmentSize, highlightNumberOfFragments, queryCacheSize, queryCacheTtl,
+                jobThreads, jobQueueSize, jobRetention, asyncEnabled, asyncMaxConcurrency, asyncTimeout, concurrencyLimitEnabled,
+                concurrencyLimitInitial, concurrencyLimitMin, concurrencyLimitMax, concurrencyLimitTolerance, rateLimitTopKWeight,
+                wellKnownCacheControl, configReloadInterval);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof final ChatGptConfig other)) {
+            return false;
+        }
+        return Arrays.equals(responseFields, other.responseFields) && Objects.equals(baseUrl, other.baseUrl)
+                && Objects.equals(defaultRoleList, other.defaultRoleList)
+                && Objects.equals(defaultVirtualHostList, other.defaultVirtualHostList) && Objects.equals(defaultHost, other.defaultHost)
+                && Objects.equals(defaultConfigId, other.defaultConfigId) && docMaxLength == other.docMaxLength
+                && multiSearchEnabled == other.multiSearchEnabled && upsertBulkSize == other.upsertBulkSize
+                && upsertBulkBytes == other.upsertBulkBytes && upsertBulkThreads == other.upsertBulkThreads
+                && upsertChunkEnabled == other.upsertChunkEnabled && upsertChunkSize == other.upsertChunkSize
+                && upsertChunkOverlap == other.upsertChunkOverlap && upsertFileMaxSize == other.upsertFileMaxSize
+                && Objects.equals(upsertDigestField, other.upsertDigestField) && Objects.equals(embeddingField, other.embeddingField)
+                && embeddingDimension == other.embeddingDimension && hybridRankWindowSize == other.hybridRankWindowSize
+                && hybridRankConstant == other.hybridRankConstant && compressionEnabled == other.compressionEnabled
+                && compressionThreshold == other.compressionThreshold && compressionLevel == other.compressionLevel
+                && compressionMaxInflatedSize == other.compressionMaxInflatedSize && deleteBatchSize == other.deleteBatchSize
+                && Float.compare(deleteRequestsPerSecond, other.deleteRequestsPerSecond) == 0 && deleteSlices == other.deleteSlices
+                && highlightFragmentSize == other.highlightFragmentSize && highlightNumberOfFragments == other.highlightNumberOfFragments
+                && queryCacheSize == other.queryCacheSize && queryCacheTtl == other.queryCacheTtl && jobThreads == other.jobThreads
+                && jobQueueSize == other.jobQueueSize && jobRetention == other.jobRetention && asyncEnabled == other.asyncEnabled
+                && asyncMaxConcurrency == other.asyncMaxConcurrency && asyncTimeout == other.asyncTimeout
+                && concurrencyLimitEnabled == other.concurrencyLimitEnabled && concurrencyLimitInitial == other.concurrencyLimitInitial
+                && concurrencyLimitMin == other.concurrencyLimitMin && concurrencyLimitMax == other.concurrencyLimitMax
+                && Double.compare(concurrencyLimitTolerance, other.concurrencyLimitTolerance) == 0
+                && Double.compare(rateLimitTopKWeight, other.rateLimitTopKWeight) == 0
+                && Objects.equals(wellKnownCacheControl, other.wellKnownCacheControl) && configReloadInterval == other.configReloadInterval;
+    }
+
+    @Override
+    public String toString() {
+        return "ChatGptConfig [responseFields=" + Arrays.toString(responseFields) + ", baseUrl=" + baseUrl + ", defaultRoleList="
+                + defaultRoleList + ", defaultVirtualHostList=" + defaultVirtualHostList + ", defaultHost=" + defaultHost
+                + ", defaultConfigId=" + defaultConfigId + ", docMaxLength=" + docMaxLength + ", multiSearchEnabled=" + multiSearchEnabled
+                + ", upsertBulkSize=" + upsertBulkSize + ", upsertBulkBytes=" + upsertBulkBytes + ", upsertBulkThreads=" + upsertBulkThreads
+                + ", upsertChunkEnabled=" + upsertChunkEnabled + ", upsertChunkSize=" + upsertChunkSize + ", upsertChunkOverlap="
+                + upsertChunkOverlap + ", upsertFileMaxSize=" + upsertFileMaxSize + ", upsertDigestField=" + upsertDigestField
+                + ", embeddingField=" + embeddingField + ", embeddingDimension=" + embeddingDimension + ", hybridRankWindowSize="
+                + hybridRankWindowSize + ", hybridRankConstant=" + hybridRankConstant + ", compressionEnabled=" + compressionEnabled
+                + ", compressionThreshold=" + compressionThreshold + ", compressionLevel=" + compressionLevel
+                + ", compressionMaxInflatedSize=" + compressionMaxInflatedSize + ", deleteBatchSize=" + deleteBatchSize
+                + ", deleteRequestsPerSecond=" + deleteRequestsPerSecond + ", deleteSlices=" + deleteSlices + ", highlightFragmentSize="
+                + highlightFragmentSize + ", highlightNumberOfFragments=" + highlightNumberOfFragments + ", queryCacheSize="
+                + queryCacheSize + ", queryCacheTtl=" + queryCacheTtl + ", jobThreads=" + jobThreads + ", jobQueueSize=" + jobQueueSize
+                + ", jobRetention=" + jobRetention + ", asyncEnabled=" + asyncEnabled + ", asyncMaxConcurrency=" + asyncMaxConcurrency
+                + ", asyncTimeout=" + asyncTimeout + ", concurrencyLimitEnabled=" + concurrencyLimitEnabled + ", concurrencyLimitInitial="
+                + concurrencyLimitInitial + ", concurrencyLimitMin=" + concurrencyLimitMin + ", concurrencyLimitMax=" + concurrencyLimitMax
+                + ", concurrencyLimitTolerance=" + concurrencyLimitTolerance + ", rateLimitTopKWeight=" + rateLimitTopKWeight
+                + ", wellKnownCacheControl=" + wellKnownCacheControl + ", configReloadInterval=" + configReloadInterval + "]";
+    }
+
+    public static class ConfigBuilder {
+        protected String[] responseFields = StringUtil.EMPTY_STRINGS;
+
+        protected String baseUrl;
+
+        protected List<String> defaultRoleList = Collections.emptyList();
+
+        protected List<String> defaultVirtualHostList = Collections.emptyList();
+
+        protected String defaultHost;
+
+        protected String defaultConfigId;
+
+        protected int docMaxLength;
+
+        protected boolean multiSearchEnabled;
+
+        protected int upsertBulkSize;
+
+        protected long upsertBulkBytes;
+
+        protected int upsertBulkThreads;
+
+        protected boolean upsertChunkEnabled;
+
+        protected int upsertChunkSize;
+
+        protected int upsertChunkOverlap;
+
+        protected long upsertFileMaxSize;
+
+        protected String upsertDigestField;
+
+        protected String embeddingField;
+
+        protected int embeddingDimension;
+
+        protected int hybridRankWindowSize;
+
+        protected int hybridRankConstant;
+
+        protected boolean compressionEnabled;
+
+        protected int compressionThreshold;
+
+        protected int compressionLevel;
+
+        protected long compressionMaxInflatedSize;
+
+        protected int deleteBatchSize;
+
+        protected float deleteRequestsPerSecond;
+
+        protected int deleteSlices;
+
+        protected int highlightFragmentSize;
+
+        protected int highlightNumberOfFragments;
+
+        protected long queryCacheSize;
+
+        protected long queryCacheTtl;
+
+        protected int jobThreads;
+
+        protected int jobQueueSize;
+
+        protected long jobRetention;
+
+        protected boolean asyncEnabled;
+
+        protected int asyncMaxConcurrency;
+
+        protected long asyncTimeout;
+
+        protected boolean concurrencyLimitEnabled;
+
+        protected int concurrencyLimitInitial;
+
+        protected int concurrencyLimitMin;
+
+        protected int concurrencyLimitMax;
+
+        protected double concurrencyLimitTolerance;
+
+        protected double rateLimitTopKWeight;
+
+        protected String wellKnownCacheControl;
+
+        protected long configReloadInterval;
+
+        public ChatGptConfig build() {
+            if (embeddingField != null && !Arrays.asList(responseFields).contains(embeddingField)) {
+                // embeddings are returned unless a query excludes them
+                responseFields = Arrays.copyOf(responseFields, responseFields.length + 1);
+                responseFields[responseFields.length - 1] = embeddingField;
+            }
+            return new ChatGptConfig(this);
+        }
+
+        public ConfigBuilder responseFields(final String value) {
+            responseFields = split(value).toArray(n -> new String[n]);
+            return this;
+        }
+
+        public ConfigBuilder baseUrl(final String baseUrl) {
+            this.baseUrl = baseUrl;
+            return this;
+        }
+
+        public ConfigBuilder defaultRoles(final String value) {
+            defaultRoleList = split(value);
+            return this;
+        }
+
+        public ConfigBuilder defaultVirtualHosts(final String value) {
+            defaultVirtualHostList = split(value);
+            return this;
+        }
+
+        public ConfigBuilder defaultHost(final String defaultHost) {
+            this.defaultHost = defaultHost;
+            return this;
+        }
+
+        public ConfigBuilder defaultConfigId(final String defaultConfigId) {
+            this.defaultConfigId = defaultConfigId;
+            return this;
+        }
+
+        public ConfigBuilder docMaxLength(final String value) {
+            docMaxLength = Integer.parseInt(value);
+            return this;
+        }
+
+        public ConfigBuilder multiSearchEnabled(final String value) {
+            multiSearchEnabled = Boolean.parseBoolean(value);
+            return this;
+        }
+
+        public ConfigBuilder upsertBulkSize(final String value) {
+            upsertBulkSize = Integer.parseInt(value);
+            return this;
+        }
+
+        public ConfigBuilder upsertBulkBytes(final String value) {
+            upsertBulkBytes = Long.parseLong(value);
+            return this;
+        }
+
+        public ConfigBuilder upsertBulkThreads(final String value) {
+            upsertBulkThreads = Integer.parseInt(value);
+            return this;
+        }
+
+        public ConfigBuilder upsertChunkEnabled(final String value) {
+            upsertChunkEnabled = Boolean.parseBoolean(value);
+            return this;
+        }
+
+        public ConfigBuilder upsertChunkSize(final String value) {
+            upsertChunkSize = Integer.parseInt(value);
+            return this;
+        }
+
+        public ConfigBuilder upsertChunkOverlap(final String value) {
+            upsertChunkOverlap = Integer.parseInt(value);
+            return this;
+        }
+
+        public ConfigBuilder upsertFileMaxSize(final String value) {
+            upsertFileMaxSize = Long.parseLong(value);
+            return this;
+        }
+
+        public ConfigBuilder upsertDigestField(final String value) {
+            upsertDigestField = StringUtil.isNotBlank(value) ? value.trim() : null;
+            return this;
+        }
+
+        public ConfigBuilder embeddingField(final String value) {
+            embeddingField = StringUtil.isNotBlank(value) ? value.trim() : null;
+            return this;
+        }
+
+        public ConfigBuilder embeddingDimension(final String value) {
+            embeddingDimension = Integer.parseInt(value);
+            return this;
+        }
+
+        public ConfigBuilder hybridRankWindowSize(final String value) {
+            hybridRankWindowSize = Integer.parseInt(value);
+            return this;
+        }
+
+        public ConfigBuilder hybridRankConstant(final String value) {
+            hybridRankConstant = Integer.parseInt(value);
+            return this;
+        }
+
+        public ConfigBuilder compressionEnabled(final String value) {
+            compressionEnabled = Boolean.parseBoolean(value);
+            return this;
+        }
+
+        public ConfigBuilder compressionThreshold(final String value) {
+            compressionThreshold = Integer.parseInt(value);
+            return this;
+        }
+
+        public ConfigBuilder compressionLevel(final String value) {
+            compressionLevel = Integer.parseInt(value);
+            return this;
+        }
+
+        public ConfigBuilder compressionMaxInflatedSize(final String value) {
+            compressionMaxInflatedSize = Long.parseLong(value);
+            return this;
+        }
+
+        public ConfigBuilder deleteBatchSize(final String value) {
+            deleteBatchSize = Integer.parseInt(value);
+            return this;
+        }
+
+        public ConfigBuilder deleteRequestsPerSecond(final String value) {
+            final float requestsPerSecond = Float.parseFloat(value);
+            deleteRequestsPerSecond = requestsPerSecond > 0 ? requestsPerSecond : Float.POSITIVE_INFINITY;
+            return this;
+        }
+
+        public ConfigBuilder deleteSlices(final String value) {
+            deleteSlices = "auto".equalsIgnoreCase(value.trim()) ? 0 : Integer.parseInt(value.trim());
+            return this;
+        }
+
+        public ConfigBuilder highlightFragmentSize(final String value) {
+            highlightFragmentSize = Math.max(Integer.parseInt(value), 1);
+            return this;
+        }
+
+        public ConfigBuilder highlightNumberOfFragments(final String value) {
+            highlightNumberOfFragments = Math.max(Integer.parseInt(value), 1);
+            return this;
+        }
+
+        public ConfigBuilder queryCacheSize(final String value) {
+            queryCacheSize = Long.parseLong(value);
+            return this;
+        }
+
+        public ConfigBuilder queryCacheTtl(final String value) {
+            queryCacheTtl = Long.parseLong(value);
+            return this;
+        }
+
+        public ConfigBuilder jobThreads(final String value) {
+            jobThreads = Integer.parseInt(value);
+            return this;
+        }
+
+        public ConfigBuilder jobQueueSize(final String value) {
+            jobQueueSize = Integer.parseInt(value);
+            return this;
+        }
+
+        public ConfigBuilder jobRetention(final String value) {
+            jobRetention = Long.parseLong(value);
+            return this;
+        }
+
+        public ConfigBuilder asyncEnabled(final String value) {
+            asyncEnabled = Boolean.parseBoolean(value);
+            return this;
+        }
+
+        public ConfigBuilder asyncMaxConcurrency(final String value) {
+            asyncMaxConcurrency = Integer.parseInt(value);
+            return this;
+        }
+
+        public ConfigBuilder asyncTimeout(final String value) {
+            asyncTimeout = Long.parseLong(value);
+            return this;
+        }
+
+        public ConfigBuilder concurrencyLimitEnabled(final String value) {
+            concurrencyLimitEnabled = Boolean.parseBoolean(value);
+            return this;
+        }
+
+        public ConfigBuilder concurrencyLimitInitial(final String value) {
+            concurrencyLimitInitial = Integer.parseInt(value);
+            return this;
+        }
+
+        public ConfigBuilder concurrencyLimitMin(final String value) {
+            concurrencyLimitMin = Integer.parseInt(value);
+            return this;
+        }
+
+        public ConfigBuilder concurrencyLimitMax(final String value) {
+            concurrencyLimitMax = Integer.parseInt(value);
+            return this;
+        }
+
+        public ConfigBuilder concurrencyLimitTolerance(final String value) {
+            concurrencyLimitTolerance = Double.parseDouble(value);
+            return this;
+        }
+
+        public ConfigBuilder rateLimitTopKWeight(final String value) {
+            rateLimitTopKWeight = Double.parseDouble(value);
+            return this;
+        }
+
+        public ConfigBuilder wellKnownCacheControl(final String value) {
+            wellKnownCacheControl = value;
+            return this;
+        }
+
+        public ConfigBuilder configReloadInterval(final String value) {
+            configReloadInterval = Long.parseLong(value);
+            return this;
+        }
+
+        protected static List<String> split(final String value) {
+            if (StringUtil.isBlank(value)) {
+                return Collections.emptyList();
+            }
+            return Arrays.stream(value.split(",")).filter(StringUtil::isNotBlank).toList();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.entity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Query.Filter;
+
+public class DeleteRequest {
+    protected List<String> idList = Collections.emptyList();
+
+    protected Filter filter;
+
+    protected boolean deleteAll;
+
+    protected DeleteRequest() {
+        // use DeleteRequestBuilder
+    }
+
+    public List<String> getIdList() {
+        return idList;
+    }
+
+    /**
+     * @return The filter, or null if documents are not deleted by a filter.
+     */
+    public Filter getFilter() {
+        return filter;
+    }
+
+    public boolean isDeleteAll() {
+        return deleteAll;
+    }
+
+    /**
+     * @return true if the request selects no document.
+     */
+    public boolean isEmpty() {
+        return !deleteAll && idList.isEmpty() && (filter == null || filter.isEmpty());
+    }
+
+    public static class DeleteRequestBuilder {
+        final DeleteRequest request = new DeleteRequest();
+
+        public DeleteRequest build() {
+            return request;
+        }
+
+        public DeleteRequestBuilder id(final String id) {
+            if (request.idList.isEmpty()) {
+                request.idList = new ArrayList<>();
+            }
+            request.idList.add(id);
+            return this;
+        }
+
+        public DeleteRequestBuilder filter(final Filter filter) {
+            request.filter = filter;
+            return this;
+        }
+
+        public DeleteRequestBuilder deleteAll(final boolean deleteAll) {
+            request.deleteAll = deleteAll;
+            return this;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DeleteRequest [ids=" + idList.size() + ", filter=" + filter + ", deleteAll=" + deleteAll + "]";
+    }
+}
@@ -19,7 +19,9 @@ import org.codelibs.fess.plugin.webapp.api.chatgpt.util.DateUtil;
 
 public class Document {
     protected String id;
-    protected final String text;
+    protected String text;
+    protected String parentId;
+    protected float[] embedding;
     protected final Metadata metadata;
 
     public Document(final String text) {
@@ -35,6 +37,17 @@ public class Document {
         return text;
     }
 
+    public String getParentId() {
+        return parentId;
+    }
+
+    /**
+     * @return The embedding supplied by the client, or null.
+     */
+    public float[] getEmbedding() {
+        return embedding;
+    }
+
     public Metadata getMetadata() {
         return metadata;
     }
@@ -78,11 +91,35 @@ public class Document {
             return document;
         }
 
+        public DocumentBuilder text(final String text) {
+            document.text = text;
+            return this;
+        }
+
         public DocumentBuilder id(final String id) {
             document.id = id;
             return this;
         }
 
+        public DocumentBuilder parentId(final String parentId) {
+            document.parentId = parentId;
+            return this;
+        }
+
+        public DocumentBuilder embedding(final float[] embedding) {
+            document.embedding = embedding;
+            return this;
+        }
+
+        public DocumentBuilder metadata(final Metadata metadata) {
+            document.metadata.source = metadata.source;
+            document.metadata.sourceId = metadata.sourceId;
+            document.metadata.url = metadata.url;
+            document.metadata.author = metadata.author;
+            document.metadata.createdAt = metadata.createdAt;
+            return this;
+        }
+
         public DocumentBuilder source(final String source) {
             if (Source.EMAIL.name().equalsIgnoreCase(source)) {
                 document.metadata.source = Source.EMAIL;
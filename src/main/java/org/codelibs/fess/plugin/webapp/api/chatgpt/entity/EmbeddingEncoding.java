@@ -0,0 +1,170 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.entity;
+
+import java.util.Locale;
+
+import org.codelibs.fess.plugin.webapp.api.chatgpt.util.JsonEncoder;
+
+/**
+ * Encodings of embeddings in query results.
+ * The binary encodings are written as Base64 of little-endian values.
+ */
+public enum EmbeddingEncoding {
+    /** An array of decimal numbers. */
+    JSON(0),
+    /** IEEE 754 single precision values. */
+    FLOAT32(4),
+    /** IEEE 754 half precision values. */
+    FLOAT16(2),
+    /** Signed bytes. A value is restored by multiplying the byte by embedding_scale. */
+    INT8(1);
+
+    private final int bytesPerValue;
+
+    EmbeddingEncoding(final int bytesPerValue) {
+        this.bytesPerValue = bytesPerValue;
+    }
+
+    /**
+     * @param value The name of the encoding.
+     * @return The encoding, or JSON if the value is unknown.
+     */
+    public static EmbeddingEncoding of(final String value) {
+        if (value != null) {
+            for (final EmbeddingEncoding encoding : values()) {
+                if (encoding.name().equalsIgnoreCase(value.trim())) {
+                    return encoding;
+                }
+            }
+        }
+        return JSON;
+    }
+
+    public String getName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Writes the embedding fields of a document: "embedding", and "embedding_encoding" and "embedding_scale" if needed.
+     *
+     * @param vector The embedding.
+     * @param out The encoder.
+     */
+    public void writeJson(final float[] vector, final JsonEncoder out) {
+        if (this == JSON) {
+            out.append("\"embedding\":[");
+            for (int i = 0; i < vector.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append(vector[i]);
+            }
+            out.append(']');
+            return;
+        }
+
+        final byte[] bytes = out.getByteBuffer(vector.length * bytesPerValue);
+        float scale = 0.0f;
+        switch (this) {
+        case FLOAT32:
+            for (int i = 0; i < vector.length; i++) {
+                putInt(bytes, i * 4, Float.floatToIntBits(vector[i]));
+            }
+            break;
+        case FLOAT16:
+            for (int i = 0; i < vector.length; i++) {
+                putShort(bytes, i * 2, toFloat16(vector[i]));
+            }
+            break;
+        case INT8:
+            scale = getInt8Scale(vector);
+            for (int i = 0; i < vector.length; i++) {
+                bytes[i] = scale > 0.0f ? (byte) Math.max(-127, Math.min(127, Math.round(vector[i] / scale))) : 0;
+            }
+            break;
+        default:
+            break;
+        }
+        out.append("\"embedding\":\"").appendBase64(bytes, 0, vector.length * bytesPerValue).append("\",\"embedding_encoding\":\"")
+                .append(getName()).append('"');
+        if (this == INT8) {
+            out.append(",\"embedding_scale\":").append(scale);
+        }
+    }
+
+    protected static float getInt8Scale(final float[] vector) {
+        float max = 0.0f;
+        for (final float value : vector) {
+            if (Float.isFinite(value)) {
+                max = Math.max(max, Math.abs(value));
+            }
+        }
+        return max / 127.0f;
+    }
+
+    protected static void putInt(final byte[] bytes, final int offset, final int value) {
+        putShort(bytes, offset, value);
+        putShort(bytes, offset + 2, value >>> 16);
+    }
+
+    protected static void putShort(final byte[] bytes, final int offset, final int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+    }
+
+    /**
+     * Converts the value to IEEE 754 half precision, rounding to nearest even.
+     *
+     * @param value The value.
+     * @return The bits of the half precision value.
+     */
+    protected static int toFloat16(final float value) {
+        final int bits = Float.floatToRawIntBits(value);
+        final int sign = bits >>> 16 & 0x8000;
+        if ((bits & 0x7fffffff) >= 0x7f800000) {
+            // infinity or NaN
+            return sign | 0x7c00 | ((bits & 0x7fffff) != 0 ? 0x200 : 0);
+        }
+        final int exponent = (bits >>> 23 & 0xff) - 127 + 15;
+        int mantissa = bits & 0x7fffff;
+        if (exponent >= 0x1f) {
+            return sign | 0x7c00;
+        }
+        if (exponent <= 0) {
+            if (exponent < -10) {
+                return sign;
+            }
+            // subnormal
+            mantissa |= 0x800000;
+            final int shift = 14 - exponent;
+            final int halfway = 1 << shift - 1;
+            final int remainder = mantissa & (1 << shift) - 1;
+            int half = mantissa >> shift;
+            if (remainder > halfway || remainder == halfway && (half & 1) != 0) {
+                half++;
+            }
+            return sign | half;
+        }
+        int half = exponent << 10 | mantissa >> 13;
+        final int remainder = mantissa & 0x1fff;
+        if (remainder > 0x1000 || remainder == 0x1000 && (half & 1) != 0) {
+            // a carry into the exponent is the correct result, including infinity
+            half++;
+        }
+        return sign | half;
+    }
+}
@@ -15,6 +15,9 @@
  */
 package org.codelibs.fess.plugin.webapp.api.chatgpt.entity;
 
+import java.util.List;
+import java.util.Objects;
+
 import org.apache.lucene.queryparser.classic.QueryParser.Operator;
 import org.codelibs.fess.plugin.webapp.api.chatgpt.util.DateUtil;
 
@@ -22,7 +25,7 @@ public class Query {
 
     public static final String QUERY = "chatgpt.QUERY";
 
-    protected final String query;
+    protected String query;
 
     protected final Filter filter;
 
@@ -30,6 +33,18 @@ public class Query {
 
     protected Operator operator;
 
+    protected float[] embedding;
+
+    protected Highlight highlight;
+
+    protected List<String> includeFieldList;
+
+    protected List<String> excludeFieldList;
+
+    protected boolean paginated;
+
+    protected String cursor;
+
     protected Query(final String query) {
         this.query = query;
         this.filter = new Filter();
@@ -51,6 +66,48 @@ public class Query {
         return operator;
     }
 
+    /**
+     * @return The query embedding for the kNN search, or null for a keyword search only.
+     */
+    public float[] getEmbedding() {
+        return embedding;
+    }
+
+    /**
+     * @return The highlight settings, or null to return the text without highlighting.
+     */
+    public Highlight getHighlight() {
+        return highlight;
+    }
+
+    /**
+     * @return The names of the result fields to return, such as text and url, or null to return all fields.
+     */
+    public List<String> getIncludeFieldList() {
+        return includeFieldList;
+    }
+
+    /**
+     * @return The names of the result fields not to return, or null.
+     */
+    public List<String> getExcludeFieldList() {
+        return excludeFieldList;
+    }
+
+    /**
+     * @return true to return a cursor for the next page.
+     */
+    public boolean isPaginated() {
+        return paginated || cursor != null;
+    }
+
+    /**
+     * @return The cursor of the page to return, or null for the first page.
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
     public static class Filter {
         protected String documentId;
         protected Source source = Source.UNKNOWN;
@@ -83,6 +140,13 @@ public class Query {
             return DateUtil.format(endDate);
         }
 
+        /**
+         * @return true if no condition is set.
+         */
+        public boolean isEmpty() {
+            return documentId == null && source == Source.UNKNOWN && sourceId == null && author == null && startDate == 0L && endDate == 0L;
+        }
+
         @Override
         public String toString() {
             return "Filter [documentId=" + documentId + ", source=" + source + ", sourceId=" + sourceId + ", author=" + author
@@ -90,6 +154,56 @@ public class Query {
         }
     }
 
+    public static class Highlight {
+        protected int fragmentSize;
+        protected int numberOfFragments;
+        protected boolean textIncluded;
+
+        /**
+         * @return The number of characters of a fragment, or 0 for the default.
+         */
+        public int getFragmentSize() {
+            return fragmentSize;
+        }
+
+        /**
+         * @return The maximum number of fragments, or 0 for the default.
+         */
+        public int getNumberOfFragments() {
+            return numberOfFragments;
+        }
+
+        /**
+         * @return true to return the text alongside the fragments.
+         */
+        public boolean isTextIncluded() {
+            return textIncluded;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fragmentSize, numberOfFragments, textIncluded);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof final Highlight other)) {
+                return false;
+            }
+            return fragmentSize == other.fragmentSize && numberOfFragments == other.numberOfFragments
+                    && textIncluded == other.textIncluded;
+        }
+
+        @Override
+        public String toString() {
+            return "Highlight [fragmentSize=" + fragmentSize + ", numberOfFragments=" + numberOfFragments + ", textIncluded="
+                    + textIncluded + "]";
+        }
+    }
+
     public static class QueryBuilder {
         final Query query;
 
@@ -101,6 +215,11 @@ public class Query {
             return query;
         }
 
+        public QueryBuilder query(final String q) {
+            query.query = q;
+            return this;
+        }
+
         public QueryBuilder topK(final int topK) {
             query.topK = topK;
             return this;
@@ -115,6 +234,58 @@ public class Query {
             return this;
         }
 
+        public QueryBuilder embedding(final float[] embedding) {
+            query.embedding = embedding;
+            return this;
+        }
+
+        public QueryBuilder highlight(final boolean enabled) {
+            query.highlight = enabled ? new Highlight() : null;
+            return this;
+        }
+
+        public QueryBuilder fragmentSize(final int fragmentSize) {
+            getHighlight().fragmentSize = Math.max(fragmentSize, 0);
+            return this;
+        }
+
+        public QueryBuilder numberOfFragments(final int numberOfFragments) {
+            getHighlight().numberOfFragments = Math.max(numberOfFragments, 0);
+            return this;
+        }
+
+        public QueryBuilder textIncluded(final boolean textIncluded) {
+            getHighlight().textIncluded = textIncluded;
+            return this;
+        }
+
+        public QueryBuilder includeFields(final List<String> fieldList) {
+            query.includeFieldList = fieldList;
+            return this;
+        }
+
+        public QueryBuilder excludeFields(final List<String> fieldList) {
+            query.excludeFieldList = fieldList;
+            return this;
+        }
+
+        public QueryBuilder paginated(final boolean paginated) {
+            query.paginated = paginated;
+            return this;
+        }
+
+        public QueryBuilder cursor(final String cursor) {
+            query.cursor = cursor;
+            return this;
+        }
+
+        protected Highlight getHighlight() {
+            if (query.highlight == null) {
+                query.highlight = new Highlight();
+            }
+            return query.highlight;
+        }
+
         public QueryBuilder documentId(final String documentId) {
             query.filter.documentId = documentId;
             return this;
@@ -154,6 +325,9 @@ public class Query {
 
     @Override
     public String toString() {
-        return "Query [query=" + query + ", filter=" + filter + ", topK=" + topK + ", operator=" + operator + "]";
+        return "Query [query=" + query + ", filter=" + filter + ", topK=" + topK + ", operator=" + operator + ", embedding="
+                + (embedding != null ? embedding.length + " dims" : null) + ", highlight=" + highlight
+                + ", includeFieldList=" + includeFieldList + ", excludeFieldList=" + excludeFieldList + ", paginated=" + paginated
+                + ", cursor=" + cursor + "]";
     }
 }
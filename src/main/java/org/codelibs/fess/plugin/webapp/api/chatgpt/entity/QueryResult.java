@@ -15,38 +15,84 @@
  */
 package org.codelibs.fess.plugin.webapp.api.chatgpt.entity;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Objects;
+import java.util.function.Consumer;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.text.StringEscapeUtils;
-import org.apache.poi.util.StringUtil;
+import org.codelibs.core.lang.StringUtil;
 import org.codelibs.fess.Constants;
-import org.codelibs.fess.entity.SearchRenderData;
 import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.util.JsonEncoder;
 import org.codelibs.fess.util.ComponentUtil;
 
 public class QueryResult {
+    /**
+     * The key of the highlight fragments in a search hit.
+     */
+    public static final String HIGHLIGHTS = "chatgpt.highlights";
+
     protected final String query;
 
     protected final DocumentResult[] documents;
 
+    protected final String nextCursor;
+
     protected QueryResult(final String query, final DocumentResult[] documents) {
+        this(query, documents, null);
+    }
+
+    protected QueryResult(final String query, final DocumentResult[] documents, final String nextCursor) {
         this.query = query;
         this.documents = documents;
+        this.nextCursor = nextCursor;
     }
 
     public String toJsonString() {
-        final StringBuilder buf = new StringBuilder(1000);
-        buf.append("{\"query\":\"").append(StringEscapeUtils.escapeJson(query)).append("\"");
-        buf.append(",\"results\":[").append(Arrays.stream(documents).map(DocumentResult::toJsonString).collect(Collectors.joining(",")))
-                .append(']');
-        buf.append(",\"top_k\":").append(documents.length);
-        buf.append('}');
-        return buf.toString();
+        return toJsonString(this::writeJson);
+    }
+
+    /**
+     * @param query The query to echo.
+     * @return A result with the same documents for the query.
+     */
+    public QueryResult withQuery(final String query) {
+        if (Objects.equals(this.query, query)) {
+            return this;
+        }
+        return new QueryResult(query, documents, nextCursor);
+    }
+
+    /**
+     * @param nextCursor The cursor of the next page, or null if there is no next page.
+     * @return A result with the same documents and the cursor.
+     */
+    public QueryResult withNextCursor(final String nextCursor) {
+        return new QueryResult(query, documents, nextCursor);
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void writeJson(final JsonEncoder out) {
+        writeJson(out, EmbeddingEncoding.JSON);
+    }
+
+    public void writeJson(final JsonEncoder out, final EmbeddingEncoding embeddingEncoding) {
+        out.append("{\"query\":\"").appendEscaped(query).append("\",\"results\":[");
+        for (int i = 0; i < documents.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            documents[i].writeJson(out, embeddingEncoding);
+        }
+        out.append("],\"top_k\":").append(documents.length);
+        if (nextCursor != null) {
+            out.append(",\"next_cursor\":\"").appendEscaped(nextCursor).append('"');
+        }
+        out.append('}');
     }
 
     public static class DocumentResult {
@@ -54,6 +100,7 @@ public class QueryResult {
         protected String text;
         protected float score = 0.0f;
         protected float[] embedding = null;
+        protected String[] highlights = null;
         protected final DocumentMetadataResult metadata;
 
         public DocumentResult(final String id, final DocumentMetadataResult metadata) {
@@ -62,26 +109,35 @@ public class QueryResult {
         }
 
         public String toJsonString() {
-            final StringBuilder buf = new StringBuilder(100);
-            buf.append("{\"id\":\"").append(StringEscapeUtils.escapeJson(id)).append('"');
-            buf.append(",\"metadata\":").append(metadata.toJsonString());
-            buf.append(",\"score\":").append(score);
+            return QueryResult.toJsonString(this::writeJson);
+        }
+
+        public void writeJson(final JsonEncoder out) {
+            writeJson(out, EmbeddingEncoding.JSON);
+        }
+
+        public void writeJson(final JsonEncoder out, final EmbeddingEncoding embeddingEncoding) {
+            out.append("{\"id\":\"").appendEscaped(id).append("\",\"metadata\":");
+            metadata.writeJson(out);
+            out.append(",\"score\":").append(score);
             if (text != null) {
-                buf.append(",\"text\":\"").append(StringEscapeUtils.escapeJson(text)).append('"');
+                out.append(",\"text\":").appendString(text);
             }
-            if (embedding != null) {
-
-                buf.append(",\"embedding\":[");
-                if (embedding.length > 0) {
-                    buf.append(embedding[0]);
-                    for (int i = 1; i < embedding.length; i++) {
-                        buf.append(',').append(embedding[i]);
+            if (highlights != null) {
+                out.append(",\"highlights\":[");
+                for (int i = 0; i < highlights.length; i++) {
+                    if (i > 0) {
+                        out.append(',');
                     }
+                    out.appendString(highlights[i]);
                 }
-                buf.append(']');
+                out.append(']');
+            }
+            if (embedding != null) {
+                out.append(',');
+                embeddingEncoding.writeJson(embedding, out);
             }
-            buf.append('}');
-            return buf.toString();
+            out.append('}');
         }
     }
 
@@ -94,34 +150,64 @@ public class QueryResult {
         protected String documentId;
 
         public String toJsonString() {
-            final List<String> list = new ArrayList<>();
+            return QueryResult.toJsonString(this::writeJson);
+        }
+
+        public void writeJson(final JsonEncoder out) {
+            boolean first = true;
+            out.append('{');
             if (source != Source.UNKNOWN) {
-                list.add("\"source\":\"" + source.name() + "\"");
-            }
-            if (StringUtil.isNotBlank(sourceId)) {
-                list.add("\"source_id\":\"" + StringEscapeUtils.escapeJson(sourceId) + "\"");
+                out.append("\"source\":\"").append(source.name()).append('"');
+                first = false;
             }
-            if (StringUtil.isNotBlank(url)) {
-                list.add("\"url\":\"" + StringEscapeUtils.escapeJson(url) + "\"");
-            }
-            if (StringUtil.isNotBlank(createdAt)) {
-                list.add("\"created_at\":\"" + StringEscapeUtils.escapeJson(createdAt) + "\"");
-            }
-            if (StringUtil.isNotBlank(author)) {
-                list.add("\"author\":\"" + StringEscapeUtils.escapeJson(author) + "\"");
+            first = writeField(out, "source_id", sourceId, first);
+            first = writeField(out, "url", url, first);
+            first = writeField(out, "created_at", createdAt, first);
+            first = writeField(out, "author", author, first);
+            writeField(out, "document_id", documentId, first);
+            out.append('}');
+        }
+
+        protected static boolean writeField(final JsonEncoder out, final String name, final String value, final boolean first) {
+            if (StringUtil.isBlank(value)) {
+                return first;
             }
-            if (StringUtil.isNotBlank(documentId)) {
-                list.add("\"document_id\":\"" + StringEscapeUtils.escapeJson(documentId) + "\"");
+            if (!first) {
+                out.append(',');
             }
-            return "{" + list.stream().collect(Collectors.joining(",")) + "}";
+            out.append('"').append(name).append("\":").appendString(value);
+            return false;
         }
     }
 
-    public static QueryResult create(final Query query, final SearchRenderData data) {
-        final int maxTextLength = Integer.parseInt(System.getProperty("fess.chatgpt.doc.max_length", "5000"));
+    public static QueryResult create(final Query query, final List<Map<String, Object>> documentItems, final int maxTextLength) {
+        return create(query, documentItems, maxTextLength, null);
+    }
+
+    /**
+     * @param query The query.
+     * @param documentItems The search hits.
+     * @param maxTextLength The maximum length of the text of a document.
+     * @param embeddingField The field of the document embedding, or null not to return embeddings.
+     * @return The query result.
+     */
+    public static QueryResult create(final Query query, final List<Map<String, Object>> documentItems, final int maxTextLength,
+            final String embeddingField) {
+        return create(query, documentItems, maxTextLength, embeddingField, getMaxScore(documentItems));
+    }
+
+    /**
+     * @param query The query.
+     * @param documentItems The search hits.
+     * @param maxTextLength The maximum length of the text of a document.
+     * @param embeddingField The field of the document embedding, or null not to return embeddings.
+     * @param maxScore The score that the scores are divided by, such as the maximum score of the first page.
+     * @return The query result.
+     */
+    public static QueryResult create(final Query query, final List<Map<String, Object>> documentItems, final int maxTextLength,
+            final String embeddingField, final float maxScore) {
         final FessConfig fessConfig = ComponentUtil.getFessConfig();
-        final List<Map<String, Object>> documentItems = data.getDocumentItems();
-        final float maxScore = getMaxScore(documentItems);
+        final boolean textIncluded = query.getHighlight() == null || query.getHighlight().isTextIncluded();
         final DocumentResult[] documents = documentItems.stream().map(e -> {
             final DocumentMetadataResult metadata = new DocumentMetadataResult();
             if (e.get(fessConfig.getIndexFieldLabel()) instanceof final List<?> labelList) {
@@ -161,13 +247,19 @@ public class QueryResult {
             }
 
             final DocumentResult document = new DocumentResult(e.get(fessConfig.getIndexFieldId()).toString(), metadata);
-            if (e.get(fessConfig.getIndexFieldContent()) instanceof final String text) {
+            if (textIncluded && e.get(fessConfig.getIndexFieldContent()) instanceof final String text) {
                 if (text.length() > maxTextLength) {
                     document.text = StringUtils.abbreviate(text, maxTextLength);
                 } else {
                     document.text = text;
                 }
             }
+            if (e.get(HIGHLIGHTS) instanceof final String[] highlights) {
+                document.highlights = highlights;
+            }
+            if (embeddingField != null && e.get(embeddingField) instanceof final List<?> vector) {
+                document.embedding = toFloatArray(vector);
+            }
             if (e.get(Constants.SCORE) instanceof final Number score) {
                 document.score = score.floatValue() / maxScore;
             }
@@ -176,7 +268,27 @@ public class QueryResult {
         return new QueryResult(query.getQuery(), documents);
     }
 
-    protected static float getMaxScore(final List<Map<String, Object>> documentItems) {
+    protected static String toJsonString(final Consumer<JsonEncoder> jsonWriter) {
+        final JsonEncoder out = new JsonEncoder(1000);
+        jsonWriter.accept(out);
+        return out.toString();
+    }
+
+    protected static float[] toFloatArray(final List<?> vector) {
+        final float[] values = new float[vector.size()];
+        for (int i = 0; i < values.length; i++) {
+            if (vector.get(i) instanceof final Number value) {
+                values[i] = value.floatValue();
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @param documentItems The search hits sorted by score.
+     * @return The score of the first hit, or 1 if the scores are not larger than 1 and are returned as they are.
+     */
+    public static float getMaxScore(final List<Map<String, Object>> documentItems) {
         if (!documentItems.isEmpty()) {
             final Map<String, Object> doc = documentItems.get(0);
             if (doc.get(Constants.SCORE) instanceof final Number score && score.floatValue() > 1.0f) {
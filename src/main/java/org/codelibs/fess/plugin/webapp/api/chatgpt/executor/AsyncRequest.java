@@ -0,0 +1,138 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.executor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import org.codelibs.core.lang.StringUtil;
+
+/**
+ * Guards the body of a request detached from the container thread.
+ * After a timeout or an error, the container completes the request and recycles it,
+ * so once this request is closed, the worker's reads fail instead of reading the body of another request.
+ */
+public class AsyncRequest extends HttpServletRequestWrapper {
+    protected final Object lock = new Object();
+
+    protected volatile boolean closed;
+
+    protected ServletInputStream inputStream;
+
+    public AsyncRequest(final HttpServletRequest request) {
+        super(request);
+    }
+
+    /**
+     * Closes the request to the worker. A read in progress finishes before this method returns.
+     *
+     * @return false if the request is already closed.
+     */
+    public boolean close() {
+        synchronized (lock) {
+            if (closed) {
+                return false;
+            }
+            closed = true;
+            return true;
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    protected void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("The request is closed.");
+        }
+    }
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        synchronized (lock) {
+            checkOpen();
+            if (inputStream == null) {
+                final ServletInputStream in = super.getInputStream();
+                inputStream = new ServletInputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        synchronized (lock) {
+                            checkOpen();
+                            return in.read();
+                        }
+                    }
+
+                    @Override
+                    public int read(final byte[] b, final int off, final int len) throws IOException {
+                        synchronized (lock) {
+                            checkOpen();
+                            return in.read(b, off, len);
+                        }
+                    }
+
+                    @Override
+                    public int available() throws IOException {
+                        synchronized (lock) {
+                            checkOpen();
+                            return in.available();
+                        }
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        synchronized (lock) {
+                            if (!closed) {
+                                in.close();
+                            }
+                        }
+                    }
+
+                    @Override
+                    public boolean isFinished() {
+                        return closed || in.isFinished();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return !closed && in.isReady();
+                    }
+
+                    @Override
+                    public void setReadListener(final ReadListener readListener) {
+                        in.setReadListener(readListener);
+                    }
+                };
+            }
+            return inputStream;
+        }
+    }
+
+    @Override
+    public BufferedReader getReader() throws IOException {
+        final String encoding = getCharacterEncoding();
+        final Charset charset = StringUtil.isNotBlank(encoding) ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+        return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.executor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lastaflute.web.util.LaRequestUtil;
+import org.lastaflute.web.util.LaResponseUtil;
+
+/**
+ * Runs API requests detached from the container thread.
+ * Virtual threads are used when the running JVM provides them, and platform threads otherwise.
+ */
+public class AsyncRequestExecutor implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(AsyncRequestExecutor.class);
+
+    protected final ExecutorService executorService;
+
+    protected final Semaphore semaphore;
+
+    protected final long timeout;
+
+    public AsyncRequestExecutor(final int maxConcurrency, final long timeout) {
+        this.semaphore = new Semaphore(maxConcurrency);
+        this.timeout = timeout;
+        this.executorService = createExecutorService(maxConcurrency);
+    }
+
+    protected ExecutorService createExecutorService(final int maxConcurrency) {
+        try {
+            // available on Java 21 or later
+            final ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            if (logger.isInfoEnabled()) {
+                logger.info("Use virtual threads for async requests: maxConcurrency={}", maxConcurrency);
+            }
+            return executor;
+        } catch (final Exception e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Virtual threads are not available.", e);
+            }
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("Use platform threads for async requests: maxConcurrency={}", maxConcurrency);
+        }
+        final AtomicInteger counter = new AtomicInteger();
+        final ThreadFactory threadFactory = r -> {
+            final Thread thread = new Thread(r, "chatgpt-async-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(maxConcurrency, threadFactory);
+    }
+
+    /**
+     * Starts async processing for the request and runs the task on a worker thread.
+     * The task reads from a request and writes to a response that are closed when the request times out or fails,
+     * and the worker is interrupted then.
+     *
+     * @param request The request.
+     * @param response The response.
+     * @param task The task to process the request.
+     * @return false if the request cannot be detached and the caller should process it on the current thread.
+     */
+    public boolean execute(final HttpServletRequest request, final HttpServletResponse response, final AsyncTask task) {
+        if (!request.isAsyncSupported() || !semaphore.tryAcquire()) {
+            return false;
+        }
+
+        final AsyncContext asyncContext;
+        try {
+            asyncContext = request.startAsync(request, response);
+            asyncContext.setTimeout(timeout);
+        } catch (final IllegalStateException e) {
+            semaphore.release();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to start async processing.", e);
+            }
+            return false;
+        }
+
+        final AsyncExchange exchange = new AsyncExchange(new AsyncRequest(request), new AsyncResponse(response), asyncContext, task);
+        asyncContext.addListener(exchange);
+        try {
+            exchange.future = executorService.submit(exchange);
+        } catch (final RejectedExecutionException e) {
+            exchange.release();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to submit the task. Process it on the current thread.", e);
+            }
+            try {
+                task.run(exchange.request, exchange.response);
+            } finally {
+                exchange.complete();
+            }
+        }
+        return true;
+    }
+
+    protected void run(final HttpServletRequest request, final HttpServletResponse response, final AsyncTask task) {
+        LaRequestUtil.setRequest(request);
+        LaResponseUtil.setResponse(response);
+        try {
+            task.run(request, response);
+        } catch (final Exception e) {
+            logger.warn("Failed to process {}", request.getServletPath(), e);
+        } finally {
+            LaRequestUtil.setRequest(null);
+            LaResponseUtil.setResponse(null);
+        }
+    }
+
+    protected void complete(final AsyncContext asyncContext) {
+        try {
+            asyncContext.complete();
+        } catch (final IllegalStateException e) {
+            // timed out or already completed
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to complete the async context.", e);
+            }
+        }
+    }
+
+    /**
+     * Writes the error for a request that timed out or failed before the worker wrote its response.
+     */
+    protected void writeErrorResponse(final HttpServletResponse response, final int status, final String message) {
+        try {
+            if (response.isCommitted()) {
+                return;
+            }
+            response.reset();
+            response.setStatus(status);
+            response.setContentType("application/json; charset=UTF-8");
+            final ServletOutputStream out = response.getOutputStream();
+            out.write(("{\"detail\":[{\"msg\":\"" + message + "\"}]}").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (final IOException | IllegalStateException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to write the error response.", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                executorService.shutdownNow();
+            }
+        } catch (final InterruptedException e) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    public interface AsyncTask {
+        void run(HttpServletRequest request, HttpServletResponse response);
+    }
+
+    /**
+     * A request detached from the container thread. The worker and the container's timeout race to close the response,
+     * and only the winner closes the request and completes the async context.
+     */
+    protected class AsyncExchange implements Runnable, AsyncListener {
+        protected final AsyncRequest request;
+
+        protected final AsyncResponse response;
+
+        protected final AsyncContext asyncContext;
+
+        protected final AsyncTask task;
+
+        protected final AtomicBoolean started = new AtomicBoolean();
+
+        protected final AtomicBoolean released = new AtomicBoolean();
+
+        protected volatile Future<?> future;
+
+        protected AsyncExchange(final AsyncRequest request, final AsyncResponse response, final AsyncContext asyncContext,
+                final AsyncTask task) {
+            this.request = request;
+            this.response = response;
+            this.asyncContext = asyncContext;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            started.set(true);
+            try {
+                if (!response.isClosed()) {
+                    AsyncRequestExecutor.this.run(request, response, task);
+                }
+            } finally {
+                release();
+                complete();
+            }
+        }
+
+        @Override
+        public void onTimeout(final AsyncEvent event) throws IOException {
+            abort(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "The request timed out.");
+        }
+
+        @Override
+        public void onError(final AsyncEvent event) throws IOException {
+            abort(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "The request failed.");
+        }
+
+        @Override
+        public void onComplete(final AsyncEvent event) throws IOException {
+            // nothing to do
+        }
+
+        @Override
+        public void onStartAsync(final AsyncEvent event) throws IOException {
+            // nothing to do
+        }
+
+        protected void abort(final int status, final String message) {
+            if (!response.close()) {
+                // the worker has finished
+                return;
+            }
+            final Future<?> f = future;
+            if (f != null) {
+                f.cancel(true);
+            }
+            // the container recycles the request after the async context is completed
+            request.close();
+            if (!started.get()) {
+                // a cancelled task that has not started never releases the permit
+                release();
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Abort {}: {}", request.getServletPath(), message);
+            }
+            writeErrorResponse((HttpServletResponse) response.getResponse(), status, message);
+            AsyncRequestExecutor.this.complete(asyncContext);
+        }
+
+        protected void release() {
+            if (released.compareAndSet(false, true)) {
+                semaphore.release();
+            }
+        }
+
+        protected void complete() {
+            if (response.close()) {
+                request.close();
+                AsyncRequestExecutor.this.complete(asyncContext);
+            }
+        }
+    }
+}
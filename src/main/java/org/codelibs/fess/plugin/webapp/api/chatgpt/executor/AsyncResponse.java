@@ -0,0 +1,290 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.executor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Guards the response of a request detached from the container thread.
+ * After a timeout or an error, the container completes the request and recycles the response,
+ * so once this response is closed, the worker's writes and header changes are dropped.
+ */
+public class AsyncResponse extends HttpServletResponseWrapper {
+    protected final Object lock = new Object();
+
+    protected volatile boolean closed;
+
+    protected ServletOutputStream outputStream;
+
+    protected PrintWriter writer;
+
+    public AsyncResponse(final HttpServletResponse response) {
+        super(response);
+    }
+
+    /**
+     * Closes the response to the worker. A write in progress finishes before this method returns.
+     *
+     * @return false if the response is already closed.
+     */
+    public boolean close() {
+        synchronized (lock) {
+            if (closed) {
+                return false;
+            }
+            closed = true;
+            return true;
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    protected void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("The response is closed.");
+        }
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        synchronized (lock) {
+            checkOpen();
+            if (outputStream == null) {
+                final ServletOutputStream out = super.getOutputStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(final int b) throws IOException {
+                        synchronized (lock) {
+                            checkOpen();
+                            out.write(b);
+                        }
+                    }
+
+                    @Override
+                    public void write(final byte[] b, final int off, final int len) throws IOException {
+                        synchronized (lock) {
+                            checkOpen();
+                            out.write(b, off, len);
+                        }
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        synchronized (lock) {
+                            checkOpen();
+                            out.flush();
+                        }
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        synchronized (lock) {
+                            checkOpen();
+                            out.close();
+                        }
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return !closed && out.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(final WriteListener writeListener) {
+                        out.setWriteListener(writeListener);
+                    }
+                };
+            }
+            return outputStream;
+        }
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        synchronized (lock) {
+            checkOpen();
+            if (writer == null) {
+                final PrintWriter out = super.getWriter();
+                writer = new PrintWriter(new Writer() {
+                    @Override
+                    public void write(final char[] cbuf, final int off, final int len) throws IOException {
+                        synchronized (lock) {
+                            checkOpen();
+                            out.write(cbuf, off, len);
+                        }
+                    }
+
+                    @Override
+                    public void write(final String str, final int off, final int len) throws IOException {
+                        synchronized (lock) {
+                            checkOpen();
+                            out.write(str, off, len);
+                        }
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        synchronized (lock) {
+                            checkOpen();
+                            out.flush();
+                        }
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        synchronized (lock) {
+                            checkOpen();
+                            out.close();
+                        }
+                    }
+                }, false);
+            }
+            return writer;
+        }
+    }
+
+    @Override
+    public void setStatus(final int sc) {
+        synchronized (lock) {
+            if (!closed) {
+                super.setStatus(sc);
+            }
+        }
+    }
+
+    @Override
+    public void sendError(final int sc) throws IOException {
+        synchronized (lock) {
+            checkOpen();
+            super.sendError(sc);
+        }
+    }
+
+    @Override
+    public void sendError(final int sc, final String msg) throws IOException {
+        synchronized (lock) {
+            checkOpen();
+            super.sendError(sc, msg);
+        }
+    }
+
+    @Override
+    public void setHeader(final String name, final String value) {
+        synchronized (lock) {
+            if (!closed) {
+                super.setHeader(name, value);
+            }
+        }
+    }
+
+    @Override
+    public void addHeader(final String name, final String value) {
+        synchronized (lock) {
+            if (!closed) {
+                super.addHeader(name, value);
+            }
+        }
+    }
+
+    @Override
+    public void setIntHeader(final String name, final int value) {
+        synchronized (lock) {
+            if (!closed) {
+                super.setIntHeader(name, value);
+            }
+        }
+    }
+
+    @Override
+    public void setDateHeader(final String name, final long date) {
+        synchronized (lock) {
+            if (!closed) {
+                super.setDateHeader(name, date);
+            }
+        }
+    }
+
+    @Override
+    public void setContentType(final String type) {
+        synchronized (lock) {
+            if (!closed) {
+                super.setContentType(type);
+            }
+        }
+    }
+
+    @Override
+    public void setCharacterEncoding(final String charset) {
+        synchronized (lock) {
+            if (!closed) {
+                super.setCharacterEncoding(charset);
+            }
+        }
+    }
+
+    @Override
+    public void setContentLength(final int len) {
+        synchronized (lock) {
+            if (!closed) {
+                super.setContentLength(len);
+            }
+        }
+    }
+
+    @Override
+    public void setContentLengthLong(final long len) {
+        synchronized (lock) {
+            if (!closed) {
+                super.setContentLengthLong(len);
+            }
+        }
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        synchronized (lock) {
+            checkOpen();
+            super.flushBuffer();
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        synchronized (lock) {
+            if (!closed) {
+                super.resetBuffer();
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        synchronized (lock) {
+            if (!closed) {
+                super.reset();
+            }
+        }
+    }
+}
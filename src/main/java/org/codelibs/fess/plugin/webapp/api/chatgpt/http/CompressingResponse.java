@@ -0,0 +1,250 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.codelibs.core.lang.StringUtil;
+
+/**
+ * Compresses the response body with gzip once it reaches the threshold, and sends a smaller body as is.
+ * Flushes are deferred until the encoding is decided. After that, each flush sends the data compressed so far,
+ * so streamed responses stay streamed.
+ * The writer and the output stream share the same body, and {@link #finish()} must be called after the body is written.
+ */
+public class CompressingResponse extends HttpServletResponseWrapper {
+    protected final int threshold;
+
+    protected final int level;
+
+    protected CompressingOutputStream outputStream;
+
+    protected PrintWriter writer;
+
+    public CompressingResponse(final HttpServletResponse response, final int threshold, final int level) {
+        super(response);
+        this.threshold = Math.max(threshold, 0);
+        this.level = level;
+        response.addHeader("Vary", "Accept-Encoding");
+    }
+
+    public boolean isCompressed() {
+        return outputStream != null && outputStream.compressed;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (outputStream == null) {
+            outputStream = new CompressingOutputStream();
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            final String encoding = getCharacterEncoding();
+            final Charset charset = StringUtil.isNotBlank(encoding) ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+            writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), charset), false);
+        }
+        return writer;
+    }
+
+    @Override
+    public void setContentLength(final int len) {
+        // the length changes when the body is compressed
+    }
+
+    @Override
+    public void setContentLengthLong(final long len) {
+        // the length changes when the body is compressed
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (outputStream == null || !outputStream.isDecided()) {
+            // keep the response uncommitted until the encoding is decided
+            return;
+        }
+        outputStream.flush();
+        super.flushBuffer();
+    }
+
+    @Override
+    public boolean isCommitted() {
+        return isCompressed() || super.isCommitted();
+    }
+
+    @Override
+    public void resetBuffer() {
+        if (isCompressed()) {
+            throw new IllegalStateException("The response is already compressed.");
+        }
+        super.resetBuffer();
+        if (outputStream != null) {
+            outputStream.count = 0;
+        }
+        // characters buffered in the writer are discarded
+        writer = null;
+    }
+
+    @Override
+    public void reset() {
+        resetBuffer();
+        super.reset();
+        ((HttpServletResponse) getResponse()).addHeader("Vary", "Accept-Encoding");
+    }
+
+    /**
+     * Sends the rest of the body. The body is sent uncompressed if it is smaller than the threshold.
+     *
+     * @throws IOException if the body cannot be sent.
+     */
+    public void finish() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (outputStream != null) {
+            outputStream.finish();
+        }
+    }
+
+    protected class CompressingOutputStream extends ServletOutputStream {
+        protected byte[] buffer = new byte[Math.max(Math.min(threshold, 1024), 1)];
+
+        protected int count;
+
+        protected OutputStream out;
+
+        protected boolean compressed;
+
+        protected boolean finished;
+
+        @Override
+        public void write(final int b) throws IOException {
+            if (out == null) {
+                if (count + 1 < threshold) {
+                    ensureCapacity(count + 1);
+                    buffer[count++] = (byte) b;
+                    return;
+                }
+                startCompression();
+            }
+            out.write(b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (out == null) {
+                if (count + len < threshold) {
+                    ensureCapacity(count + len);
+                    System.arraycopy(b, off, buffer, count, len);
+                    count += len;
+                    return;
+                }
+                startCompression();
+            }
+            out.write(b, off, len);
+        }
+
+        protected void ensureCapacity(final int capacity) {
+            if (capacity > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.min(Math.max(capacity, buffer.length * 2), threshold));
+            }
+        }
+
+        protected boolean isDecided() {
+            return out != null;
+        }
+
+        protected void startCompression() throws IOException {
+            if (finished) {
+                throw new IOException("The response is already finished.");
+            }
+            final ServletOutputStream target = getResponse().getOutputStream();
+            if (getResponse().isCommitted()) {
+                // the header cannot be added anymore
+                out = target;
+            } else {
+                setHeader("Content-Encoding", "gzip");
+                out = new GZIPOutputStream(target, 8192, true) {
+                    {
+                        def.setLevel(level);
+                    }
+                };
+                compressed = true;
+            }
+            if (count > 0) {
+                out.write(buffer, 0, count);
+            }
+            buffer = null;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (out != null) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            getResponse().getOutputStream().close();
+        }
+
+        protected void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (out == null) {
+                out = getResponse().getOutputStream();
+                if (count > 0) {
+                    out.write(buffer, 0, count);
+                }
+                buffer = null;
+            } else if (compressed) {
+                ((GZIPOutputStream) out).finish();
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(final WriteListener writeListener) {
+            throw new UnsupportedOperationException("Non-blocking writes are not supported.");
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.http;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.codelibs.core.lang.StringUtil;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.exception.FessChatGptResponseException;
+
+/**
+ * Inflates a request body sent with Content-Encoding: gzip while it is read.
+ */
+public class InflatingRequest extends HttpServletRequestWrapper {
+    protected final long maxSize;
+
+    protected ServletInputStream inputStream;
+
+    /**
+     * @param request The request.
+     * @param maxSize The maximum size of the inflated body. Reading more fails with 413.
+     */
+    public InflatingRequest(final HttpServletRequest request, final long maxSize) {
+        super(request);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param contentEncoding The value of Content-Encoding.
+     * @return true if the body is gzip.
+     */
+    public static boolean isGzip(final String contentEncoding) {
+        if (contentEncoding == null) {
+            return false;
+        }
+        final String value = contentEncoding.trim();
+        return "gzip".equalsIgnoreCase(value) || "x-gzip".equalsIgnoreCase(value);
+    }
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        if (inputStream == null) {
+            final InputStream in;
+            try {
+                in = new GZIPInputStream(super.getInputStream(), 8192);
+            } catch (final ZipException e) {
+                throw new FessChatGptResponseException(HttpServletResponse.SC_BAD_REQUEST, "Invalid gzip request body.",
+                        StringUtil.EMPTY_STRINGS);
+            }
+            inputStream = new InflatingInputStream(in);
+        }
+        return inputStream;
+    }
+
+    @Override
+    public BufferedReader getReader() throws IOException {
+        final String encoding = getCharacterEncoding();
+        final Charset charset = StringUtil.isNotBlank(encoding) ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+        return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+    }
+
+    @Override
+    public int getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public long getContentLengthLong() {
+        return -1L;
+    }
+
+    @Override
+    public String getHeader(final String name) {
+        if ("Content-Encoding".equalsIgnoreCase(name) || "Content-Length".equalsIgnoreCase(name)) {
+            return null;
+        }
+        return super.getHeader(name);
+    }
+
+    protected class InflatingInputStream extends ServletInputStream {
+        protected final InputStream in;
+
+        protected long size;
+
+        protected boolean finished;
+
+        protected InflatingInputStream(final InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n;
+            try {
+                n = in.read(b, off, len);
+            } catch (final ZipException e) {
+                throw new FessChatGptResponseException(HttpServletResponse.SC_BAD_REQUEST, "Invalid gzip request body.",
+                        StringUtil.EMPTY_STRINGS);
+            }
+            if (n == -1) {
+                finished = true;
+                return -1;
+            }
+            size += n;
+            if (size > maxSize) {
+                throw new FessChatGptResponseException(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "The request is too large.",
+                        StringUtil.EMPTY_STRINGS);
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(final ReadListener readListener) {
+            throw new UnsupportedOperationException("Non-blocking reads are not supported.");
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Splits documents into bulk requests by count and size, and sends each bulk request
+ * while the documents of the next one are being prepared.
+ */
+public class BulkIndexer {
+    private static final Logger logger = LogManager.getLogger(BulkIndexer.class);
+
+    protected final int bulkSize;
+
+    protected final long bulkBytes;
+
+    protected final Executor executor;
+
+    protected final BulkRequester requester;
+
+    public BulkIndexer(final int bulkSize, final long bulkBytes, final Executor executor, final BulkRequester requester) {
+        this.bulkSize = bulkSize > 0 ? bulkSize : 1;
+        this.bulkBytes = bulkBytes;
+        this.executor = executor;
+        this.requester = requester;
+    }
+
+    /**
+     * Indexes documents and returns their ids in input order.
+     *
+     * @param docIterator The documents to index. Each document is created on the calling thread.
+     * @return The ids of the indexed documents.
+     */
+    public List<String> index(final Iterator<Map<String, Object>> docIterator) {
+        final List<String> idList = new ArrayList<>();
+        CompletableFuture<String[]> inFlight = null;
+        try {
+            List<Map<String, Object>> docList = new ArrayList<>();
+            long size = 0;
+            while (docIterator.hasNext()) {
+                final Map<String, Object> doc = docIterator.next();
+                docList.add(doc);
+                size += estimateSize(doc);
+                if (docList.size() >= bulkSize || bulkBytes > 0 && size >= bulkBytes) {
+                    inFlight = submit(docList, inFlight, idList);
+                    docList = new ArrayList<>();
+                    size = 0;
+                }
+            }
+            if (!docList.isEmpty()) {
+                inFlight = submit(docList, inFlight, idList);
+            }
+            if (inFlight != null) {
+                Collections.addAll(idList, await(inFlight));
+                inFlight = null;
+            }
+        } finally {
+            if (inFlight != null) {
+                // do not leave a bulk request running after the caller failed
+                try {
+                    inFlight.join();
+                } catch (final Exception e) {
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Failed to send a bulk request.", e);
+                    }
+                }
+            }
+        }
+        return idList;
+    }
+
+    protected CompletableFuture<String[]> submit(final List<Map<String, Object>> docList, final CompletableFuture<String[]> previous,
+            final List<String> idList) {
+        if (previous != null) {
+            Collections.addAll(idList, await(previous));
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Send a bulk request: {} documents", docList.size());
+        }
+        return CompletableFuture.supplyAsync(() -> requester.request(docList), executor);
+    }
+
+    protected String[] await(final CompletableFuture<String[]> future) {
+        try {
+            return future.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof final RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    protected long estimateSize(final Object value) {
+        if (value instanceof final CharSequence text) {
+            return text.length() + 2L;
+        }
+        if (value instanceof final Map<?, ?> map) {
+            long size = 2;
+            for (final Map.Entry<?, ?> entry : map.entrySet()) {
+                size += estimateSize(entry.getKey()) + estimateSize(entry.getValue()) + 2;
+            }
+            return size;
+        }
+        if (value instanceof final Collection<?> collection) {
+            long size = 2;
+            for (final Object o : collection) {
+                size += estimateSize(o) + 1;
+            }
+            return size;
+        }
+        if (value instanceof final float[] vector) {
+            return vector.length * 12L + 2;
+        }
+        if (value instanceof final Object[] array) {
+            long size = 2;
+            for (final Object o : array) {
+                size += estimateSize(o) + 1;
+            }
+            return size;
+        }
+        return 16;
+    }
+
+    @FunctionalInterface
+    public interface BulkRequester {
+        String[] request(List<Map<String, Object>> docList);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.core.lang.StringUtil;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.index.BulkIndexer.BulkRequester;
+
+/**
+ * Skips documents whose digest equals the digest of the indexed document with the same id,
+ * so that an unchanged document is not rewritten.
+ */
+public class DigestDeduplicator {
+    private static final Logger logger = LogManager.getLogger(DigestDeduplicator.class);
+
+    protected final String idField;
+
+    protected final String digestField;
+
+    protected final Function<List<String>, Map<String, String>> digestLoader;
+
+    protected final Set<String> unchangedIdSet = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param idField The id field.
+     * @param digestField The digest field, or null to index all documents.
+     * @param digestLoader Loads the digests of the indexed documents for ids.
+     */
+    public DigestDeduplicator(final String idField, final String digestField,
+            final Function<List<String>, Map<String, String>> digestLoader) {
+        this.idField = idField;
+        this.digestField = digestField;
+        this.digestLoader = digestLoader;
+    }
+
+    /**
+     * @param requester The requester to send changed documents.
+     * @return The requester returning the ids of changed and unchanged documents.
+     */
+    public BulkRequester wrap(final BulkRequester requester) {
+        if (digestField == null) {
+            return requester;
+        }
+        return docList -> {
+            final Map<String, String> digestMap = loadDigests(docList);
+            if (digestMap.isEmpty()) {
+                return requester.request(docList);
+            }
+            final List<Map<String, Object>> changedList = new ArrayList<>(docList.size());
+            final List<String> unchangedList = new ArrayList<>();
+            for (final Map<String, Object> doc : docList) {
+                final String id = (String) doc.get(idField);
+                final Object digest = doc.get(digestField);
+                if (digest != null && digest.equals(digestMap.get(id))) {
+                    unchangedList.add(id);
+                } else {
+                    changedList.add(doc);
+                }
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Skip {} unchanged documents in {} documents", unchangedList.size(), docList.size());
+            }
+            final String[] ids = changedList.isEmpty() ? StringUtil.EMPTY_STRINGS : requester.request(changedList);
+            unchangedIdSet.addAll(unchangedList);
+            final String[] allIds = new String[ids.length + unchangedList.size()];
+            System.arraycopy(ids, 0, allIds, 0, ids.length);
+            for (int i = 0; i < unchangedList.size(); i++) {
+                allIds[ids.length + i] = unchangedList.get(i);
+            }
+            return allIds;
+        };
+    }
+
+    protected Map<String, String> loadDigests(final List<Map<String, Object>> docList) {
+        final List<String> idList = new ArrayList<>(docList.size());
+        for (final Map<String, Object> doc : docList) {
+            if (doc.get(idField) instanceof final String id && doc.get(digestField) != null) {
+                idList.add(id);
+            }
+        }
+        if (idList.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        try {
+            return digestLoader.apply(idList);
+        } catch (final Exception e) {
+            logger.warn("Failed to load digests of {} documents. They are indexed without the check.", idList.size(), e);
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * @param idCollector The ids of the upserted documents.
+     * @return The ids of the documents whose passages were all unchanged.
+     */
+    public List<String> getUnchangedIdList(final UpsertIdCollector idCollector) {
+        if (unchangedIdSet.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<String> idList = new ArrayList<>();
+        for (final Map.Entry<String, List<String>> entry : idCollector.getPassageIdMap().entrySet()) {
+            if (unchangedIdSet.containsAll(entry.getValue())) {
+                idList.add(entry.getKey());
+            }
+        }
+        return idList;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.index;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits text into overlapping passages at sentence boundaries.
+ */
+public class PassageSplitter {
+    protected final int size;
+
+    protected final int overlap;
+
+    public PassageSplitter(final int size, final int overlap) {
+        this.size = Math.max(size, 1);
+        this.overlap = Math.max(Math.min(overlap, this.size / 2), 0);
+    }
+
+    public List<String> split(final String text) {
+        if (text.length() <= size) {
+            return Collections.singletonList(text);
+        }
+
+        final List<int[]> spanList = getSpans(text);
+        final List<String> passageList = new ArrayList<>();
+        final int numOfSpans = spanList.size();
+        int i = 0;
+        while (i < numOfSpans) {
+            final int start = spanList.get(i)[0];
+            int j = i;
+            while (j + 1 < numOfSpans && spanList.get(j + 1)[1] - start <= size) {
+                j++;
+            }
+            final int end = spanList.get(j)[1];
+            final String passage = text.substring(start, end).strip();
+            if (!passage.isEmpty()) {
+                passageList.add(passage);
+            }
+            if (j + 1 >= numOfSpans) {
+                break;
+            }
+            // start the next passage with trailing sentences that fit in the overlap
+            int k = j + 1;
+            while (k - 1 > i && end - spanList.get(k - 1)[0] <= overlap) {
+                k--;
+            }
+            i = k;
+        }
+        return passageList;
+    }
+
+    protected List<int[]> getSpans(final String text) {
+        final int maxSpanLength = overlap > 0 ? overlap : size;
+        final List<int[]> spanList = new ArrayList<>();
+        final BreakIterator iterator = BreakIterator.getSentenceInstance(Locale.ROOT);
+        iterator.setText(text);
+        int start = iterator.first();
+        for (int end = iterator.next(); end != BreakIterator.DONE; start = end, end = iterator.next()) {
+            if (end - start <= size) {
+                spanList.add(new int[] { start, end });
+                continue;
+            }
+            // a sentence longer than a passage is cut into pieces
+            for (int pos = start; pos < end; pos += maxSpanLength) {
+                spanList.add(new int[] { pos, Math.min(pos + maxSpanLength, end) });
+            }
+        }
+        return spanList;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.index;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codelibs.core.lang.StringUtil;
+
+/**
+ * Collects the ids of upserted documents. Passages are reported by the id of their parent document.
+ */
+public class UpsertIdCollector {
+    protected final List<String> idList = new ArrayList<>();
+
+    protected final Map<String, List<String>> passageIdMap = new LinkedHashMap<>();
+
+    public void add(final String id, final String parentId) {
+        final String docId = StringUtil.isBlank(parentId) ? id : parentId;
+        if (idList.isEmpty() || !idList.get(idList.size() - 1).equals(docId)) {
+            idList.add(docId);
+        }
+        passageIdMap.computeIfAbsent(docId, k -> new ArrayList<>()).add(id);
+    }
+
+    public List<String> getIdList() {
+        return idList;
+    }
+
+    /**
+     * @return The ids of the documents and their indexed passages.
+     */
+    public Map<String, List<String>> getPassageIdMap() {
+        return passageIdMap;
+    }
+}
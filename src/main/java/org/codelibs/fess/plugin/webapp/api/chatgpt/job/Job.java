@@ -0,0 +1,209 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.job;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.text.StringEscapeUtils;
+
+public class Job {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED;
+    }
+
+    protected final String id;
+
+    protected final String type;
+
+    protected final List<String> permissionList;
+
+    protected final long createdTime;
+
+    protected volatile long updatedTime;
+
+    protected volatile Status status = Status.QUEUED;
+
+    protected volatile String message;
+
+    protected final AtomicInteger processed = new AtomicInteger();
+
+    protected final AtomicInteger succeeded = new AtomicInteger();
+
+    protected final AtomicInteger failed = new AtomicInteger();
+
+    protected final List<String> idList = new ArrayList<>();
+
+    protected final List<String> unchangedIdList = new ArrayList<>();
+
+    protected final List<Failure> failureList = new ArrayList<>();
+
+    public Job(final String id, final String type, final List<String> permissionList, final long createdTime) {
+        this.id = id;
+        this.type = type;
+        this.permissionList = permissionList;
+        this.createdTime = createdTime;
+        this.updatedTime = createdTime;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public List<String> getPermissionList() {
+        return permissionList;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getUpdatedTime() {
+        return updatedTime;
+    }
+
+    public boolean isDone() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    public void start() {
+        status = Status.RUNNING;
+        updatedTime = System.currentTimeMillis();
+    }
+
+    public void complete() {
+        status = Status.COMPLETED;
+        updatedTime = System.currentTimeMillis();
+    }
+
+    public void fail(final String message) {
+        this.message = message;
+        status = Status.FAILED;
+        updatedTime = System.currentTimeMillis();
+    }
+
+    public void addSucceeded(final String[] ids) {
+        synchronized (idList) {
+            for (final String docId : ids) {
+                idList.add(docId);
+            }
+        }
+        processed.addAndGet(ids.length);
+        succeeded.addAndGet(ids.length);
+        updatedTime = System.currentTimeMillis();
+    }
+
+    public void addSucceeded(final long count) {
+        processed.addAndGet((int) count);
+        succeeded.addAndGet((int) count);
+        updatedTime = System.currentTimeMillis();
+    }
+
+    /**
+     * @param ids The ids of documents that were not rewritten because they were unchanged.
+     */
+    public void addUnchanged(final List<String> ids) {
+        synchronized (unchangedIdList) {
+            unchangedIdList.addAll(ids);
+        }
+        updatedTime = System.currentTimeMillis();
+    }
+
+    public void addFailure(final int position, final String docId, final String message) {
+        synchronized (failureList) {
+            failureList.add(new Failure(position, docId, message));
+        }
+        processed.incrementAndGet();
+        failed.incrementAndGet();
+        updatedTime = System.currentTimeMillis();
+    }
+
+    public String toJsonString() {
+        final StringBuilder buf = new StringBuilder(1000);
+        buf.append("{\"job_id\":\"").append(StringEscapeUtils.escapeJson(id)).append('"');
+        buf.append(",\"type\":\"").append(StringEscapeUtils.escapeJson(type)).append('"');
+        buf.append(",\"status\":\"").append(status.name().toLowerCase(Locale.ROOT)).append('"');
+        if (message != null) {
+            buf.append(",\"message\":\"").append(StringEscapeUtils.escapeJson(message)).append('"');
+        }
+        buf.append(",\"created_time\":").append(createdTime);
+        buf.append(",\"updated_time\":").append(updatedTime);
+        buf.append(",\"processed\":").append(processed.get());
+        buf.append(",\"succeeded\":").append(succeeded.get());
+        buf.append(",\"failed\":").append(failed.get());
+        buf.append(",\"ids\":[");
+        synchronized (idList) {
+            for (int i = 0; i < idList.size(); i++) {
+                if (i > 0) {
+                    buf.append(',');
+                }
+                buf.append('"').append(StringEscapeUtils.escapeJson(idList.get(i))).append('"');
+            }
+        }
+        buf.append("],\"unchanged\":[");
+        synchronized (unchangedIdList) {
+            for (int i = 0; i < unchangedIdList.size(); i++) {
+                if (i > 0) {
+                    buf.append(',');
+                }
+                buf.append('"').append(StringEscapeUtils.escapeJson(unchangedIdList.get(i))).append('"');
+            }
+        }
+        buf.append("],\"failures\":[");
+        synchronized (failureList) {
+            for (int i = 0; i < failureList.size(); i++) {
+                if (i > 0) {
+                    buf.append(',');
+                }
+                failureList.get(i).appendJson(buf);
+            }
+        }
+        buf.append("]}");
+        return buf.toString();
+    }
+
+    protected static class Failure {
+        protected final int position;
+
+        protected final String id;
+
+        protected final String message;
+
+        protected Failure(final int position, final String id, final String message) {
+            this.position = position;
+            this.id = id;
+            this.message = message;
+        }
+
+        protected void appendJson(final StringBuilder buf) {
+            buf.append('{');
+            if (position >= 0) {
+                buf.append("\"position\":").append(position).append(',');
+            }
+            if (id != null) {
+                buf.append("\"id\":\"").append(StringEscapeUtils.escapeJson(id)).append("\",");
+            }
+            buf.append("\"msg\":\"").append(StringEscapeUtils.escapeJson(message != null ? message : "Unknown error.")).append("\"}");
+        }
+    }
+}
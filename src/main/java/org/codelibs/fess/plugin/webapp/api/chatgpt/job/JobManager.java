@@ -0,0 +1,107 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.job;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs background jobs on a bounded worker pool and keeps their status for a retention period.
+ */
+public class JobManager implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(JobManager.class);
+
+    protected final ThreadPoolExecutor executor;
+
+    protected final Map<String, Job> jobMap = new ConcurrentHashMap<>();
+
+    protected final long retention;
+
+    public JobManager(final int numOfThreads, final int queueSize, final long retention) {
+        this.retention = retention;
+        final AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(numOfThreads, numOfThreads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), r -> {
+            final Thread thread = new Thread(r, "chatgpt-job-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Submits a job.
+     *
+     * @param type The job type.
+     * @param permissionList The permissions of the requester. Only the same permissions can see the job.
+     * @param task The task to run.
+     * @return The submitted job.
+     * @throws RejectedExecutionException if the queue is full.
+     */
+    public Job submit(final String type, final List<String> permissionList, final Consumer<Job> task) {
+        purge();
+        final Job job = new Job(UUID.randomUUID().toString().replace("-", ""), type, permissionList, System.currentTimeMillis());
+        jobMap.put(job.getId(), job);
+        try {
+            executor.execute(() -> {
+                job.start();
+                try {
+                    task.accept(job);
+                    if (!job.isDone()) {
+                        job.complete();
+                    }
+                } catch (final Exception e) {
+                    logger.warn("Failed to run the job: {}", job.getId(), e);
+                    job.fail(e.getMessage());
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            jobMap.remove(job.getId());
+            throw e;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Submitted {} job: {}", type, job.getId());
+        }
+        return job;
+    }
+
+    public Job getJob(final String id, final List<String> permissionList) {
+        final Job job = jobMap.get(id);
+        if (job == null || !job.getPermissionList().equals(permissionList)) {
+            return null;
+        }
+        return job;
+    }
+
+    protected void purge() {
+        final long now = System.currentTimeMillis();
+        jobMap.values().removeIf(job -> job.isDone() && now - job.getUpdatedTime() > retention);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits concurrent requests with a limit tuned from observed latency.
+ * The limit grows while the recent latency stays close to the long-term latency,
+ * and shrinks by the ratio between them when requests start to queue up.
+ */
+public class AdaptiveConcurrencyLimiter {
+    protected static final int LONG_WINDOW = 600;
+
+    protected static final int SHORT_WINDOW = 10;
+
+    protected static final double SMOOTHING = 0.2;
+
+    protected static final double BACKOFF_RATIO = 0.9;
+
+    protected final int minLimit;
+
+    protected final int maxLimit;
+
+    protected final double tolerance;
+
+    protected final LongSupplier clock;
+
+    protected final AtomicInteger inFlight = new AtomicInteger();
+
+    protected volatile int limit;
+
+    protected double estimatedLimit;
+
+    protected double longRtt;
+
+    protected double shortRtt;
+
+    protected long sampleCount;
+
+    /**
+     * @param initialLimit The limit before any latency is observed.
+     * @param minLimit The minimum limit.
+     * @param maxLimit The maximum limit.
+     * @param tolerance The ratio of the recent latency to the long-term latency that does not shrink the limit.
+     */
+    public AdaptiveConcurrencyLimiter(final int initialLimit, final int minLimit, final int maxLimit, final double tolerance) {
+        this(initialLimit, minLimit, maxLimit, tolerance, System::nanoTime);
+    }
+
+    protected AdaptiveConcurrencyLimiter(final int initialLimit, final int minLimit, final int maxLimit, final double tolerance,
+            final LongSupplier clock) {
+        this.minLimit = Math.max(minLimit, 1);
+        this.maxLimit = Math.max(maxLimit, this.minLimit);
+        this.tolerance = Math.max(tolerance, 1.0);
+        this.clock = clock;
+        this.estimatedLimit = Math.min(Math.max(initialLimit, this.minLimit), this.maxLimit);
+        this.limit = (int) estimatedLimit;
+    }
+
+    /**
+     * @return The permit to release when the request is done, or null if the limit is reached.
+     */
+    public Permit tryAcquire() {
+        while (true) {
+            final int current = inFlight.get();
+            if (current >= limit) {
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return new Permit(clock.getAsLong(), current + 1);
+            }
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return The seconds for a rejected client to wait, which is the long-term latency rounded up.
+     */
+    public long getRetryAfterSeconds() {
+        final double rtt;
+        synchronized (this) {
+            rtt = longRtt;
+        }
+        return Math.max(1L, (long) Math.ceil(rtt / TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    protected synchronized void onSample(final long rtt, final int inFlightAtStart) {
+        sampleCount++;
+        if (sampleCount == 1) {
+            longRtt = rtt;
+            shortRtt = rtt;
+        } else {
+            longRtt += (rtt - longRtt) / Math.min(sampleCount, LONG_WINDOW);
+            shortRtt += (rtt - shortRtt) / Math.min(sampleCount, SHORT_WINDOW);
+        }
+        if (longRtt / shortRtt > 2) {
+            // latency dropped for a while, so the long-term latency follows it faster
+            longRtt *= 0.95;
+        }
+        if (inFlightAtStart < estimatedLimit / 2) {
+            // the limit was not the bottleneck, so the latency tells nothing about it
+            return;
+        }
+        final double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / shortRtt));
+        final double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        updateLimit(estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING);
+    }
+
+    protected synchronized void onDropped() {
+        updateLimit(estimatedLimit * BACKOFF_RATIO);
+    }
+
+    protected void updateLimit(final double newLimit) {
+        estimatedLimit = Math.min(Math.max(newLimit, minLimit), maxLimit);
+        limit = (int) estimatedLimit;
+    }
+
+    public class Permit {
+        protected final long startTime;
+
+        protected final int inFlightAtStart;
+
+        protected boolean released;
+
+        protected Permit(final long startTime, final int inFlightAtStart) {
+            this.startTime = startTime;
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        /**
+         * Releases the permit and samples the latency of the request.
+         */
+        public void success() {
+            if (release()) {
+                onSample(clock.getAsLong() - startTime, inFlightAtStart);
+            }
+        }
+
+        /**
+         * Releases the permit of a request failed by overload, such as a timeout, and shrinks the limit.
+         */
+        public void dropped() {
+            if (release()) {
+                onDropped();
+            }
+        }
+
+        /**
+         * Releases the permit without sampling, such as for a request rejected by validation.
+         */
+        public void ignore() {
+            release();
+        }
+
+        protected boolean release() {
+            if (released) {
+                return false;
+            }
+            released = true;
+            inFlight.decrementAndGet();
+            return true;
+        }
+    }
+}
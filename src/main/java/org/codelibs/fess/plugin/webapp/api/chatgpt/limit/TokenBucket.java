@@ -0,0 +1,141 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket kept as the time at which the bucket becomes full again,
+ * so that a check is a single compare-and-set without locking.
+ */
+public class TokenBucket {
+    protected final double rate;
+
+    protected final double capacity;
+
+    protected final long interval;
+
+    protected final long tolerance;
+
+    protected final LongSupplier clock;
+
+    protected final AtomicLong fullTime;
+
+    /**
+     * @param rate The tokens added per second.
+     * @param capacity The maximum tokens, which is the allowed burst.
+     */
+    public TokenBucket(final double rate, final double capacity) {
+        this(rate, capacity, System::nanoTime);
+    }
+
+    protected TokenBucket(final double rate, final double capacity, final LongSupplier clock) {
+        this.rate = rate;
+        this.capacity = Math.max(capacity, 1.0);
+        this.interval = Math.max(1L, Math.round(TimeUnit.SECONDS.toNanos(1) / rate));
+        this.tolerance = (long) (this.capacity * interval);
+        this.clock = clock;
+        this.fullTime = new AtomicLong(clock.getAsLong());
+    }
+
+    /**
+     * Takes tokens if the bucket has enough of them. A cost larger than the capacity takes a full bucket.
+     *
+     * @param cost The number of tokens to take.
+     * @return true if the tokens are taken.
+     */
+    public boolean tryConsume(final double cost) {
+        final long amount = toNanos(cost);
+        while (true) {
+            final long now = clock.getAsLong();
+            final long current = fullTime.get();
+            final long next = Math.max(current, now) + amount;
+            if (next - now > tolerance) {
+                return false;
+            }
+            if (fullTime.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Takes tokens even if the bucket does not have enough of them, for a caller that waits instead of failing.
+     *
+     * @param cost The number of tokens to take.
+     * @return The nanoseconds to wait until the tokens are available.
+     */
+    public long reserve(final double cost) {
+        final long amount = toNanos(cost);
+        while (true) {
+            final long now = clock.getAsLong();
+            final long current = fullTime.get();
+            final long next = Math.max(current, now) + amount;
+            if (fullTime.compareAndSet(current, next)) {
+                return Math.max(0L, next - now - tolerance);
+            }
+        }
+    }
+
+    /**
+     * Gives back tokens that were taken for work that was not done. The bucket never exceeds its capacity.
+     *
+     * @param cost The number of tokens to give back.
+     */
+    public void refund(final double cost) {
+        final long amount = toNanos(cost);
+        while (true) {
+            final long now = clock.getAsLong();
+            final long current = fullTime.get();
+            if (current <= now || fullTime.compareAndSet(current, Math.max(current - amount, now))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return The tokens available now.
+     */
+    public long getRemaining() {
+        final long now = clock.getAsLong();
+        final long used = Math.max(fullTime.get(), now) - now;
+        return Math.max(0L, (tolerance - used) / interval);
+    }
+
+    /**
+     * @param cost The number of tokens to take.
+     * @return The seconds until the tokens are available, rounded up.
+     */
+    public long getRetryAfterSeconds(final double cost) {
+        final long now = clock.getAsLong();
+        final long wait = Math.max(fullTime.get(), now) + toNanos(cost) - now - tolerance;
+        return Math.max(1L, (long) Math.ceil((double) wait / TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public long getCapacity() {
+        return (long) capacity;
+    }
+
+    protected long toNanos(final double cost) {
+        return (long) (Math.min(Math.max(cost, 0.0), capacity) * interval);
+    }
+}
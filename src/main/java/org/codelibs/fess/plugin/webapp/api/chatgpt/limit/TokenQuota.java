@@ -0,0 +1,61 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.limit;
+
+/**
+ * Rate limits of an access token. A null bucket means that the rate is not limited.
+ */
+public class TokenQuota {
+    protected final TokenBucket requestBucket;
+
+    protected final TokenBucket documentBucket;
+
+    protected final TokenBucket queryCostBucket;
+
+    public TokenQuota(final TokenBucket requestBucket, final TokenBucket documentBucket, final TokenBucket queryCostBucket) {
+        this.requestBucket = requestBucket;
+        this.documentBucket = documentBucket;
+        this.queryCostBucket = queryCostBucket;
+    }
+
+    public TokenBucket getRequestBucket() {
+        return requestBucket;
+    }
+
+    public TokenBucket getDocumentBucket() {
+        return documentBucket;
+    }
+
+    public TokenBucket getQueryCostBucket() {
+        return queryCostBucket;
+    }
+
+    /**
+     * @param other The quota to compare with.
+     * @return true if both quotas have the same rates and capacities, so that the current buckets can be kept.
+     */
+    public boolean hasSameLimits(final TokenQuota other) {
+        return hasSameLimits(requestBucket, other.requestBucket) && hasSameLimits(documentBucket, other.documentBucket)
+                && hasSameLimits(queryCostBucket, other.queryCostBucket);
+    }
+
+    protected static boolean hasSameLimits(final TokenBucket bucket1, final TokenBucket bucket2) {
+        if (bucket1 == null || bucket2 == null) {
+            return bucket1 == bucket2;
+        }
+        return bucket1.getRate() == bucket2.getRate() && bucket1.getCapacity() == bucket2.getCapacity();
+    }
+}
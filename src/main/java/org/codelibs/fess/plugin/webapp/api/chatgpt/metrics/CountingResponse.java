@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.metrics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Counts the size of the response body.
+ * Characters written through the writer are counted as bytes,
+ * which is exact for the JSON responses because they only contain escaped ASCII.
+ */
+public class CountingResponse extends HttpServletResponseWrapper {
+    protected long count;
+
+    protected ServletOutputStream outputStream;
+
+    protected PrintWriter writer;
+
+    public CountingResponse(final HttpServletResponse response) {
+        super(response);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (outputStream == null) {
+            final ServletOutputStream out = super.getOutputStream();
+            outputStream = new ServletOutputStream() {
+                @Override
+                public void write(final int b) throws IOException {
+                    out.write(b);
+                    count++;
+                }
+
+                @Override
+                public void write(final byte[] b, final int off, final int len) throws IOException {
+                    out.write(b, off, len);
+                    count += len;
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    out.flush();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    out.close();
+                }
+
+                @Override
+                public boolean isReady() {
+                    return out.isReady();
+                }
+
+                @Override
+                public void setWriteListener(final WriteListener writeListener) {
+                    out.setWriteListener(writeListener);
+                }
+            };
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            final PrintWriter out = super.getWriter();
+            writer = new PrintWriter(new Writer() {
+                @Override
+                public void write(final char[] cbuf, final int off, final int len) {
+                    out.write(cbuf, off, len);
+                    count += len;
+                }
+
+                @Override
+                public void write(final String str, final int off, final int len) {
+                    out.write(str, off, len);
+                    count += len;
+                }
+
+                @Override
+                public void write(final int c) {
+                    out.write(c);
+                    count++;
+                }
+
+                @Override
+                public void flush() {
+                    out.flush();
+                }
+
+                @Override
+                public void close() {
+                    out.close();
+                }
+            }, false);
+        }
+        return writer;
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        count = 0;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        count = 0;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.metrics;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram with fixed upper bounds. Observations only update striped adders.
+ */
+public class Histogram {
+    public static final double[] LATENCY_SECONDS = { 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+
+    public static final double[] SIZE_BYTES = { 256, 1024, 4096, 16384, 65536, 262144, 1048576, 4194304, 16777216 };
+
+    public static final double[] BATCH_SIZE = { 1, 5, 10, 25, 50, 100, 250, 500, 1000 };
+
+    protected final double[] bounds;
+
+    // non-cumulative counts; the last one is for +Inf
+    protected final LongAdder[] counts;
+
+    protected final DoubleAdder sum = new DoubleAdder();
+
+    public Histogram(final double[] bounds) {
+        this.bounds = bounds;
+        counts = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void observe(final double value) {
+        int i = 0;
+        while (i < bounds.length && value > bounds[i]) {
+            i++;
+        }
+        counts[i].increment();
+        sum.add(value);
+    }
+
+    public void observeNanos(final long nanos) {
+        observe(nanos / 1_000_000_000.0);
+    }
+
+    public double[] getBounds() {
+        return bounds;
+    }
+
+    /**
+     * @return The cumulative counts for each bound followed by the total count.
+     */
+    public long[] getCumulativeCounts() {
+        final long[] values = new long[counts.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            total += counts[i].sum();
+            values[i] = total;
+        }
+        return values;
+    }
+
+    public double getSum() {
+        return sum.sum();
+    }
+}
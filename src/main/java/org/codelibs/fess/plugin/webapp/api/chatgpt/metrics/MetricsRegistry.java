@@ -0,0 +1,171 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+
+/**
+ * Holds metrics and writes them in the Prometheus text exposition format.
+ * Metrics are looked up by name and label values, so only bounded label values should be used.
+ */
+public class MetricsRegistry {
+    protected final Map<String, Family<?>> familyMap = new ConcurrentSkipListMap<>();
+
+    public Counter counter(final String name, final String help, final String... labels) {
+        return family(name, help, "counter", key -> new Counter()).get(labels);
+    }
+
+    public Histogram histogram(final String name, final String help, final double[] bounds, final String... labels) {
+        return family(name, help, "histogram", key -> new Histogram(bounds)).get(labels);
+    }
+
+    /**
+     * Registers a value read when the metrics are written.
+     *
+     * @param type "counter" or "gauge".
+     */
+    public void register(final String name, final String help, final String type, final DoubleSupplier supplier,
+            final String... labels) {
+        this.<DoubleSupplier> family(name, help, type, key -> supplier).metricMap.put(toLabelKey(labels), supplier);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected <T> Family<T> family(final String name, final String help, final String type, final Function<String, T> factory) {
+        return (Family<T>) familyMap.computeIfAbsent(name, k -> new Family<>(name, help, type, factory));
+    }
+
+    public void writeTo(final Writer out) throws IOException {
+        for (final Family<?> family : familyMap.values()) {
+            family.writeTo(out);
+        }
+    }
+
+    protected static String toLabelKey(final String[] labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (buf.length() > 0) {
+                buf.append(',');
+            }
+            buf.append(labels[i]).append("=\"");
+            escape(buf, labels[i + 1]);
+            buf.append('"');
+        }
+        return buf.toString();
+    }
+
+    protected static void escape(final StringBuilder buf, final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+            case '\\':
+                buf.append("\\\\");
+                break;
+            case '"':
+                buf.append("\\\"");
+                break;
+            case '\n':
+                buf.append("\\n");
+                break;
+            default:
+                buf.append(c);
+                break;
+            }
+        }
+    }
+
+    protected static String format(final double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    protected static class Family<T> {
+        protected final String name;
+
+        protected final String help;
+
+        protected final String type;
+
+        protected final Function<String, T> factory;
+
+        protected final Map<String, T> metricMap = new ConcurrentHashMap<>();
+
+        protected Family(final String name, final String help, final String type, final Function<String, T> factory) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.factory = factory;
+        }
+
+        protected T get(final String[] labels) {
+            final String key = toLabelKey(labels);
+            final T metric = metricMap.get(key);
+            if (metric != null) {
+                return metric;
+            }
+            return metricMap.computeIfAbsent(key, factory);
+        }
+
+        protected void writeTo(final Writer out) throws IOException {
+            out.write("# HELP " + name + " " + help + "\n");
+            out.write("# TYPE " + name + " " + type + "\n");
+            for (final Map.Entry<String, T> entry : new ConcurrentSkipListMap<>(metricMap).entrySet()) {
+                final String labels = entry.getKey();
+                final T metric = entry.getValue();
+                if (metric instanceof final Counter counter) {
+                    writeSample(out, name, labels, Long.toString(counter.get()));
+                } else if (metric instanceof final Histogram histogram) {
+                    final double[] bounds = histogram.getBounds();
+                    final long[] counts = histogram.getCumulativeCounts();
+                    for (int i = 0; i < bounds.length; i++) {
+                        writeSample(out, name + "_bucket", join(labels, "le=\"" + format(bounds[i]) + "\""), Long.toString(counts[i]));
+                    }
+                    writeSample(out, name + "_bucket", join(labels, "le=\"+Inf\""), Long.toString(counts[bounds.length]));
+                    writeSample(out, name + "_sum", labels, format(histogram.getSum()));
+                    writeSample(out, name + "_count", labels, Long.toString(counts[bounds.length]));
+                } else if (metric instanceof final DoubleSupplier supplier) {
+                    writeSample(out, name, labels, format(supplier.getAsDouble()));
+                }
+            }
+        }
+
+        protected static String join(final String labels, final String label) {
+            return labels.isEmpty() ? label : labels + "," + label;
+        }
+
+        protected static void writeSample(final Writer out, final String name, final String labels, final String value) throws IOException {
+            out.write(name);
+            if (!labels.isEmpty()) {
+                out.write('{');
+                out.write(labels);
+                out.write('}');
+            }
+            out.write(' ');
+            out.write(value);
+            out.write('\n');
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Metrics of the plugin endpoints.
+ */
+public class PluginMetrics {
+    public static final String PHASE_AUTH = "auth";
+
+    public static final String PHASE_PARSE = "parse";
+
+    public static final String PHASE_SEARCH = "search";
+
+    public static final String PHASE_SERIALIZE = "serialize";
+
+    protected final MetricsRegistry registry = new MetricsRegistry();
+
+    // label keys are built once per endpoint rather than on every request
+    protected final Map<String, EndpointMetrics> endpointMetricsMap = new ConcurrentHashMap<>();
+
+    protected final Histogram bulkDocuments = registry.histogram("chatgpt_bulk_request_documents",
+            "Number of documents and passages in a bulk request to the search engine.", Histogram.BATCH_SIZE);
+
+    protected final Histogram bulkDuration =
+            registry.histogram("chatgpt_bulk_duration_seconds", "Bulk request latency in seconds.", Histogram.LATENCY_SECONDS);
+
+    protected final Counter bulkFailures = registry.counter("chatgpt_bulk_failures_total", "Total number of failed bulk requests.");
+
+    public void recordRequest(final String endpoint, final int status, final long nanos, final long bytes) {
+        final EndpointMetrics endpointMetrics = getEndpointMetrics(endpoint);
+        endpointMetrics.requests.increment();
+        endpointMetrics.duration.observeNanos(nanos);
+        endpointMetrics.responseSize.observe(bytes);
+        if (status >= 400) {
+            endpointMetrics.getErrors(status).increment();
+        }
+    }
+
+    public void recordPhase(final String endpoint, final String phase, final long nanos) {
+        getEndpointMetrics(endpoint).getPhaseDuration(phase).observeNanos(nanos);
+    }
+
+    /**
+     * Records a bulk request to the search engine. An upsert request is split into one or more bulk requests.
+     *
+     * @param size The number of documents and passages in the bulk request.
+     */
+    public void recordBulk(final int size, final long nanos, final boolean failed) {
+        bulkDocuments.observe(size);
+        bulkDuration.observeNanos(nanos);
+        if (failed) {
+            bulkFailures.increment();
+        }
+    }
+
+    protected EndpointMetrics getEndpointMetrics(final String endpoint) {
+        final EndpointMetrics endpointMetrics = endpointMetricsMap.get(endpoint);
+        if (endpointMetrics != null) {
+            return endpointMetrics;
+        }
+        return endpointMetricsMap.computeIfAbsent(endpoint, k -> new EndpointMetrics(registry, k));
+    }
+
+    public void register(final String name, final String help, final String type, final DoubleSupplier supplier,
+            final String... labels) {
+        registry.register(name, help, type, supplier, labels);
+    }
+
+    public void writeTo(final Writer out) throws IOException {
+        registry.writeTo(out);
+    }
+
+    protected static class EndpointMetrics {
+        protected static final int MAX_STATUS = 600;
+
+        protected final MetricsRegistry registry;
+
+        protected final String endpoint;
+
+        protected final Counter requests;
+
+        protected final Histogram duration;
+
+        protected final Histogram responseSize;
+
+        protected final Map<String, Histogram> phaseDurationMap = new ConcurrentHashMap<>();
+
+        protected final AtomicReferenceArray<Counter> errors = new AtomicReferenceArray<>(MAX_STATUS);
+
+        protected EndpointMetrics(final MetricsRegistry registry, final String endpoint) {
+            this.registry = registry;
+            this.endpoint = endpoint;
+            requests = registry.counter("chatgpt_requests_total", "Total number of requests.", "endpoint", endpoint);
+            duration = registry.histogram("chatgpt_request_duration_seconds", "Request latency in seconds.", Histogram.LATENCY_SECONDS,
+                    "endpoint", endpoint);
+            responseSize = registry.histogram("chatgpt_response_size_bytes", "Response body size in bytes.", Histogram.SIZE_BYTES,
+                    "endpoint", endpoint);
+        }
+
+        protected Histogram getPhaseDuration(final String phase) {
+            final Histogram histogram = phaseDurationMap.get(phase);
+            if (histogram != null) {
+                return histogram;
+            }
+            return phaseDurationMap.computeIfAbsent(phase, k -> registry.histogram("chatgpt_phase_duration_seconds",
+                    "Latency of a request phase in seconds.", Histogram.LATENCY_SECONDS, "endpoint", endpoint, "phase", k));
+        }
+
+        protected Counter getErrors(final int status) {
+            if (status < 0 || status >= MAX_STATUS) {
+                return createErrors(status);
+            }
+            final Counter counter = errors.get(status);
+            if (counter != null) {
+                return counter;
+            }
+            // the registry returns the same counter to threads racing here
+            final Counter created = createErrors(status);
+            errors.set(status, created);
+            return created;
+        }
+
+        protected Counter createErrors(final int status) {
+            return registry.counter("chatgpt_errors_total", "Total number of error responses.", "endpoint", endpoint, "status",
+                    Integer.toString(status));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.DeleteRequest;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.DeleteRequest.DeleteRequestBuilder;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Query.QueryBuilder;
+import org.opensearch.core.xcontent.XContentParser;
+import org.opensearch.core.xcontent.XContentParser.Token;
+
+/**
+ * Reads a delete request with ids, a filter or delete_all.
+ */
+public class DeleteParser implements AutoCloseable {
+    protected final InputStream in;
+
+    protected XContentParser parser;
+
+    public DeleteParser(final InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (parser != null) {
+            parser.close();
+        }
+        in.close();
+    }
+
+    public DeleteRequest parse() throws IOException {
+        final DeleteRequestBuilder builder = new DeleteRequestBuilder();
+        parser = JsonArrayParser.createParser(in);
+        if (parser.nextToken() != Token.START_OBJECT) {
+            return builder.build();
+        }
+        JsonArrayParser.parseObject(parser, (name, p) -> {
+            switch (name) {
+            case "ids": {
+                if (p.currentToken() == Token.START_ARRAY) {
+                    Token token;
+                    while ((token = p.nextToken()) != Token.END_ARRAY) {
+                        if (token == Token.VALUE_STRING) {
+                            builder.id(p.text());
+                        } else {
+                            p.skipChildren();
+                        }
+                    }
+                }
+                break;
+            }
+            case "filter": {
+                if (p.currentToken() == Token.START_OBJECT) {
+                    final QueryBuilder filterBuilder = new QueryBuilder(null);
+                    QueryParser.parseFilter(p, filterBuilder);
+                    builder.filter(filterBuilder.build().getFilter());
+                }
+                break;
+            }
+            case "delete_all": {
+                if (p.currentToken() == Token.VALUE_BOOLEAN) {
+                    builder.deleteAll(p.booleanValue());
+                }
+                break;
+            }
+            default:
+                break;
+            }
+        });
+        return builder.build();
+    }
+}
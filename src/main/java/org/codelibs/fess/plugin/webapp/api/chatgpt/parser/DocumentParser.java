@@ -15,72 +15,108 @@
  */
 package org.codelibs.fess.plugin.webapp.api.chatgpt.parser;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.List;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
 
 import org.codelibs.core.exception.IORuntimeException;
 import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Document;
 import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Document.DocumentBuilder;
-import org.opensearch.common.xcontent.LoggingDeprecationHandler;
-import org.opensearch.common.xcontent.json.JsonXContent;
-import org.opensearch.core.xcontent.NamedXContentRegistry;
+import org.opensearch.core.xcontent.XContentParser;
 
-public class DocumentParser implements AutoCloseable {
-    private final InputStream in;
+public class DocumentParser extends JsonArrayParser<Document> {
 
     public DocumentParser(final InputStream in) {
-        this.in = in;
+        super(in, "documents");
+    }
 
+    public Document[] parse() {
+        return stream().toArray(n -> new Document[n]);
     }
 
     @Override
-    public void close() throws Exception {
-        in.close();
+    protected Document parseElement(final XContentParser parser) throws IOException {
+        final DocumentBuilder builder = new DocumentBuilder(null);
+        final boolean[] hasText = { false };
+        parseObject(parser, (name, p) -> {
+            switch (name) {
+            case "text": {
+                final String text = textValue(p);
+                if (text != null) {
+                    builder.text(text);
+                    hasText[0] = true;
+                }
+                break;
+            }
+            case "id": {
+                final String id = textValue(p);
+                if (id != null) {
+                    builder.id(id);
+                }
+                break;
+            }
+            case "metadata": {
+                if (p.currentToken() == XContentParser.Token.START_OBJECT) {
+                    parseMetadata(p, builder);
+                }
+                break;
+            }
+            case "embedding": {
+                final float[] embedding = floatArrayValue(p);
+                if (embedding != null) {
+                    builder.embedding(embedding);
+                }
+                break;
+            }
+            default:
+                break;
+            }
+        });
+        return hasText[0] ? builder.build() : null;
     }
 
-    public Document[] parse() {
-        try {
-            final Map<String, Object> requestBodyMap =
-                    JsonXContent.jsonXContent.createParser(NamedXContentRegistry.EMPTY, LoggingDeprecationHandler.INSTANCE, in).map();
-            if (requestBodyMap.get("documents") instanceof final List<?> documentList) {
-                return parseDocuments(documentList);
+    public static void parseMetadata(final String json, final DocumentBuilder builder) {
+        try (XContentParser parser = createParser(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)))) {
+            if (parser.nextToken() == XContentParser.Token.START_OBJECT) {
+                parseMetadata(parser, builder);
             }
         } catch (final IOException e) {
             throw new IORuntimeException(e);
         }
-        return new Document[0];
     }
 
-    private Document[] parseDocuments(final List<?> documentList) {
-        return documentList.stream().map(docObj -> {
-            if ((docObj instanceof final Map<?, ?> docMap) && (docMap.get("text") instanceof final String text)) {
-                final DocumentBuilder builder = new DocumentBuilder(text);
-                if (docMap.get("id") instanceof final String id) {
-                    builder.id(id);
-                }
-                if (docMap.get("metadata") instanceof final Map<?, ?> metadataMap) {
-                    if (metadataMap.get("source") instanceof final String source) {
-                        builder.source(source);
-                    }
-                    if (metadataMap.get("source_id") instanceof final String sourceId) {
-                        builder.sourceId(sourceId);
-                    }
-                    if (metadataMap.get("url") instanceof final String url) {
-                        builder.url(url);
-                    }
-                    if (metadataMap.get("author") instanceof final String author) {
-                        builder.author(author);
-                    }
-                    if (metadataMap.get("created_at") instanceof final String createdAt) {
-                        builder.createdAt(createdAt);
-                    }
-                }
-                return builder.build();
+    protected static void parseMetadata(final XContentParser parser, final DocumentBuilder builder) throws IOException {
+        parseObject(parser, (name, p) -> {
+            final String value = textValue(p);
+            if (value == null) {
+                return;
+            }
+            switch (name) {
+            case "source": {
+                builder.source(value);
+                break;
+            }
+            case "source_id": {
+                builder.sourceId(value);
+                break;
+            }
+            case "url": {
+                builder.url(value);
+                break;
+            }
+            case "author": {
+                builder.author(value);
+                break;
+            }
+            case "created_at": {
+                builder.createdAt(value);
+                break;
+            }
+            default:
+                break;
             }
-            return null;
-        }).filter(o -> o != null).toArray(n -> new Document[n]);
+        });
     }
 
 }
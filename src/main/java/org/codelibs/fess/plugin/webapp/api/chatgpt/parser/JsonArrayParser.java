@@ -0,0 +1,229 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.codelibs.core.exception.IORuntimeException;
+import org.codelibs.core.lang.StringUtil;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.exception.FessChatGptResponseException;
+import org.opensearch.common.xcontent.LoggingDeprecationHandler;
+import org.opensearch.common.xcontent.json.JsonXContent;
+import org.opensearch.core.xcontent.NamedXContentRegistry;
+import org.opensearch.core.xcontent.XContentParser;
+import org.opensearch.core.xcontent.XContentParser.Token;
+
+/**
+ * Reads objects in a top-level array field one at a time from the token stream,
+ * without materializing the whole request body.
+ */
+public abstract class JsonArrayParser<T> implements AutoCloseable {
+    protected final InputStream in;
+
+    protected final String fieldName;
+
+    protected XContentParser parser;
+
+    protected JsonArrayParser(final InputStream in, final String fieldName) {
+        this.in = in;
+        this.fieldName = fieldName;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (parser != null) {
+            parser.close();
+        }
+        in.close();
+    }
+
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    public Iterator<T> iterator() {
+        try {
+            parser = createParser(in);
+            if (!moveToArray()) {
+                return Collections.emptyIterator();
+            }
+        } catch (final IOException e) {
+            throw new IORuntimeException(e);
+        }
+        return new ElementIterator();
+    }
+
+    protected static XContentParser createParser(final InputStream in) throws IOException {
+        return JsonXContent.jsonXContent.createParser(NamedXContentRegistry.EMPTY, LoggingDeprecationHandler.INSTANCE, in);
+    }
+
+    protected boolean moveToArray() throws IOException {
+        if (parser.nextToken() != Token.START_OBJECT) {
+            return false;
+        }
+        Token token;
+        while ((token = parser.nextToken()) == Token.FIELD_NAME) {
+            final String name = parser.currentName();
+            token = parser.nextToken();
+            if (fieldName.equals(name) && token == Token.START_ARRAY) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    /**
+     * Parses an element of the array. The parser is positioned on START_OBJECT.
+     *
+     * @param parser The parser.
+     * @return The parsed object, or null to skip it.
+     * @throws IOException if the body cannot be read.
+     */
+    protected abstract T parseElement(XContentParser parser) throws IOException;
+
+    protected static void parseObject(final XContentParser parser, final FieldHandler handler) throws IOException {
+        Token token;
+        while ((token = parser.nextToken()) == Token.FIELD_NAME) {
+            final String name = parser.currentName();
+            parser.nextToken();
+            handler.handle(name, parser);
+            parser.skipChildren();
+        }
+        if (token != Token.END_OBJECT) {
+            throw new IOException("Unexpected token: " + token);
+        }
+    }
+
+    protected static String textValue(final XContentParser parser) throws IOException {
+        if (parser.currentToken() == Token.VALUE_STRING) {
+            return parser.text();
+        }
+        return null;
+    }
+
+    /**
+     * Reads an array of numbers. The parser is positioned on START_ARRAY and is left on END_ARRAY.
+     *
+     * @param parser The parser.
+     * @return The values, or null if the value is not an array.
+     * @throws IOException if the body cannot be read.
+     * @throws FessChatGptResponseException if the array contains a value other than a number.
+     */
+    protected static float[] floatArrayValue(final XContentParser parser) throws IOException {
+        if (parser.currentToken() != Token.START_ARRAY) {
+            return null;
+        }
+        float[] values = new float[256];
+        int size = 0;
+        Token token;
+        while ((token = parser.nextToken()) != Token.END_ARRAY) {
+            if (token != Token.VALUE_NUMBER) {
+                throw new FessChatGptResponseException(HttpServletResponse.SC_BAD_REQUEST, "Unexpected value in a number array: " + token,
+                        StringUtil.EMPTY_STRINGS);
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = parser.floatValue();
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Reads an array of strings, skipping other values. The parser is positioned on START_ARRAY and is left on END_ARRAY.
+     *
+     * @param parser The parser.
+     * @return The values, or null if the value is not an array.
+     * @throws IOException if the body cannot be read.
+     */
+    protected static List<String> stringListValue(final XContentParser parser) throws IOException {
+        if (parser.currentToken() != Token.START_ARRAY) {
+            return null;
+        }
+        final List<String> values = new ArrayList<>();
+        Token token;
+        while ((token = parser.nextToken()) != Token.END_ARRAY) {
+            if (token == Token.VALUE_STRING) {
+                values.add(parser.text());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return values;
+    }
+
+    @FunctionalInterface
+    protected interface FieldHandler {
+        void handle(String name, XContentParser parser) throws IOException;
+    }
+
+    protected class ElementIterator implements Iterator<T> {
+        private T next;
+
+        private boolean finished;
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (finished) {
+                return false;
+            }
+            try {
+                Token token;
+                while ((token = parser.nextToken()) != null && token != Token.END_ARRAY) {
+                    if (token == Token.START_OBJECT) {
+                        next = parseElement(parser);
+                        if (next != null) {
+                            return true;
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } catch (final IOException e) {
+                throw new IORuntimeException(e);
+            }
+            finished = true;
+            return false;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final T value = next;
+            next = null;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.core.lang.StringUtil;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.exception.FessChatGptResponseException;
+
+/**
+ * Reads multipart/form-data from a stream. File parts are spooled to temporary files,
+ * so the uploaded content is never held on the heap.
+ */
+public class MultipartParser implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(MultipartParser.class);
+
+    protected static final byte[] CRLF = { '\r', '\n' };
+
+    protected static final byte[] HEADER_SEPARATOR = { '\r', '\n', '\r', '\n' };
+
+    protected static final byte[] DASH_DASH = { '-', '-' };
+
+    protected static final int MAX_HEADER_SIZE = 8 * 1024;
+
+    protected static final int MAX_FIELD_SIZE = 1024 * 1024;
+
+    protected final InputStream in;
+
+    protected final byte[] boundary;
+
+    protected final byte[] delimiter;
+
+    protected final long maxFileSize;
+
+    protected final byte[] buffer = new byte[64 * 1024];
+
+    protected int head;
+
+    protected int tail;
+
+    protected final List<Part> partList = new ArrayList<>();
+
+    public MultipartParser(final InputStream in, final String boundary, final long maxFileSize) {
+        this.in = in;
+        this.boundary = ("--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.maxFileSize = maxFileSize;
+    }
+
+    public static String getBoundary(final String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/form-data")) {
+            return null;
+        }
+        final String boundary = getParameters(contentType).get("boundary");
+        return StringUtil.isNotBlank(boundary) ? boundary : null;
+    }
+
+    public List<Part> parse() throws IOException {
+        if (!readUntil(boundary, null, 0)) {
+            throw new FessChatGptResponseException(HttpServletResponse.SC_BAD_REQUEST, "Invalid multipart request.",
+                    StringUtil.EMPTY_STRINGS);
+        }
+        while (true) {
+            if (startsWith(DASH_DASH)) {
+                break;
+            }
+            if (!startsWith(CRLF)) {
+                throw new FessChatGptResponseException(HttpServletResponse.SC_BAD_REQUEST, "Invalid multipart request.",
+                        StringUtil.EMPTY_STRINGS);
+            }
+            head += CRLF.length;
+
+            final Map<String, String> headers;
+            if (startsWith(CRLF)) {
+                head += CRLF.length;
+                headers = new HashMap<>();
+            } else {
+                final ByteArrayOutputStream headerOut = new ByteArrayOutputStream();
+                if (!readUntil(HEADER_SEPARATOR, headerOut, MAX_HEADER_SIZE)) {
+                    throw new FessChatGptResponseException(HttpServletResponse.SC_BAD_REQUEST, "Invalid multipart request.",
+                            StringUtil.EMPTY_STRINGS);
+                }
+                headers = parseHeaders(new String(headerOut.toByteArray(), StandardCharsets.UTF_8));
+            }
+
+            final Map<String, String> disposition = getParameters(headers.getOrDefault("content-disposition", StringUtil.EMPTY));
+            final Part part = new Part(disposition.get("name"), disposition.get("filename"), headers.get("content-type"));
+            partList.add(part);
+            final boolean found;
+            if (part.filename != null) {
+                part.file = Files.createTempFile("chatgpt-upload-", ".tmp");
+                try (OutputStream out = Files.newOutputStream(part.file)) {
+                    found = readUntil(delimiter, out, maxFileSize);
+                }
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Stored {} to {}", part.filename, part.file);
+                }
+            } else {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                found = readUntil(delimiter, out, MAX_FIELD_SIZE);
+                part.value = new String(out.toByteArray(), StandardCharsets.UTF_8);
+            }
+            if (!found) {
+                throw new FessChatGptResponseException(HttpServletResponse.SC_BAD_REQUEST, "Invalid multipart request.",
+                        StringUtil.EMPTY_STRINGS);
+            }
+        }
+        return partList;
+    }
+
+    /**
+     * Reads bytes until the pattern and consumes the pattern.
+     *
+     * @param pattern The pattern to find.
+     * @param out The stream to write bytes before the pattern, or null to discard them.
+     * @param limit The maximum number of bytes to write, or 0 for no limit.
+     * @return true if the pattern is found.
+     * @throws IOException if the stream cannot be read.
+     */
+    protected boolean readUntil(final byte[] pattern, final OutputStream out, final long limit) throws IOException {
+        long size = 0;
+        while (true) {
+            final int index = indexOf(pattern);
+            final int end = index >= 0 ? index : Math.max(head, tail - pattern.length + 1);
+            if (end > head) {
+                size += end - head;
+                if (limit > 0 && size > limit) {
+                    throw new FessChatGptResponseException(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "The request is too large.",
+                            StringUtil.EMPTY_STRINGS);
+                }
+                if (out != null) {
+                    out.write(buffer, head, end - head);
+                }
+                head = end;
+            }
+            if (index >= 0) {
+                head += pattern.length;
+                return true;
+            }
+            if (!fill()) {
+                return false;
+            }
+        }
+    }
+
+    protected boolean startsWith(final byte[] bytes) throws IOException {
+        while (tail - head < bytes.length) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer[head + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected int indexOf(final byte[] pattern) {
+        final int last = tail - pattern.length;
+        for (int i = head; i <= last; i++) {
+            int j = 0;
+            while (j < pattern.length && buffer[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    protected boolean fill() throws IOException {
+        if (head > 0) {
+            System.arraycopy(buffer, head, buffer, 0, tail - head);
+            tail -= head;
+            head = 0;
+        }
+        if (tail == buffer.length) {
+            throw new IOException("The buffer is full.");
+        }
+        final int len = in.read(buffer, tail, buffer.length - tail);
+        if (len < 0) {
+            return false;
+        }
+        tail += len;
+        return true;
+    }
+
+    protected static Map<String, String> parseHeaders(final String value) {
+        final Map<String, String> headers = new HashMap<>();
+        for (final String line : value.split("\r\n")) {
+            final int pos = line.indexOf(':');
+            if (pos > 0) {
+                headers.put(line.substring(0, pos).trim().toLowerCase(Locale.ROOT), line.substring(pos + 1).trim());
+            }
+        }
+        return headers;
+    }
+
+    protected static Map<String, String> getParameters(final String value) {
+        final Map<String, String> params = new HashMap<>();
+        for (final String param : value.split(";")) {
+            final int pos = param.indexOf('=');
+            if (pos > 0) {
+                String paramValue = param.substring(pos + 1).trim();
+                if (paramValue.length() > 1 && paramValue.startsWith("\"") && paramValue.endsWith("\"")) {
+                    paramValue = paramValue.substring(1, paramValue.length() - 1);
+                }
+                params.put(param.substring(0, pos).trim().toLowerCase(Locale.ROOT), paramValue);
+            }
+        }
+        return params;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (final Part part : partList) {
+            if (part.file != null) {
+                try {
+                    Files.deleteIfExists(part.file);
+                } catch (final IOException e) {
+                    logger.warn("Failed to delete {}", part.file, e);
+                }
+            }
+        }
+        in.close();
+    }
+
+    public static class Part {
+        protected final String name;
+
+        protected final String filename;
+
+        protected final String contentType;
+
+        protected Path file;
+
+        protected String value;
+
+        protected Part(final String name, final String filename, final String contentType) {
+            this.name = name;
+            this.filename = filename;
+            this.contentType = contentType;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+}
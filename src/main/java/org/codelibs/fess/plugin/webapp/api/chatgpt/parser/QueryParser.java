@@ -18,74 +18,180 @@ package org.codelibs.fess.plugin.webapp.api.chatgpt.parser;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
-import java.util.Map;
 
-import org.codelibs.core.exception.IORuntimeException;
 import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Query;
 import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Query.QueryBuilder;
-import org.opensearch.common.xcontent.LoggingDeprecationHandler;
-import org.opensearch.common.xcontent.json.JsonXContent;
-import org.opensearch.core.xcontent.NamedXContentRegistry;
+import org.opensearch.core.xcontent.XContentParser;
 
-public class QueryParser implements AutoCloseable {
-    private final InputStream in;
+public class QueryParser extends JsonArrayParser<Query> {
 
     public QueryParser(final InputStream in) {
-        this.in = in;
+        super(in, "queries");
+    }
 
+    public Query[] parse() {
+        return stream().toArray(n -> new Query[n]);
     }
 
     @Override
-    public void close() throws Exception {
-        in.close();
+    protected Query parseElement(final XContentParser parser) throws IOException {
+        final QueryBuilder builder = new QueryBuilder(null);
+        final boolean[] hasQuery = { false };
+        parseObject(parser, (name, p) -> {
+            switch (name) {
+            case "query": {
+                final String q = textValue(p);
+                if (q != null) {
+                    builder.query(q);
+                    hasQuery[0] = true;
+                }
+                break;
+            }
+            case "top_k": {
+                if (p.currentToken() == XContentParser.Token.VALUE_NUMBER) {
+                    builder.topK(p.intValue());
+                }
+                break;
+            }
+            case "operator": {
+                final String operator = textValue(p);
+                if (operator != null) {
+                    builder.operator(operator);
+                }
+                break;
+            }
+            case "filter": {
+                if (p.currentToken() == XContentParser.Token.START_OBJECT) {
+                    parseFilter(p, builder);
+                }
+                break;
+            }
+            case "embedding": {
+                final float[] embedding = floatArrayValue(p);
+                if (embedding != null) {
+                    builder.embedding(embedding);
+                }
+                break;
+            }
+            case "fields": {
+                if (p.currentToken() == XContentParser.Token.START_OBJECT) {
+                    parseFields(p, builder);
+                }
+                break;
+            }
+            case "paginate": {
+                if (p.currentToken() == XContentParser.Token.VALUE_BOOLEAN) {
+                    builder.paginated(p.booleanValue());
+                }
+                break;
+            }
+            case "cursor": {
+                final String cursor = textValue(p);
+                if (cursor != null && !cursor.isEmpty()) {
+                    builder.cursor(cursor);
+                }
+                break;
+            }
+            case "highlight": {
+                if (p.currentToken() == XContentParser.Token.START_OBJECT) {
+                    builder.highlight(true);
+                    parseHighlight(p, builder);
+                } else if (p.currentToken() == XContentParser.Token.VALUE_BOOLEAN) {
+                    builder.highlight(p.booleanValue());
+                }
+                break;
+            }
+            default:
+                break;
+            }
+        });
+        return hasQuery[0] ? builder.build() : null;
     }
 
-    public Query[] parse() {
-        try {
-            final Map<String, Object> requestBodyMap =
-                    JsonXContent.jsonXContent.createParser(NamedXContentRegistry.EMPTY, LoggingDeprecationHandler.INSTANCE, in).map();
-            if (requestBodyMap.get("queries") instanceof final List<?> queryList) {
-                return parseQueries(queryList);
-            }
-        } catch (final IOException e) {
-            throw new IORuntimeException(e);
-        }
-        return new Query[0];
+    protected static void parseFields(final XContentParser parser, final QueryBuilder builder) throws IOException {
+        parseObject(parser, (name, p) -> {
+            switch (name) {
+            case "include": {
+                final List<String> fieldList = stringListValue(p);
+                if (fieldList != null) {
+                    builder.includeFields(fieldList);
+                }
+                break;
+            }
+            case "exclude": {
+                final List<String> fieldList = stringListValue(p);
+                if (fieldList != null) {
+                    builder.excludeFields(fieldList);
+                }
+                break;
+            }
+            default:
+                break;
+            }
+        });
     }
 
-    private Query[] parseQueries(final List<?> queryList) {
-        return queryList.stream().map(queryObj -> {
-            if ((queryObj instanceof final Map<?, ?> queryMap) && (queryMap.get("query") instanceof final String q)) {
-                final QueryBuilder builder = new QueryBuilder(q);
-                if (queryMap.get("top_k") instanceof final Number topK) {
-                    builder.topK(topK.intValue());
+    protected static void parseHighlight(final XContentParser parser, final QueryBuilder builder) throws IOException {
+        parseObject(parser, (name, p) -> {
+            switch (name) {
+            case "fragment_size": {
+                if (p.currentToken() == XContentParser.Token.VALUE_NUMBER) {
+                    builder.fragmentSize(p.intValue());
                 }
-                if (queryMap.get("operator") instanceof final String operator) {
-                    builder.operator(operator);
+                break;
+            }
+            case "number_of_fragments": {
+                if (p.currentToken() == XContentParser.Token.VALUE_NUMBER) {
+                    builder.numberOfFragments(p.intValue());
                 }
-                if (queryMap.get("filter") instanceof final Map<?, ?> filterMap) {
-                    if (filterMap.get("document_id") instanceof final String documentId) {
-                        builder.documentId(documentId);
-                    }
-                    if (filterMap.get("source") instanceof final String source) {
-                        builder.source(source);
-                    }
-                    if (filterMap.get("source_id") instanceof final String sourceId) {
-                        builder.sourceId(sourceId);
-                    }
-                    if (filterMap.get("author") instanceof final String author) {
-                        builder.author(author);
-                    }
-                    if (filterMap.get("start_date") instanceof final String startDate) {
-                        builder.startDate(startDate);
-                    }
-                    if (filterMap.get("end_date") instanceof final String endDate) {
-                        builder.endDate(endDate);
-                    }
+                break;
+            }
+            case "include_text": {
+                if (p.currentToken() == XContentParser.Token.VALUE_BOOLEAN) {
+                    builder.textIncluded(p.booleanValue());
                 }
-                return builder.build();
+                break;
+            }
+            default:
+                break;
+            }
+        });
+    }
+
+    protected static void parseFilter(final XContentParser parser, final QueryBuilder builder) throws IOException {
+        parseObject(parser, (name, p) -> {
+            final String value = textValue(p);
+            if (value == null) {
+                return;
+            }
+            switch (name) {
+            case "document_id": {
+                builder.documentId(value);
+                break;
+            }
+            case "source": {
+                builder.source(value);
+                break;
+            }
+            case "source_id": {
+                builder.sourceId(value);
+                break;
+            }
+            case "author": {
+                builder.author(value);
+                break;
+            }
+            case "start_date": {
+                builder.startDate(value);
+                break;
+            }
+            case "end_date": {
+                builder.endDate(value);
+                break;
+            }
+            default:
+                break;
             }
-            return null;
-        }).filter(o -> o != null).toArray(n -> new Query[n]);
+        });
     }
 }
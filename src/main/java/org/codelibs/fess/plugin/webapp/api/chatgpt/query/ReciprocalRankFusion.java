@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.query;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codelibs.fess.Constants;
+
+/**
+ * Merges ranked result lists by reciprocal rank fusion.
+ * A document scores the sum of 1 / (rankConstant + rank) over the lists it appears in,
+ * so the scores of different retrievers do not need to be comparable.
+ */
+public class ReciprocalRankFusion {
+    protected final int rankConstant;
+
+    public ReciprocalRankFusion(final int rankConstant) {
+        this.rankConstant = rankConstant > 0 ? rankConstant : 1;
+    }
+
+    /**
+     * Fuses the rankings. The fused score is normalized to 1.0 for a document ranked first in every list.
+     *
+     * @param rankings The result lists, each in descending order of relevance.
+     * @param idField The field identifying a document across the lists.
+     * @param size The maximum number of documents to return.
+     * @return Copies of the documents with the fused score, in descending order of the score.
+     */
+    public List<Map<String, Object>> fuse(final List<List<Map<String, Object>>> rankings, final String idField, final int size) {
+        final Map<Object, FusedDocument> fusedMap = new LinkedHashMap<>();
+        for (final List<Map<String, Object>> ranking : rankings) {
+            for (int i = 0; i < ranking.size(); i++) {
+                final Map<String, Object> doc = ranking.get(i);
+                final Object id = doc.get(idField);
+                if (id == null) {
+                    continue;
+                }
+                // the document of the first list is kept, e.g. with highlights of the keyword search
+                fusedMap.computeIfAbsent(id, k -> new FusedDocument(doc)).score += 1.0 / (rankConstant + i + 1);
+            }
+        }
+        final double maxScore = Math.max(rankings.size(), 1) / (double) (rankConstant + 1);
+        return fusedMap.values().stream().sorted((d1, d2) -> Double.compare(d2.score, d1.score)).limit(Math.max(size, 0)).map(d -> {
+            final Map<String, Object> doc = new HashMap<>(d.doc);
+            doc.put(Constants.SCORE, (float) (d.score / maxScore));
+            return doc;
+        }).toList();
+    }
+
+    protected static class FusedDocument {
+        protected final Map<String, Object> doc;
+
+        protected double score;
+
+        protected FusedDocument(final Map<String, Object> doc) {
+            this.doc = doc;
+        }
+    }
+}
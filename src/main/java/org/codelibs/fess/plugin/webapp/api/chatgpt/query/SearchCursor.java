@@ -0,0 +1,96 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.query;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position after the last hit of a page, sorted by score and then by document id.
+ * It is passed to the client as an opaque token and sent back as search_after of the next page.
+ * It also keeps the maximum score of the first page, so that the scores of all pages are normalized alike.
+ */
+public class SearchCursor {
+    protected static final String VERSION = "2";
+
+    protected final String fingerprint;
+
+    protected final float maxScore;
+
+    protected final float score;
+
+    protected final String docId;
+
+    /**
+     * @param fingerprint The fingerprint of the query, so that a cursor is not used for another query.
+     * @param maxScore The maximum score of the first page, which the scores are divided by.
+     * @param score The score of the last hit.
+     * @param docId The document id of the last hit.
+     */
+    public SearchCursor(final String fingerprint, final float maxScore, final float score, final String docId) {
+        this.fingerprint = fingerprint;
+        this.maxScore = maxScore;
+        this.score = score;
+        this.docId = docId;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public float getMaxScore() {
+        return maxScore;
+    }
+
+    public float getScore() {
+        return score;
+    }
+
+    public String getDocId() {
+        return docId;
+    }
+
+    public Object[] getSearchAfter() {
+        return new Object[] { score, docId };
+    }
+
+    public String encode() {
+        final String value = VERSION + ':' + fingerprint + ':' + Float.floatToIntBits(maxScore) + ':' + Float.floatToIntBits(score) + ':'
+                + docId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param token The token created by {@link #encode()}.
+     * @return The cursor.
+     * @throws IllegalArgumentException if the token is invalid.
+     */
+    public static SearchCursor decode(final String token) {
+        final String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        // the document id is the last part because it may contain a colon
+        final String[] values = value.split(":", 5);
+        if (values.length != 5 || !VERSION.equals(values[0]) || values[4].isEmpty()) {
+            throw new IllegalArgumentException("Invalid cursor: " + token);
+        }
+        final float maxScore = Float.intBitsToFloat(Integer.parseInt(values[2]));
+        return new SearchCursor(values[1], maxScore, Float.intBitsToFloat(Integer.parseInt(values[3])), values[4]);
+    }
+
+    @Override
+    public String toString() {
+        return "SearchCursor [fingerprint=" + fingerprint + ", maxScore=" + maxScore + ", score=" + score + ", docId=" + docId + "]";
+    }
+}
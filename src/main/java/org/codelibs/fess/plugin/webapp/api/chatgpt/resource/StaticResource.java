@@ -0,0 +1,186 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.resource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.codelibs.core.lang.StringUtil;
+import org.codelibs.fess.exception.FessSystemException;
+
+/**
+ * A resource rendered once and served from memory with validators and an optional gzip variant.
+ */
+public class StaticResource {
+    protected final byte[] content;
+
+    protected final byte[] gzipContent;
+
+    protected final String contentType;
+
+    protected final String etag;
+
+    protected final String gzipEtag;
+
+    protected final long lastModified;
+
+    protected final String cacheControl;
+
+    public StaticResource(final byte[] content, final String contentType, final long lastModified, final String cacheControl) {
+        this.content = content;
+        this.contentType = contentType;
+        // HTTP dates have a resolution of seconds
+        this.lastModified = lastModified / 1000L * 1000L;
+        this.cacheControl = cacheControl;
+        final String hash = digest(content);
+        etag = "\"" + hash + "\"";
+        final byte[] gzipped = gzip(content);
+        if (gzipped.length < content.length) {
+            gzipContent = gzipped;
+            gzipEtag = "\"" + hash + "-gz\"";
+        } else {
+            gzipContent = null;
+            gzipEtag = null;
+        }
+    }
+
+    public void write(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+        final boolean gzip = gzipContent != null && acceptsGzip(request.getHeader("Accept-Encoding"));
+        final String currentEtag = gzip ? gzipEtag : etag;
+        response.setHeader("ETag", currentEtag);
+        response.setDateHeader("Last-Modified", lastModified);
+        if (StringUtil.isNotBlank(cacheControl)) {
+            response.setHeader("Cache-Control", cacheControl);
+        }
+        if (gzipContent != null) {
+            response.setHeader("Vary", "Accept-Encoding");
+        }
+
+        if (isNotModified(request)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        final byte[] body = gzip ? gzipContent : content;
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(contentType);
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+        }
+        response.setContentLength(body.length);
+        try (OutputStream out = response.getOutputStream()) {
+            out.write(body);
+        }
+    }
+
+    protected boolean isNotModified(final HttpServletRequest request) {
+        final String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            // If-Modified-Since is ignored when If-None-Match is present
+            for (final String value : ifNoneMatch.split(",")) {
+                String tag = value.trim();
+                if ("*".equals(tag)) {
+                    return true;
+                }
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals(etag) || tag.equals(gzipEtag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        try {
+            final long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+            return ifModifiedSince >= 0 && lastModified <= ifModifiedSince;
+        } catch (final IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    public static boolean acceptsGzip(final String acceptEncoding) {
+        if (StringUtil.isBlank(acceptEncoding)) {
+            return false;
+        }
+        for (final String value : acceptEncoding.toLowerCase(Locale.ROOT).split(",")) {
+            final String[] params = value.split(";");
+            final String coding = params[0].trim();
+            if (!"gzip".equals(coding) && !"*".equals(coding)) {
+                continue;
+            }
+            for (int i = 1; i < params.length; i++) {
+                final String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Float.parseFloat(param.substring(2)) > 0;
+                    } catch (final NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    protected static String digest(final byte[] content) {
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+            final StringBuilder buf = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                buf.append(Character.forDigit(hash[i] >> 4 & 0xf, 16)).append(Character.forDigit(hash[i] & 0xf, 16));
+            }
+            return buf.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new FessSystemException("SHA-256 is not available.", e);
+        }
+    }
+
+    protected static byte[] gzip(final byte[] content) {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(content.length / 2 + 32);
+        try (GZIPOutputStream out = new GZIPOutputStream(baos)) {
+            out.write(content);
+        } catch (final IOException e) {
+            throw new FessSystemException("Failed to compress the content.", e);
+        }
+        return baos.toByteArray();
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+}
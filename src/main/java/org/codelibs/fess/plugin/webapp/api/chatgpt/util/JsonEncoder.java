@@ -0,0 +1,231 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Builds JSON text in a reusable buffer without creating intermediate strings.
+ * Strings are escaped in the same way as StringEscapeUtils.ESCAPE_JSON, so the output is 7-bit ASCII.
+ * An instance is not thread-safe and is expected to be used by one request at a time.
+ */
+public class JsonEncoder {
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private static final char[] BASE64_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    protected char[] buffer;
+
+    protected int length;
+
+    protected final StringBuilder numberBuffer = new StringBuilder(16);
+
+    protected byte[] byteBuffer;
+
+    public JsonEncoder() {
+        this(8192);
+    }
+
+    public JsonEncoder(final int capacity) {
+        buffer = new char[capacity > 0 ? capacity : 16];
+    }
+
+    public JsonEncoder append(final char c) {
+        ensureCapacity(length + 1);
+        buffer[length++] = c;
+        return this;
+    }
+
+    /**
+     * Appends the value as is. The value must not need escaping.
+     *
+     * @param value The raw JSON text.
+     * @return This encoder.
+     */
+    public JsonEncoder append(final String value) {
+        final int size = value.length();
+        ensureCapacity(length + size);
+        value.getChars(0, size, buffer, length);
+        length += size;
+        return this;
+    }
+
+    public JsonEncoder append(final int value) {
+        numberBuffer.setLength(0);
+        numberBuffer.append(value);
+        return appendNumberBuffer();
+    }
+
+    /**
+     * Appends the value in the format of Float.toString(float).
+     *
+     * @param value The value.
+     * @return This encoder.
+     */
+    public JsonEncoder append(final float value) {
+        numberBuffer.setLength(0);
+        numberBuffer.append(value);
+        return appendNumberBuffer();
+    }
+
+    protected JsonEncoder appendNumberBuffer() {
+        final int size = numberBuffer.length();
+        ensureCapacity(length + size);
+        numberBuffer.getChars(0, size, buffer, length);
+        length += size;
+        return this;
+    }
+
+    /**
+     * Appends the escaped value without quotes. Nothing is appended for null.
+     *
+     * @param value The value to escape.
+     * @return This encoder.
+     */
+    public JsonEncoder appendEscaped(final CharSequence value) {
+        if (value == null) {
+            return this;
+        }
+        final int size = value.length();
+        ensureCapacity(length + size);
+        for (int i = 0; i < size; i++) {
+            final char c = value.charAt(i);
+            if (c >= 0x20 && c <= 0x7f) {
+                if (c == '"' || c == '\\' || c == '/') {
+                    ensureCapacity(length + size - i + 1);
+                    buffer[length++] = '\\';
+                }
+                buffer[length++] = c;
+                continue;
+            }
+            switch (c) {
+            case '\b':
+                appendControl(size - i, 'b');
+                break;
+            case '\n':
+                appendControl(size - i, 'n');
+                break;
+            case '\t':
+                appendControl(size - i, 't');
+                break;
+            case '\f':
+                appendControl(size - i, 'f');
+                break;
+            case '\r':
+                appendControl(size - i, 'r');
+                break;
+            default:
+                // surrogate pairs are escaped as two code units, as ESCAPE_JSON does
+                ensureCapacity(length + size - i + 5);
+                buffer[length++] = '\\';
+                buffer[length++] = 'u';
+                buffer[length++] = HEX_DIGITS[c >> 12 & 0xf];
+                buffer[length++] = HEX_DIGITS[c >> 8 & 0xf];
+                buffer[length++] = HEX_DIGITS[c >> 4 & 0xf];
+                buffer[length++] = HEX_DIGITS[c & 0xf];
+                break;
+            }
+        }
+        return this;
+    }
+
+    protected void appendControl(final int remaining, final char c) {
+        ensureCapacity(length + remaining + 1);
+        buffer[length++] = '\\';
+        buffer[length++] = c;
+    }
+
+    /**
+     * Appends the escaped value in quotes.
+     *
+     * @param value The value to escape.
+     * @return This encoder.
+     */
+    public JsonEncoder appendString(final CharSequence value) {
+        return append('"').appendEscaped(value).append('"');
+    }
+
+    /**
+     * Appends the data in Base64 without quotes.
+     *
+     * @param data The data.
+     * @param offset The start of the data.
+     * @param size The number of bytes.
+     * @return This encoder.
+     */
+    public JsonEncoder appendBase64(final byte[] data, final int offset, final int size) {
+        ensureCapacity(length + (size + 2) / 3 * 4);
+        final int end = offset + size;
+        int i = offset;
+        for (; i + 3 <= end; i += 3) {
+            final int bits = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8 | data[i + 2] & 0xff;
+            buffer[length++] = BASE64_DIGITS[bits >>> 18];
+            buffer[length++] = BASE64_DIGITS[bits >>> 12 & 0x3f];
+            buffer[length++] = BASE64_DIGITS[bits >>> 6 & 0x3f];
+            buffer[length++] = BASE64_DIGITS[bits & 0x3f];
+        }
+        if (i < end) {
+            final int bits = (data[i] & 0xff) << 16 | (i + 1 < end ? (data[i + 1] & 0xff) << 8 : 0);
+            buffer[length++] = BASE64_DIGITS[bits >>> 18];
+            buffer[length++] = BASE64_DIGITS[bits >>> 12 & 0x3f];
+            buffer[length++] = i + 1 < end ? BASE64_DIGITS[bits >>> 6 & 0x3f] : '=';
+            buffer[length++] = '=';
+        }
+        return this;
+    }
+
+    /**
+     * Returns a scratch buffer for binary values, such as data to be written by {@link #appendBase64(byte[], int, int)}.
+     * The buffer is reused by the next call.
+     *
+     * @param capacity The minimum capacity.
+     * @return The buffer.
+     */
+    public byte[] getByteBuffer(final int capacity) {
+        if (byteBuffer == null || byteBuffer.length < capacity) {
+            byteBuffer = new byte[Math.max(capacity, 1024)];
+        }
+        return byteBuffer;
+    }
+
+    protected void ensureCapacity(final int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+
+    public void writeTo(final Writer out) throws IOException {
+        out.write(buffer, 0, length);
+    }
+
+    /**
+     * Clears the content and keeps the buffer for the next use.
+     */
+    public void reset() {
+        length = 0;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length);
+    }
+}
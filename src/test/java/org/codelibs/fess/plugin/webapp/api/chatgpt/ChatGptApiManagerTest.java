@@ -16,16 +16,68 @@
 package org.codelibs.fess.plugin.webapp.api.chatgpt;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.lucene.search.TotalHits;
 import org.codelibs.core.io.ResourceUtil;
 import org.codelibs.fess.Constants;
 import org.codelibs.fess.api.WebApiManagerFactory;
+import org.codelibs.fess.es.client.SearchEngineClient;
+import org.codelibs.fess.exception.InvalidAccessTokenException;
 import org.codelibs.fess.mylasta.direction.FessConfig;
 import org.codelibs.fess.plugin.webapp.api.chatgpt.auth.PluginAuthenticator;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.cache.QueryResultCache;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.config.ChatGptConfig;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.config.ChatGptConfig.ConfigBuilder;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Document;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Query;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.QueryResult;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.exception.FessChatGptResponseException;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.index.BulkIndexer;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.index.DigestDeduplicator;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.index.UpsertIdCollector;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.limit.AdaptiveConcurrencyLimiter;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.limit.TokenBucket;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.limit.TokenQuota;
 import org.codelibs.fess.util.ComponentUtil;
 import org.dbflute.utflute.lastaflute.LastaFluteTestCase;
+import org.lastaflute.web.util.LaResponseUtil;
+import org.opensearch.OpenSearchTimeoutException;
+import org.opensearch.action.search.MultiSearchAction;
+import org.opensearch.action.search.MultiSearchRequestBuilder;
+import org.opensearch.action.search.MultiSearchResponse;
+import org.opensearch.action.search.SearchAction;
+import org.opensearch.action.search.SearchRequest;
+import org.opensearch.action.search.SearchRequestBuilder;
+import org.opensearch.action.search.SearchResponse;
+import org.opensearch.action.search.ShardSearchFailure;
+import org.opensearch.index.query.BoolQueryBuilder;
+import org.opensearch.index.query.QueryBuilder;
+import org.opensearch.index.query.QueryBuilders;
+import org.opensearch.search.DocValueFormat;
+import org.opensearch.search.SearchHit;
+import org.opensearch.search.SearchHits;
+import org.opensearch.search.builder.SearchSourceBuilder;
+import org.opensearch.search.internal.InternalSearchResponse;
 
 public class ChatGptApiManagerTest extends LastaFluteTestCase {
 
@@ -55,6 +107,7 @@ public class ChatGptApiManagerTest extends LastaFluteTestCase {
 
     @Override
     public void tearDown() throws Exception {
+        LaResponseUtil.setResponse(null);
         ComponentUtil.setFessConfig(null);
         super.tearDown();
     }
@@ -121,4 +174,635 @@ public class ChatGptApiManagerTest extends LastaFluteTestCase {
                     """, chatGptApiManager.updateAiPluginContent(buf).replace("\t", "    "));
         }
     }
+
+    public void test_createDeleteQuery_ids() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final ChatGptApiManager chatGptApiManager = new ChatGptApiManager();
+        final QueryBuilder configIdQuery = QueryBuilders.termQuery(fessConfig.getIndexFieldConfigId(), "chatgpt");
+
+        ChatGptConfig config = new ConfigBuilder().defaultConfigId("chatgpt").upsertChunkEnabled("false").build();
+        BoolQueryBuilder query = chatGptApiManager.createDeleteQuery(List.of("ID1", "ID2"), config, fessConfig);
+        assertTrue(query.filter().contains(configIdQuery));
+        assertTrue(query.filter().contains(QueryBuilders.idsQuery().addIds("ID1", "ID2")));
+        assertTrue(query.should().isEmpty());
+
+        config = new ConfigBuilder().defaultConfigId("chatgpt").upsertChunkEnabled("true").build();
+        query = chatGptApiManager.createDeleteQuery(List.of("ID1", "ID2"), config, fessConfig);
+        assertEquals(List.of(configIdQuery), query.filter());
+        assertTrue(query.should().contains(QueryBuilders.idsQuery().addIds("ID1", "ID2")));
+        assertTrue(query.should().contains(QueryBuilders.termsQuery(fessConfig.getIndexFieldParentId(), "ID1", "ID2")));
+        assertEquals("1", query.minimumShouldMatch());
+    }
+
+    public void test_deleteStalePassages() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final List<QueryBuilder> queryList = new ArrayList<>();
+        ComponentUtil.register(new SearchEngineClient() {
+            @Override
+            public long deleteByQuery(final String index, final QueryBuilder queryBuilder) {
+                queryList.add(queryBuilder);
+                return 1;
+            }
+        }, "searchEngineClient");
+        final ChatGptApiManager chatGptApiManager = new ChatGptApiManager();
+        final ChatGptConfig config = new ConfigBuilder().defaultConfigId("chatgpt").upsertChunkEnabled("true").build();
+        final UpsertIdCollector idCollector = new UpsertIdCollector();
+        idCollector.add("ID1-0", "ID1");
+        idCollector.add("ID1-1", "ID1");
+        idCollector.add("ID2", null);
+
+        chatGptApiManager.deleteStalePassages(idCollector, config, fessConfig);
+        assertEquals(1, queryList.size());
+        final BoolQueryBuilder query = (BoolQueryBuilder) queryList.get(0);
+        // a crawled document whose id collides with an upserted one is not deleted
+        assertEquals(List.of(QueryBuilders.termQuery(fessConfig.getIndexFieldConfigId(), "chatgpt")), query.filter());
+        assertTrue(query.should().contains(QueryBuilders.idsQuery().addIds("ID1", "ID2")));
+        assertTrue(query.should().contains(QueryBuilders.termsQuery(fessConfig.getIndexFieldParentId(), "ID1", "ID2")));
+        assertEquals(List.of(QueryBuilders.idsQuery().addIds("ID1-0", "ID1-1", "ID2")), query.mustNot());
+    }
+
+    public void test_processDelete() throws Exception {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final List<QueryBuilder> queryList = new ArrayList<>();
+        final List<String> timeoutList = new ArrayList<>();
+        final ChatGptApiManager chatGptApiManager = new ChatGptApiManager() {
+            @Override
+            protected long deleteByQuery(final QueryBuilder query, final ChatGptConfig config, final FessConfig fessConfig,
+                    final String timeout) {
+                queryList.add(query);
+                timeoutList.add(timeout);
+                return 2;
+            }
+        };
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final int[] status = new int[1];
+        LaResponseUtil.setResponse(createResponse(body, status));
+        chatGptApiManager.processDelete(createRequest("""
+                {"ids": ["ID1", "ID2"], "filter": {"source": "chat"}}"""), LaResponseUtil.getResponse());
+        assertEquals(HttpServletResponse.SC_OK, status[0]);
+        assertEquals("{\"success\":true,\"deleted\":4}", body.toString(StandardCharsets.UTF_8));
+        assertEquals(2, queryList.size());
+        // crawled documents do not have the config id of this plugin, so they are never matched
+        final QueryBuilder configIdQuery = QueryBuilders.termQuery(fessConfig.getIndexFieldConfigId(), "chatgpt");
+        for (final QueryBuilder query : queryList) {
+            assertTrue(query.toString(), ((BoolQueryBuilder) query).filter().contains(configIdQuery));
+        }
+        assertEquals(List.of(fessConfig.getIndexDeleteTimeout(), fessConfig.getIndexDeleteTimeout()), timeoutList);
+
+        body.reset();
+        chatGptApiManager.processDelete(createRequest("{}"), LaResponseUtil.getResponse());
+        assertEquals(HttpServletResponse.SC_BAD_REQUEST, status[0]);
+        assertTrue(body.toString(StandardCharsets.UTF_8), body.toString(StandardCharsets.UTF_8).contains("delete_all is required"));
+    }
+
+    public void test_processDelete_timeout() throws Exception {
+        final ChatGptApiManager chatGptApiManager = new ChatGptApiManager() {
+            @Override
+            protected long deleteByQuery(final QueryBuilder query, final ChatGptConfig config, final FessConfig fessConfig,
+                    final String timeout) {
+                throw new OpenSearchTimeoutException("timeout");
+            }
+        };
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final int[] status = new int[1];
+        LaResponseUtil.setResponse(createResponse(body, status));
+        chatGptApiManager.processDelete(createRequest("{\"delete_all\": true}"), LaResponseUtil.getResponse());
+        assertEquals(HttpServletResponse.SC_GATEWAY_TIMEOUT, status[0]);
+    }
+
+    public void test_processUpsert_quota() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final ChatGptConfig config = new ConfigBuilder().defaultConfigId("chatgpt").upsertDigestField("content_digest").build();
+        final TokenBucket documentBucket = new TokenBucket(0.001, 2);
+        final List<String> indexedList = new ArrayList<>();
+        final ChatGptApiManager chatGptApiManager = new ChatGptApiManager() {
+            @Override
+            protected ChatGptConfig getConfig() {
+                return config;
+            }
+
+            @Override
+            protected TokenQuota getTokenQuota(final HttpServletRequest request) {
+                return new TokenQuota(null, documentBucket, null);
+            }
+
+            @Override
+            protected String createSegment() {
+                return "20240101000000000";
+            }
+
+            @Override
+            protected List<Map<String, Object>> createDocMaps(final List<String> permissionList, final String segment,
+                    final Document document, final ChatGptConfig config, final FessConfig fessConfig,
+                    final UpsertIdCollector idCollector) {
+                idCollector.add(document.getId(), null);
+                return List.of(Map.of(fessConfig.getIndexFieldId(), document.getId(), "content_digest", document.getText()));
+            }
+
+            @Override
+            protected Map<String, String> loadDigests(final List<String> idList, final String digestField,
+                    final FessConfig fessConfig) {
+                return Map.of("D1", "T1");
+            }
+
+            @Override
+            protected BulkIndexer createBulkIndexer(final ChatGptConfig config, final FessConfig fessConfig,
+                    final DigestDeduplicator deduplicator) {
+                return new BulkIndexer(10, 0, Runnable::run, deduplicator.wrap(docList -> {
+                    final String[] ids = docList.stream().map(doc -> (String) doc.get(fessConfig.getIndexFieldId())).toArray(String[]::new);
+                    indexedList.addAll(List.of(ids));
+                    return ids;
+                }));
+            }
+        };
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final int[] status = new int[1];
+        LaResponseUtil.setResponse(createResponse(body, status));
+        chatGptApiManager.processUpsert(createRequest("""
+                {"documents": [{"id": "D1", "text": "T1"}, {"id": "D2", "text": "T2"}, {"id": "D3", "text": "T3"}]}"""),
+                LaResponseUtil.getResponse());
+        // the documents before the exceeded one are indexed and reported
+        assertEquals(429, status[0]);
+        assertEquals("{\"ids\":[\"D1\",\"D2\"],\"unchanged\":[\"D1\"],\"detail\":[{\"msg\":\"Rate limit exceeded: documents\"}]}",
+                body.toString(StandardCharsets.UTF_8));
+        assertEquals(List.of("D2"), indexedList);
+        // the unchanged document is not charged
+        assertEquals(1, documentBucket.getRemaining());
+    }
+
+    public void test_processRequest_invalidToken() {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 2.0);
+        final ChatGptApiManager chatGptApiManager = new ChatGptApiManager();
+        chatGptApiManager.pluginAuthenticator = new PluginAuthenticator() {
+            @Override
+            public List<String> authenticate(final HttpServletRequest request) {
+                throw new InvalidAccessTokenException("invalid_token", "Invalid token.");
+            }
+        };
+        chatGptApiManager.concurrencyLimiterMap = Map.of("query", limiter);
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final int[] status = new int[1];
+        for (int i = 0; i < 3; i++) {
+            chatGptApiManager.processRequest(createRequest("{}"), createResponse(body, status), "/chatgpt/query".split("/"));
+            assertEquals(HttpServletResponse.SC_UNAUTHORIZED, status[0]);
+        }
+        // rejected requests never take the only permit
+        assertEquals(0, limiter.getInFlight());
+        assertNotNull(limiter.tryAcquire());
+    }
+
+    public void test_multiSearch() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        ComponentUtil.register(new SearchEngineClient() {
+            @Override
+            public SearchRequestBuilder prepareSearch(final String... indices) {
+                return new SearchRequestBuilder(this, SearchAction.INSTANCE).setIndices(indices);
+            }
+
+            @Override
+            public MultiSearchRequestBuilder prepareMultiSearch() {
+                return new MultiSearchRequestBuilder(this, MultiSearchAction.INSTANCE);
+            }
+        }, "searchEngineClient");
+        final List<String> requestList = new ArrayList<>();
+        final List<String> searchLogList = new ArrayList<>();
+        final ChatGptApiManager chatGptApiManager = new ChatGptApiManager() {
+            @Override
+            protected String createQueryString(final QueryRequestParams params) {
+                return params.getQuery();
+            }
+
+            @Override
+            protected boolean buildSearchRequest(final SearchRequestBuilder searchRequestBuilder, final QueryRequestParams params,
+                    final String query) {
+                // CustomQueryParser resolves the operator from the query in the request
+                final Query current = (Query) params.getAttribute(Query.QUERY);
+                requestList.add(query + "|" + current.getOperator() + "|" + params.getPageSize() + "|"
+                        + String.join(",", params.getFields().keySet()) + "|" + String.join(",", params.getExtraQueries()));
+                return true;
+            }
+
+            @Override
+            protected MultiSearchResponse.Item[] executeMultiSearch(final MultiSearchRequestBuilder multiSearchRequestBuilder,
+                    final FessConfig fessConfig) {
+                return new MultiSearchResponse.Item[multiSearchRequestBuilder.request().requests().size()];
+            }
+
+            @Override
+            protected List<Map<String, Object>> getDocumentItems(final MultiSearchResponse.Item[] items, final int index,
+                    final Query query, final QueryRequestParams params) {
+                return List.of(Map.of(fessConfig.getIndexFieldId(), "ID" + index, fessConfig.getIndexFieldContent(), query.getQuery()));
+            }
+
+            @Override
+            protected void storeSearchLog(final QueryRequestParams params, final String queryString,
+                    final List<Map<String, Object>> documentItems, final long requestedTime, final long execTime,
+                    final FessConfig fessConfig) {
+                searchLogList.add(queryString);
+            }
+        };
+
+        final Query[] queries = { new Query.QueryBuilder("Q1").topK(5).operator("AND").source("email").build(),
+                new Query.QueryBuilder("Q2").topK(1).operator("OR").build(),
+                new Query.QueryBuilder("Q3").topK(3).startDate("2024-01-01").build() };
+        final QueryResult[] results = chatGptApiManager.multiSearch(createRequest("{}"), queries, fessConfig);
+
+        assertEquals(3, requestList.size());
+        assertEquals("Q1|AND|5|" + fessConfig.getIndexFieldLabel() + "|", requestList.get(0));
+        assertEquals("Q2|OR|1||", requestList.get(1));
+        assertTrue(requestList.get(2), requestList.get(2).startsWith("Q3|null|3||" + fessConfig.getIndexFieldTimestamp() + ":["));
+        assertEquals(List.of("Q1", "Q2", "Q3"), searchLogList);
+        assertEquals(3, results.length);
+        for (int i = 0; i < results.length; i++) {
+            final String json = results[i].toJsonString();
+            assertTrue(json, json.startsWith("{\"query\":\"Q" + (i + 1) + "\""));
+            assertTrue(json, json.contains("\"id\":\"ID" + i + "\""));
+            assertTrue(json, json.contains("\"text\":\"Q" + (i + 1) + "\""));
+        }
+    }
+
+    public void test_processQuery_embedding() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        ComponentUtil.register(new SearchEngineClient() {
+            @Override
+            public SearchRequestBuilder prepareSearch(final String... indices) {
+                return new SearchRequestBuilder(this, SearchAction.INSTANCE).setIndices(indices);
+            }
+
+            @Override
+            public MultiSearchRequestBuilder prepareMultiSearch() {
+                return new MultiSearchRequestBuilder(this, MultiSearchAction.INSTANCE);
+            }
+        }, "searchEngineClient");
+        final ChatGptConfig config = new ConfigBuilder().responseFields(fessConfig.getIndexFieldContent()).multiSearchEnabled("true")
+                .embeddingField("content_vector").build();
+        final ChatGptApiManager chatGptApiManager = new ChatGptApiManager() {
+            @Override
+            protected ChatGptConfig getConfig() {
+                return config;
+            }
+
+            @Override
+            protected String createQueryString(final QueryRequestParams params) {
+                return params.getQuery();
+            }
+
+            @Override
+            protected boolean buildSearchRequest(final SearchRequestBuilder searchRequestBuilder, final QueryRequestParams params,
+                    final String query) {
+                return true;
+            }
+
+            @Override
+            protected MultiSearchResponse.Item[] executeMultiSearch(final MultiSearchRequestBuilder multiSearchRequestBuilder,
+                    final FessConfig fessConfig) {
+                return new MultiSearchResponse.Item[multiSearchRequestBuilder.request().requests().size()];
+            }
+
+            @Override
+            protected List<Map<String, Object>> getDocumentItems(final MultiSearchResponse.Item[] items, final int index,
+                    final Query query, final QueryRequestParams params) {
+                // the search engine returns only the fetched source fields
+                final Map<String, Object> doc = new HashMap<>();
+                doc.put(fessConfig.getIndexFieldId(), "ID" + index);
+                for (final String field : params.getResponseFields()) {
+                    if ("content_vector".equals(field)) {
+                        doc.put(field, List.of(1.0, 0.5));
+                    } else {
+                        doc.put(field, query.getQuery());
+                    }
+                }
+                return List.of(doc);
+            }
+
+            @Override
+            protected void storeSearchLog(final QueryRequestParams params, final String queryString,
+                    final List<Map<String, Object>> documentItems, final long requestedTime, final long execTime,
+                    final FessConfig fessConfig) {
+            }
+        };
+
+        final String body = """
+                {"queries": [{"query": "Q1"}, {"query": "Q2", "exclude": ["embedding"]}]}""";
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final int[] status = new int[1];
+        LaResponseUtil.setResponse(createResponse(out, status));
+        chatGptApiManager.processQuery(createRequest(body, Map.of()), LaResponseUtil.getResponse());
+        assertEquals(HttpServletResponse.SC_OK, status[0]);
+        String json = out.toString(StandardCharsets.UTF_8);
+        assertTrue(json, json.contains("\"text\":\"Q1\",\"embedding\":[1.0,0.5]}"));
+        assertTrue(json, json.contains("\"text\":\"Q2\"}"));
+
+        out.reset();
+        chatGptApiManager.processQuery(createRequest(body, Map.of("embedding_encoding", "float32")), LaResponseUtil.getResponse());
+        assertEquals(HttpServletResponse.SC_OK, status[0]);
+        json = out.toString(StandardCharsets.UTF_8);
+        assertTrue(json, json.contains("\"text\":\"Q1\",\"embedding\":\"AACAPwAAAD8=\",\"embedding_encoding\":\"float32\"}"));
+        assertTrue(json, json.contains("\"text\":\"Q2\"}"));
+    }
+
+    public void test_getResponseFields() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final ChatGptApiManager chatGptApiManager = new ChatGptApiManager();
+        final String content = fessConfig.getIndexFieldContent();
+        final String url = fessConfig.getIndexFieldUrl();
+        ChatGptConfig config = new ConfigBuilder().responseFields(url + "," + content).embeddingField("content_vector").build();
+        assertEquals(List.of(url, content, "content_vector"),
+                List.of(chatGptApiManager.getResponseFields(new Query.QueryBuilder("Q1").build(), config, fessConfig)));
+        assertEquals(List.of("content_vector"), List.of(chatGptApiManager
+                .getResponseFields(new Query.QueryBuilder("Q1").includeFields(List.of("embedding")).build(), config, fessConfig)));
+        assertEquals(List.of(url, content), List.of(chatGptApiManager
+                .getResponseFields(new Query.QueryBuilder("Q1").excludeFields(List.of("embedding")).build(), config, fessConfig)));
+        // some fields of metadata are enough
+        assertEquals(List.of(url), List.of(chatGptApiManager
+                .getResponseFields(new Query.QueryBuilder("Q1").includeFields(List.of("metadata")).build(), config, fessConfig)));
+
+        config = new ConfigBuilder().responseFields(url + "," + content).build();
+        for (final String name : new String[] { "embedding", "author", "unknown" }) {
+            try {
+                chatGptApiManager.getResponseFields(new Query.QueryBuilder("Q1").includeFields(List.of("text", name)).build(), config,
+                        fessConfig);
+                fail(name);
+            } catch (final FessChatGptResponseException e) {
+                assertEquals(HttpServletResponse.SC_BAD_REQUEST, e.getStatus());
+            }
+        }
+        // an excluded field does not have to be loaded
+        assertEquals(List.of(url, content), List.of(chatGptApiManager
+                .getResponseFields(new Query.QueryBuilder("Q1").excludeFields(List.of("embedding")).build(), config, fessConfig)));
+    }
+
+    public void test_reloadConfig() {
+        final ChatGptConfig[] configs = { new ConfigBuilder().docMaxLength("100").build() };
+        final ChatGptApiManager chatGptApiManager = new ChatGptApiManager() {
+            @Override
+            protected ChatGptConfig loadConfig() {
+                return configs[0];
+            }
+
+            @Override
+            protected void loadWellKnownResources() {
+            }
+        };
+        chatGptApiManager.queryResultCache = new QueryResultCache(10, 60000);
+        chatGptApiManager.reloadConfig();
+        final long generation = chatGptApiManager.queryResultCache.getGeneration();
+
+        // unchanged settings keep the cached results
+        configs[0] = new ConfigBuilder().docMaxLength("100").build();
+        chatGptApiManager.reloadConfig();
+        assertEquals(generation, chatGptApiManager.queryResultCache.getGeneration());
+
+        configs[0] = new ConfigBuilder().docMaxLength("200").build();
+        chatGptApiManager.reloadConfig();
+        assertSame(configs[0], chatGptApiManager.getConfig());
+        assertEquals(generation + 1, chatGptApiManager.queryResultCache.getGeneration());
+    }
+
+    public void test_createCompressingResponse() {
+        final ChatGptConfig config = new ConfigBuilder().build();
+        final ChatGptApiManager chatGptApiManager = new ChatGptApiManager() {
+            @Override
+            protected ChatGptConfig getConfig() {
+                return config;
+            }
+        };
+        final HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class }, (proxy, method, args) -> {
+                    if ("getHeader".equals(method.getName()) && "Accept-Encoding".equals(args[0])) {
+                        return "gzip";
+                    }
+                    return null;
+                });
+        final HttpServletResponse response = createResponse(new ByteArrayOutputStream(), new int[1]);
+        for (final String endpoint : new String[] { "query", "upsert", "upsert-file", "delete" }) {
+            assertNotNull(endpoint, chatGptApiManager.createCompressingResponse(request, response, endpoint));
+        }
+        assertNull(chatGptApiManager.createCompressingResponse(request, response, "metrics"));
+        assertNull(chatGptApiManager.createCompressingResponse(request, response, "upsert-status"));
+    }
+
+    public void test_createCursorFingerprint() {
+        final ChatGptApiManager chatGptApiManager = new ChatGptApiManager();
+        final String fingerprint = chatGptApiManager.createCursorFingerprint(new Query.QueryBuilder("Q1").topK(3).build());
+        assertEquals(32, fingerprint.length());
+        // top_k may change between pages
+        assertEquals(fingerprint, chatGptApiManager.createCursorFingerprint(new Query.QueryBuilder("Q1").topK(10).build()));
+        assertFalse(fingerprint.equals(chatGptApiManager.createCursorFingerprint(new Query.QueryBuilder("Q2").topK(3).build())));
+        assertFalse(fingerprint.equals(chatGptApiManager.createCursorFingerprint(new Query.QueryBuilder("Q1").operator("AND").build())));
+        assertFalse(fingerprint.equals(chatGptApiManager.createCursorFingerprint(new Query.QueryBuilder("Q1").source("email").build())));
+    }
+
+    public void test_multiSearch_cursor() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        ComponentUtil.register(new SearchEngineClient() {
+            @Override
+            public SearchRequestBuilder prepareSearch(final String... indices) {
+                return new SearchRequestBuilder(this, SearchAction.INSTANCE).setIndices(indices);
+            }
+
+            @Override
+            public MultiSearchRequestBuilder prepareMultiSearch() {
+                return new MultiSearchRequestBuilder(this, MultiSearchAction.INSTANCE);
+            }
+        }, "searchEngineClient");
+        // sorted by score and then by document id, as applyCursor sorts them
+        final String[] docIds = { "D1", "D2", "D3", "D4", "D5" };
+        final float[] scores = { 5.0f, 4.0f, 3.0f, 3.0f, 1.0f };
+        final List<String> searchAfterList = new ArrayList<>();
+        final ChatGptApiManager chatGptApiManager = new ChatGptApiManager() {
+            @Override
+            protected String createQueryString(final QueryRequestParams params) {
+                return params.getQuery();
+            }
+
+            @Override
+            protected boolean buildSearchRequest(final SearchRequestBuilder searchRequestBuilder, final QueryRequestParams params,
+                    final String query) {
+                searchRequestBuilder.setQuery(QueryBuilders.matchAllQuery()).setSize(params.getPageSize());
+                return true;
+            }
+
+            @Override
+            protected MultiSearchResponse.Item[] executeMultiSearch(final MultiSearchRequestBuilder multiSearchRequestBuilder,
+                    final FessConfig fessConfig) {
+                final List<SearchRequest> requests = multiSearchRequestBuilder.request().requests();
+                final MultiSearchResponse.Item[] items = new MultiSearchResponse.Item[requests.size()];
+                for (int i = 0; i < items.length; i++) {
+                    final SearchSourceBuilder source = requests.get(i).source();
+                    final Object[] searchAfter = source.searchAfter();
+                    searchAfterList.add(searchAfter == null ? null : searchAfter[0] + "/" + searchAfter[1]);
+                    final List<SearchHit> hitList = new ArrayList<>();
+                    for (int j = 0; j < docIds.length && hitList.size() < source.size(); j++) {
+                        final float afterScore = searchAfter != null ? ((Number) searchAfter[0]).floatValue() : Float.MAX_VALUE;
+                        if (searchAfter == null || scores[j] < afterScore
+                                || scores[j] == afterScore && docIds[j].compareTo((String) searchAfter[1]) > 0) {
+                            final SearchHit hit = new SearchHit(j, docIds[j], Collections.emptyMap(), Collections.emptyMap());
+                            hit.score(scores[j]);
+                            hit.sortValues(new Object[] { scores[j], docIds[j] },
+                                    new DocValueFormat[] { DocValueFormat.RAW, DocValueFormat.RAW });
+                            hitList.add(hit);
+                        }
+                    }
+                    final SearchHits hits = new SearchHits(hitList.toArray(new SearchHit[hitList.size()]),
+                            new TotalHits(docIds.length, TotalHits.Relation.EQUAL_TO), scores[0]);
+                    final SearchResponse response = new SearchResponse(new InternalSearchResponse(hits, null, null, null, false, null, 1),
+                            null, 1, 1, 0, 1, ShardSearchFailure.EMPTY_ARRAY, SearchResponse.Clusters.EMPTY);
+                    items[i] = new MultiSearchResponse.Item(response, null);
+                }
+                return items;
+            }
+
+            @Override
+            protected List<Map<String, Object>> getDocumentItems(final MultiSearchResponse.Item[] items, final int index,
+                    final Query query, final QueryRequestParams params) {
+                final List<Map<String, Object>> documentItems = new ArrayList<>();
+                for (final SearchHit hit : items[index].getResponse().getHits().getHits()) {
+                    documentItems.add(Map.of(fessConfig.getIndexFieldId(), hit.getId(), fessConfig.getIndexFieldContent(), hit.getId(),
+                            Constants.SCORE, hit.getScore()));
+                }
+                return documentItems;
+            }
+
+            @Override
+            protected void storeSearchLog(final QueryRequestParams params, final String queryString,
+                    final List<Map<String, Object>> documentItems, final long requestedTime, final long execTime,
+                    final FessConfig fessConfig) {
+            }
+        };
+
+        final QueryResult page1 = chatGptApiManager.multiSearch(createRequest("{}"),
+                new Query[] { new Query.QueryBuilder("Q1").topK(3).paginated(true).build() }, fessConfig)[0];
+        final String json1 = page1.toJsonString();
+        assertTrue(json1, json1.contains("\"id\":\"D1\"") && json1.contains("\"id\":\"D3\""));
+        assertFalse(json1, json1.contains("\"id\":\"D4\""));
+        assertNotNull(page1.getNextCursor());
+        assertTrue(json1, json1.contains("\"next_cursor\":\"" + page1.getNextCursor() + "\""));
+
+        // the second page starts after the last hit of the first page, which has the same score as the next one
+        final QueryResult page2 = chatGptApiManager.multiSearch(createRequest("{}"),
+                new Query[] { new Query.QueryBuilder("Q1").topK(3).cursor(page1.getNextCursor()).build() }, fessConfig)[0];
+        final String json2 = page2.toJsonString();
+        assertTrue(json2, json2.contains("\"id\":\"D4\"") && json2.contains("\"id\":\"D5\""));
+        assertFalse(json2, json2.contains("\"id\":\"D3\""));
+        // the scores are divided by the maximum score of the first page
+        assertTrue(json1, json1.contains("\"score\":1.0"));
+        assertTrue(json2, json2.contains("\"score\":0.6") && json2.contains("\"score\":0.2"));
+        // a page shorter than top_k is the last one
+        assertNull(page2.getNextCursor());
+        assertFalse(json2, json2.contains("next_cursor"));
+
+        final List<String> expected = new ArrayList<>();
+        expected.add(null);
+        expected.add("3.0/D3");
+        assertEquals(expected, searchAfterList);
+
+        // a cursor is rejected for another query
+        try {
+            chatGptApiManager.multiSearch(createRequest("{}"),
+                    new Query[] { new Query.QueryBuilder("Q2").topK(3).cursor(page1.getNextCursor()).build() }, fessConfig);
+            fail();
+        } catch (final FessChatGptResponseException e) {
+            assertEquals(HttpServletResponse.SC_BAD_REQUEST, e.getStatus());
+        }
+    }
+
+    private HttpServletRequest createRequest(final String body) {
+        return createRequest(body, Collections.emptyMap());
+    }
+
+    private HttpServletRequest createRequest(final String body, final Map<String, String> parameterMap) {
+        final ByteArrayInputStream in = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+        final ServletInputStream servletIn = new ServletInputStream() {
+            @Override
+            public int read() throws IOException {
+                return in.read();
+            }
+
+            @Override
+            public boolean isFinished() {
+                return in.available() == 0;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(final ReadListener readListener) {
+            }
+        };
+        final Map<String, Object> attributeMap = new HashMap<>();
+        return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { HttpServletRequest.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getInputStream":
+                        return servletIn;
+                    case "getParameter":
+                        return parameterMap.get(args[0]);
+                    case "getAttribute":
+                        return attributeMap.get(args[0]);
+                    case "setAttribute":
+                        attributeMap.put((String) args[0], args[1]);
+                        return null;
+                    default:
+                        return null;
+                    }
+                });
+    }
+
+    private HttpServletResponse createResponse(final ByteArrayOutputStream body, final int[] status) {
+        final ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(final WriteListener writeListener) {
+            }
+        };
+        final PrintWriter writer = new PrintWriter(new Writer() {
+            @Override
+            public void write(final char[] cbuf, final int off, final int len) {
+                body.writeBytes(new String(cbuf, off, len).getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { HttpServletResponse.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getOutputStream":
+                        return out;
+                    case "getWriter":
+                        return writer;
+                    case "setStatus":
+                        status[0] = (Integer) args[0];
+                        return null;
+                    case "isCommitted":
+                        return body.size() > 0;
+                    case "getCharacterEncoding":
+                        return "UTF-8";
+                    default:
+                        return null;
+                    }
+                });
+    }
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.auth;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class PluginAuthenticatorTest extends TestCase {
+
+    private TestAuthenticator authenticator;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        authenticator = new TestAuthenticator();
+        authenticator.tokenMap.put("token1", new PluginAuthenticator.AccessTokenEntry("loader", null, List.of("Rguest")));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        authenticator.destroy();
+        super.tearDown();
+    }
+
+    public void test_getAccessTokenEntry_hit() {
+        authenticator.initCache();
+
+        final PluginAuthenticator.AccessTokenEntry entry = authenticator.getAccessTokenEntry("token1");
+        assertEquals("loader", entry.name);
+        assertEquals(List.of("Rguest"), entry.permissionList);
+        assertSame(entry, authenticator.getAccessTokenEntry("token1"));
+        assertEquals(1, authenticator.loadCount.get());
+    }
+
+    public void test_getAccessTokenEntry_negative() throws Exception {
+        authenticator.initCache();
+
+        assertNull(authenticator.getAccessTokenEntry("token2").permissionList);
+        authenticator.tokenMap.put("token2", new PluginAuthenticator.AccessTokenEntry("new", null, List.of("Rguest")));
+        assertNull(authenticator.getAccessTokenEntry("token2").permissionList);
+        assertEquals(1, authenticator.loadCount.get());
+
+        // an unknown token is looked up again after the negative ttl
+        authenticator.negativeTtl = 0L;
+        Thread.sleep(10L);
+        assertEquals("new", authenticator.getAccessTokenEntry("token2").name);
+        assertEquals(2, authenticator.loadCount.get());
+    }
+
+    public void test_getAccessTokenEntry_expired() throws Exception {
+        authenticator.ttl = 50L;
+        authenticator.initCache();
+
+        authenticator.getAccessTokenEntry("token1");
+        authenticator.tokenMap.remove("token1");
+        Thread.sleep(100L);
+        assertNull(authenticator.getAccessTokenEntry("token1").permissionList);
+        assertEquals(2, authenticator.loadCount.get());
+    }
+
+    public void test_getAccessTokenEntry_noCache() {
+        authenticator.getAccessTokenEntry("token1");
+        authenticator.getAccessTokenEntry("token1");
+        assertEquals(2, authenticator.loadCount.get());
+    }
+
+    public void test_invalidate() {
+        authenticator.initCache();
+
+        authenticator.getAccessTokenEntry("token1");
+        authenticator.invalidate();
+        authenticator.getAccessTokenEntry("token1");
+        assertEquals(2, authenticator.loadCount.get());
+    }
+
+    public void test_checkAccessTokens() {
+        authenticator.initCache();
+
+        authenticator.checkAccessTokens();
+        authenticator.getAccessTokenEntry("token1");
+        authenticator.checkAccessTokens();
+        authenticator.getAccessTokenEntry("token1");
+        assertEquals(1, authenticator.loadCount.get());
+
+        // the token is deleted in the admin UI
+        authenticator.tokenMap.remove("token1");
+        authenticator.version = "0:2000";
+        authenticator.checkAccessTokens();
+        assertNull(authenticator.getAccessTokenEntry("token1").permissionList);
+        assertEquals(2, authenticator.loadCount.get());
+
+        // a failed check keeps the cache
+        authenticator.version = null;
+        authenticator.checkAccessTokens();
+        authenticator.getAccessTokenEntry("token1");
+        assertEquals(2, authenticator.loadCount.get());
+    }
+
+    private static class TestAuthenticator extends PluginAuthenticator {
+        private final Map<String, AccessTokenEntry> tokenMap = new ConcurrentHashMap<>();
+
+        private final AtomicInteger loadCount = new AtomicInteger();
+
+        private volatile String version = "1:1000";
+
+        private volatile long ttl = 60000L;
+
+        private volatile long negativeTtl = 10000L;
+
+        private void initCache() {
+            refreshExecutor = Executors.newSingleThreadScheduledExecutor();
+            tokenCache = createTokenCache(100);
+        }
+
+        @Override
+        protected AccessTokenEntry loadAccessTokenEntry(final String token) {
+            loadCount.incrementAndGet();
+            return tokenMap.getOrDefault(token, new AccessTokenEntry(null, null, null));
+        }
+
+        @Override
+        protected String loadAccessTokenVersion() {
+            if (version == null) {
+                throw new IllegalStateException("The index is not available.");
+            }
+            return version;
+        }
+
+        @Override
+        protected long getTokenCacheTtl() {
+            return ttl;
+        }
+
+        @Override
+        protected long getTokenCacheNegativeTtl() {
+            return negativeTtl;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.codelibs.fess.api.WebApiManagerFactory;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.auth.PluginAuthenticator;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Query;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Query.QueryBuilder;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.QueryResult;
+import org.codelibs.fess.util.ComponentUtil;
+import org.dbflute.utflute.lastaflute.LastaFluteTestCase;
+
+public class QueryResultCacheTest extends LastaFluteTestCase {
+
+    private WebApiManagerFactory webApiManagerFactory;
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        ComponentUtil.setFessConfig(new FessConfig.SimpleImpl() {
+            private static final long serialVersionUID = 1L;
+        });
+        webApiManagerFactory = new WebApiManagerFactory();
+        ComponentUtil.register(webApiManagerFactory, "webApiManagerFactory");
+        PluginAuthenticator pluginAuthenticator = new PluginAuthenticator();
+        ComponentUtil.register(pluginAuthenticator, "pluginAuthenticator");
+        super.setUp();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        ComponentUtil.setFessConfig(null);
+        super.tearDown();
+    }
+
+    public void test_key() {
+        final List<String> permissions = Arrays.asList("Rrole1", "Ruser1");
+        final List<String> roles = Arrays.asList("1", "Rrole1");
+        final Query query = new QueryBuilder("fess  search").topK(5).author("taro").build();
+
+        assertEquals(QueryResultCache.createKey(query, permissions, roles, "host"),
+                QueryResultCache.createKey(new QueryBuilder(" fess search ").topK(5).author("taro").build(),
+                        Arrays.asList("Ruser1", "Rrole1"), roles, "host"));
+        assertFalse(QueryResultCache.createKey(query, permissions, roles, "host")
+                .equals(QueryResultCache.createKey(query, Arrays.asList("Ruser2"), roles, "host")));
+        assertFalse(QueryResultCache.createKey(query, permissions, roles, "host")
+                .equals(QueryResultCache.createKey(query, permissions, Arrays.asList("1"), "host")));
+        assertFalse(QueryResultCache.createKey(query, permissions, roles, "host")
+                .equals(QueryResultCache.createKey(new QueryBuilder("fess search").topK(3).author("taro").build(), permissions, roles,
+                        "host")));
+        assertFalse(QueryResultCache.createKey(query, permissions, roles, "host")
+                .equals(QueryResultCache.createKey(query, permissions, roles, "other")));
+        assertFalse(QueryResultCache.createKey(query, permissions, roles, "host").equals(QueryResultCache
+                .createKey(new QueryBuilder("fess search").topK(5).author("taro").highlight(true).build(), permissions, roles, "host")));
+        assertEquals(
+                QueryResultCache.createKey(new QueryBuilder("fess search").fragmentSize(50).build(), permissions, roles, "host"),
+                QueryResultCache.createKey(new QueryBuilder("fess search").fragmentSize(50).build(), permissions, roles, "host"));
+        assertFalse(QueryResultCache.createKey(query, permissions, roles, "host").equals(QueryResultCache.createKey(
+                new QueryBuilder("fess search").topK(5).author("taro").includeFields(Arrays.asList("url")).build(), permissions, roles,
+                "host")));
+        assertFalse(QueryResultCache.createKey(new QueryBuilder("fess search").cursor("a").build(), permissions, roles, "host")
+                .equals(QueryResultCache.createKey(new QueryBuilder("fess search").cursor("b").build(), permissions, roles, "host")));
+    }
+
+    public void test_getAndPut() {
+        final QueryResultCache cache = new QueryResultCache(10, 60000L);
+        final Query query = new QueryBuilder("fess").build();
+        final QueryResultCache.Key key = QueryResultCache.createKey(query, Collections.emptyList(), Collections.emptyList(), null);
+        assertNull(cache.get(key, query));
+
+        cache.put(key, QueryResult.create(query, Collections.emptyList(), 5000), cache.getGeneration());
+        assertEquals("{\"query\":\"fess\",\"results\":[],\"top_k\":0}", cache.get(key, query).toJsonString());
+        final Query query2 = new QueryBuilder(" fess").build();
+        assertEquals("{\"query\":\" fess\",\"results\":[],\"top_k\":0}", cache.get(key, query2).toJsonString());
+        assertEquals(2, cache.getStats().hitCount());
+        assertEquals(1, cache.getStats().missCount());
+    }
+
+    public void test_invalidateAll() {
+        final QueryResultCache cache = new QueryResultCache(10, 60000L);
+        final Query query = new QueryBuilder("fess").build();
+        final QueryResultCache.Key key = QueryResultCache.createKey(query, Collections.emptyList(), Collections.emptyList(), null);
+        cache.put(key, QueryResult.create(query, Collections.emptyList(), 5000), cache.getGeneration());
+        assertEquals(1, cache.size());
+
+        final long generation = cache.getGeneration();
+        cache.invalidateAll();
+        assertNull(cache.get(key, query));
+        cache.put(key, QueryResult.create(query, Collections.emptyList(), 5000), generation);
+        assertNull(cache.get(key, query));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.config;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.codelibs.fess.plugin.webapp.api.chatgpt.config.ChatGptConfig.ConfigBuilder;
+
+import junit.framework.TestCase;
+
+public class ChatGptConfigTest extends TestCase {
+
+    public void test_build() {
+        final ChatGptConfig config = new ConfigBuilder()//
+                .responseFields("url,content")//
+                .defaultRoles("Rguest,,Radmin")//
+                .defaultVirtualHosts("")//
+                .defaultHost("chatgpt")//
+                .docMaxLength("100")//
+                .multiSearchEnabled("TRUE")//
+                .upsertChunkEnabled("false")//
+                .upsertFileMaxSize("1024")//
+                .build();
+        assertEquals(Arrays.asList("url", "content"), Arrays.asList(config.getResponseFields()));
+        assertEquals(Arrays.asList("Rguest", "Radmin"), config.getDefaultRoleList());
+        assertEquals(Collections.emptyList(), config.getDefaultVirtualHostList());
+        assertEquals("chatgpt", config.getDefaultHost());
+        assertEquals(100, config.getDocMaxLength());
+        assertTrue(config.isMultiSearchEnabled());
+        assertFalse(config.isUpsertChunkEnabled());
+        assertEquals(1024L, config.getUpsertFileMaxSize());
+        assertNull(config.getUpsertDigestField());
+        assertEquals("content_digest", new ConfigBuilder().upsertDigestField(" content_digest ").build().getUpsertDigestField());
+        assertNull(new ConfigBuilder().upsertDigestField("").build().getUpsertDigestField());
+    }
+
+    public void test_embedding() {
+        ChatGptConfig config = new ConfigBuilder().embeddingField(" content_vector ").embeddingDimension("1536").build();
+        assertEquals("content_vector", config.getEmbeddingField());
+        assertEquals(1536, config.getEmbeddingDimension());
+        assertEquals(Arrays.asList("content_vector"), Arrays.asList(config.getResponseFields()));
+
+        // the embedding field is added to the response fields once
+        config = new ConfigBuilder().responseFields("url,content_vector").embeddingField("content_vector").build();
+        assertEquals(Arrays.asList("url", "content_vector"), Arrays.asList(config.getResponseFields()));
+
+        config = new ConfigBuilder().responseFields("url").embeddingField("").embeddingDimension("0").build();
+        assertNull(config.getEmbeddingField());
+        assertEquals(0, config.getEmbeddingDimension());
+        assertEquals(Arrays.asList("url"), Arrays.asList(config.getResponseFields()));
+    }
+
+    public void test_compression() {
+        final ChatGptConfig config = new ConfigBuilder()//
+                .compressionEnabled("true")//
+                .compressionThreshold("1024")//
+                .compressionLevel("6")//
+                .compressionMaxInflatedSize("536870912")//
+                .build();
+        assertTrue(config.isCompressionEnabled());
+        assertEquals(1024, config.getCompressionThreshold());
+        assertEquals(6, config.getCompressionLevel());
+        assertEquals(536870912L, config.getCompressionMaxInflatedSize());
+        assertFalse(config.equals(new ConfigBuilder().compressionEnabled("false").build()));
+    }
+
+    public void test_delete() {
+        ChatGptConfig config = new ConfigBuilder()//
+                .deleteBatchSize("500")//
+                .deleteRequestsPerSecond("100.5")//
+                .deleteSlices("4")//
+                .build();
+        assertEquals(500, config.getDeleteBatchSize());
+        assertEquals(100.5f, config.getDeleteRequestsPerSecond());
+        assertEquals(4, config.getDeleteSlices());
+
+        config = new ConfigBuilder().deleteRequestsPerSecond("-1").deleteSlices("AUTO").build();
+        assertEquals(Float.POSITIVE_INFINITY, config.getDeleteRequestsPerSecond());
+        assertEquals(0, config.getDeleteSlices());
+    }
+
+    public void test_highlight() {
+        ChatGptConfig config = new ConfigBuilder().highlightFragmentSize("150").highlightNumberOfFragments("2").build();
+        assertEquals(150, config.getHighlightFragmentSize());
+        assertEquals(2, config.getHighlightNumberOfFragments());
+
+        config = new ConfigBuilder().highlightFragmentSize("0").highlightNumberOfFragments("-1").build();
+        assertEquals(1, config.getHighlightFragmentSize());
+        assertEquals(1, config.getHighlightNumberOfFragments());
+    }
+
+    public void test_limits() {
+        final ChatGptConfig config = new ConfigBuilder()//
+                .concurrencyLimitEnabled("true")//
+                .concurrencyLimitInitial("20")//
+                .concurrencyLimitMin("2")//
+                .concurrencyLimitMax("200")//
+                .concurrencyLimitTolerance("2.0")//
+                .rateLimitTopKWeight("0.5")//
+                .build();
+        assertTrue(config.isConcurrencyLimitEnabled());
+        assertEquals(20, config.getConcurrencyLimitInitial());
+        assertEquals(2, config.getConcurrencyLimitMin());
+        assertEquals(200, config.getConcurrencyLimitMax());
+        assertEquals(2.0, config.getConcurrencyLimitTolerance());
+        assertEquals(0.5, config.getRateLimitTopKWeight());
+        assertFalse(config.equals(new ConfigBuilder().rateLimitTopKWeight("0.5").build()));
+    }
+
+    public void test_equals() {
+        final ChatGptConfig config1 = new ConfigBuilder().responseFields("url,content").defaultRoles("Rguest").build();
+        final ChatGptConfig config2 = new ConfigBuilder().responseFields("url,content").defaultRoles("Rguest").build();
+        final ChatGptConfig config3 = new ConfigBuilder().responseFields("url").defaultRoles("Rguest").build();
+        assertEquals(config1, config2);
+        assertEquals(config1.hashCode(), config2.hashCode());
+        assertFalse(config1.equals(config3));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.entity;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Base64;
+
+import org.codelibs.fess.plugin.webapp.api.chatgpt.util.JsonEncoder;
+
+import junit.framework.TestCase;
+
+public class EmbeddingEncodingTest extends TestCase {
+
+    public void test_of() {
+        assertEquals(EmbeddingEncoding.FLOAT32, EmbeddingEncoding.of("float32"));
+        assertEquals(EmbeddingEncoding.FLOAT16, EmbeddingEncoding.of(" FLOAT16 "));
+        assertEquals(EmbeddingEncoding.INT8, EmbeddingEncoding.of("int8"));
+        assertEquals(EmbeddingEncoding.JSON, EmbeddingEncoding.of("json"));
+        assertEquals(EmbeddingEncoding.JSON, EmbeddingEncoding.of("unknown"));
+        assertEquals(EmbeddingEncoding.JSON, EmbeddingEncoding.of(null));
+    }
+
+    public void test_writeJson() {
+        final float[] vector = { 0.5f, -1.0f, 0.25f, 3.0f };
+        assertEquals("\"embedding\":[0.5,-1.0,0.25,3.0]", write(EmbeddingEncoding.JSON, vector));
+
+        final ByteBuffer buffer = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        for (final float value : vector) {
+            buffer.putFloat(value);
+        }
+        assertEquals("\"embedding\":\"" + Base64.getEncoder().encodeToString(buffer.array()) + "\",\"embedding_encoding\":\"float32\"",
+                write(EmbeddingEncoding.FLOAT32, vector));
+
+        assertEquals("\"embedding\":\"ADgAvAA0AEI=\",\"embedding_encoding\":\"float16\"", write(EmbeddingEncoding.FLOAT16, vector));
+
+        // 21, -42, 11, 127 with the scale of 3.0 / 127
+        assertEquals("\"embedding\":\"FdYLfw==\",\"embedding_encoding\":\"int8\",\"embedding_scale\":" + Float.toString(3.0f / 127.0f),
+                write(EmbeddingEncoding.INT8, vector));
+        assertEquals("\"embedding\":\"AAA=\",\"embedding_encoding\":\"int8\",\"embedding_scale\":0.0",
+                write(EmbeddingEncoding.INT8, new float[] { 0.0f, 0.0f }));
+    }
+
+    public void test_toFloat16() {
+        assertEquals(0x3c00, EmbeddingEncoding.toFloat16(1.0f));
+        assertEquals(0xc000, EmbeddingEncoding.toFloat16(-2.0f));
+        assertEquals(0x2e66, EmbeddingEncoding.toFloat16(0.1f));
+        assertEquals(0x7bff, EmbeddingEncoding.toFloat16(65504.0f));
+        assertEquals(0x7c00, EmbeddingEncoding.toFloat16(65520.0f));
+        assertEquals(0x0001, EmbeddingEncoding.toFloat16(5.96e-8f));
+        assertEquals(0x0000, EmbeddingEncoding.toFloat16(1.0e-8f));
+        assertEquals(0x7e00, EmbeddingEncoding.toFloat16(Float.NaN));
+    }
+
+    private static String write(final EmbeddingEncoding encoding, final float[] vector) {
+        final JsonEncoder encoder = new JsonEncoder(8);
+        encoding.writeJson(vector, encoder);
+        return encoder.toString();
+    }
+}
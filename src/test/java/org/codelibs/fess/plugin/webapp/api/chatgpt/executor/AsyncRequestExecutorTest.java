@@ -0,0 +1,271 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.executor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.codelibs.fess.api.WebApiManagerFactory;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.auth.PluginAuthenticator;
+import org.codelibs.fess.util.ComponentUtil;
+import org.dbflute.utflute.lastaflute.LastaFluteTestCase;
+
+public class AsyncRequestExecutorTest extends LastaFluteTestCase {
+
+    private WebApiManagerFactory webApiManagerFactory;
+
+    private final List<AsyncListener> listenerList = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger completed = new AtomicInteger();
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    private final AtomicInteger status = new AtomicInteger();
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        ComponentUtil.setFessConfig(new FessConfig.SimpleImpl() {
+            private static final long serialVersionUID = 1L;
+        });
+        webApiManagerFactory = new WebApiManagerFactory();
+        ComponentUtil.register(webApiManagerFactory, "webApiManagerFactory");
+        PluginAuthenticator pluginAuthenticator = new PluginAuthenticator();
+        ComponentUtil.register(pluginAuthenticator, "pluginAuthenticator");
+        super.setUp();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        ComponentUtil.setFessConfig(null);
+        super.tearDown();
+    }
+
+    public void test_execute_notDetached() {
+        try (AsyncRequestExecutor executor = new AsyncRequestExecutor(1, 60000L)) {
+            assertFalse(executor.execute(createRequest(false), createResponse(), (req, res) -> fail()));
+            assertEquals(1, executor.semaphore.availablePermits());
+        }
+    }
+
+    public void test_execute() throws Exception {
+        try (AsyncRequestExecutor executor = new AsyncRequestExecutor(1, 60000L)) {
+            final CountDownLatch latch = new CountDownLatch(1);
+            final CountDownLatch finished = new CountDownLatch(1);
+            assertTrue(executor.execute(createRequest(true), createResponse(), (req, res) -> {
+                try {
+                    latch.await();
+                    res.setStatus(HttpServletResponse.SC_OK);
+                    res.getOutputStream().write("OK".getBytes(StandardCharsets.UTF_8));
+                } catch (final Exception e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    finished.countDown();
+                }
+            }));
+            // the only permit is taken, so the caller processes the request on its own thread
+            assertFalse(executor.execute(createRequest(true), createResponse(), (req, res) -> fail()));
+
+            latch.countDown();
+            assertTrue(finished.await(10, TimeUnit.SECONDS));
+            awaitCompleted(1);
+            assertEquals(HttpServletResponse.SC_OK, status.get());
+            assertEquals("OK", body.toString(StandardCharsets.UTF_8));
+            assertEquals(1, executor.semaphore.availablePermits());
+        }
+    }
+
+    public void test_execute_timeout() throws Exception {
+        try (AsyncRequestExecutor executor = new AsyncRequestExecutor(1, 60000L)) {
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch finished = new CountDownLatch(1);
+            final AtomicBoolean interrupted = new AtomicBoolean();
+            final AtomicReference<IOException> readError = new AtomicReference<>();
+            final AtomicReference<IOException> writeError = new AtomicReference<>();
+            assertTrue(executor.execute(createRequest(true), createResponse(), (req, res) -> {
+                started.countDown();
+                try {
+                    Thread.sleep(60000L);
+                } catch (final InterruptedException e) {
+                    interrupted.set(true);
+                }
+                try {
+                    req.getInputStream().read();
+                } catch (final IOException e) {
+                    readError.set(e);
+                }
+                try {
+                    res.setStatus(HttpServletResponse.SC_OK);
+                    res.getOutputStream().write('X');
+                } catch (final IOException e) {
+                    writeError.set(e);
+                }
+                finished.countDown();
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            listenerList.get(0).onTimeout(new AsyncEvent(null));
+            assertTrue(finished.await(10, TimeUnit.SECONDS));
+            assertTrue(interrupted.get());
+            // the worker cannot read from the request recycled by the container
+            assertNotNull(readError.get());
+            // the worker cannot write to the response recycled by the container
+            assertNotNull(writeError.get());
+            assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, status.get());
+            assertEquals("{\"detail\":[{\"msg\":\"The request timed out.\"}]}", body.toString(StandardCharsets.UTF_8));
+
+            awaitPermit(executor);
+            listenerList.get(0).onTimeout(new AsyncEvent(null));
+            assertEquals(1, completed.get());
+        }
+    }
+
+    public void test_execute_rejected() {
+        final AsyncRequestExecutor executor = new AsyncRequestExecutor(1, 60000L);
+        executor.close();
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        assertTrue(executor.execute(createRequest(true), createResponse(), (req, res) -> thread.set(Thread.currentThread())));
+        assertSame(Thread.currentThread(), thread.get());
+        assertEquals(1, completed.get());
+        assertEquals(1, executor.semaphore.availablePermits());
+    }
+
+    private void awaitCompleted(final int count) throws InterruptedException {
+        for (int i = 0; i < 100 && completed.get() < count; i++) {
+            Thread.sleep(100L);
+        }
+        assertEquals(count, completed.get());
+    }
+
+    private void awaitPermit(final AsyncRequestExecutor executor) throws InterruptedException {
+        for (int i = 0; i < 100 && executor.semaphore.availablePermits() == 0; i++) {
+            Thread.sleep(100L);
+        }
+        assertEquals(1, executor.semaphore.availablePermits());
+    }
+
+    private HttpServletRequest createRequest(final boolean asyncSupported) {
+        final AsyncContext asyncContext = (AsyncContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { AsyncContext.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "addListener":
+                        listenerList.add((AsyncListener) args[0]);
+                        return null;
+                    case "complete":
+                        completed.incrementAndGet();
+                        return null;
+                    default:
+                        return null;
+                    }
+                });
+        final ByteArrayInputStream bodyStream = new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8));
+        final ServletInputStream in = new ServletInputStream() {
+            @Override
+            public int read() throws IOException {
+                return bodyStream.read();
+            }
+
+            @Override
+            public boolean isFinished() {
+                return bodyStream.available() == 0;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(final ReadListener readListener) {
+            }
+        };
+        return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { HttpServletRequest.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "isAsyncSupported":
+                        return asyncSupported;
+                    case "startAsync":
+                        return asyncContext;
+                    case "getInputStream":
+                        return in;
+                    default:
+                        return null;
+                    }
+                });
+    }
+
+    private HttpServletResponse createResponse() {
+        final ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(final WriteListener writeListener) {
+            }
+        };
+        return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { HttpServletResponse.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getOutputStream":
+                        return out;
+                    case "setStatus":
+                        status.set((Integer) args[0]);
+                        return null;
+                    case "isCommitted":
+                        return false;
+                    default:
+                        return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+import org.codelibs.core.io.InputStreamUtil;
+
+import junit.framework.TestCase;
+
+public class CompressingResponseTest extends TestCase {
+
+    public void test_belowThreshold() throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final Map<String, String> headers = new LinkedHashMap<>();
+        final CompressingResponse response = new CompressingResponse(createResponse(body, headers), 100, 6);
+        final PrintWriter writer = response.getWriter();
+        writer.write("{\"results\":[]}");
+        response.flushBuffer();
+        assertEquals(0, body.size());
+        response.finish();
+
+        assertFalse(response.isCompressed());
+        assertEquals("{\"results\":[]}", body.toString("UTF-8"));
+        assertNull(headers.get("Content-Encoding"));
+        assertEquals("Accept-Encoding", headers.get("Vary"));
+    }
+
+    public void test_aboveThreshold() throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final Map<String, String> headers = new LinkedHashMap<>();
+        final CompressingResponse response = new CompressingResponse(createResponse(body, headers), 100, 6);
+        final StringBuilder buf = new StringBuilder();
+        final PrintWriter writer = response.getWriter();
+        for (int i = 0; i < 100; i++) {
+            final String text = "{\"id\":\"" + i + "\",\"text\":\"テキスト\"}";
+            buf.append(text);
+            writer.write(text);
+            writer.flush();
+        }
+        response.flushBuffer();
+        assertTrue(response.isCompressed());
+        assertTrue(response.isCommitted());
+        final int flushedSize = body.size();
+        assertTrue(flushedSize > 0);
+        response.finish();
+
+        assertTrue(body.size() > flushedSize);
+        assertEquals("gzip", headers.get("Content-Encoding"));
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body.toByteArray()))) {
+            assertEquals(buf.toString(), new String(InputStreamUtil.getBytes(in), "UTF-8"));
+        }
+    }
+
+    public void test_resetBuffer() throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final Map<String, String> headers = new LinkedHashMap<>();
+        final CompressingResponse response = new CompressingResponse(createResponse(body, headers), 100, 6);
+        response.getWriter().write("{\"results\":[");
+        response.resetBuffer();
+        response.getWriter().write("{\"message\":\"error\"}");
+        response.finish();
+
+        assertEquals("{\"message\":\"error\"}", body.toString("UTF-8"));
+    }
+
+    private HttpServletResponse createResponse(final ByteArrayOutputStream body, final Map<String, String> headers) {
+        final ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(final WriteListener writeListener) {
+            }
+        };
+        return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { HttpServletResponse.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getOutputStream":
+                        return out;
+                    case "setHeader":
+                    case "addHeader":
+                        headers.put((String) args[0], (String) args[1]);
+                        return null;
+                    case "isCommitted":
+                        return body.size() > 0;
+                    case "getCharacterEncoding":
+                        return "UTF-8";
+                    default:
+                        return null;
+                    }
+                });
+    }
+}
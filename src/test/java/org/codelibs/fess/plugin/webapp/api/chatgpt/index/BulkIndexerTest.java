@@ -0,0 +1,220 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import junit.framework.TestCase;
+
+public class BulkIndexerTest extends TestCase {
+
+    private ExecutorService executorService;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        executorService = Executors.newFixedThreadPool(2);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executorService.shutdownNow();
+        super.tearDown();
+    }
+
+    public void test_index_bulkSize() {
+        final List<Integer> sizeList = Collections.synchronizedList(new ArrayList<>());
+        final BulkIndexer bulkIndexer = new BulkIndexer(2, 0, executorService, docList -> {
+            sizeList.add(docList.size());
+            return getIds(docList);
+        });
+
+        assertEquals(List.of("doc0", "doc1", "doc2", "doc3", "doc4"), bulkIndexer.index(createDocs(5)));
+        assertEquals(List.of(2, 2, 1), sizeList);
+    }
+
+    public void test_index_bulkBytes() {
+        final List<Integer> sizeList = Collections.synchronizedList(new ArrayList<>());
+        // {"id":"docN"} is estimated at 14 bytes
+        final BulkIndexer bulkIndexer = new BulkIndexer(100, 30, executorService, docList -> {
+            sizeList.add(docList.size());
+            return getIds(docList);
+        });
+
+        assertEquals(7, bulkIndexer.index(createDocs(7)).size());
+        assertEquals(List.of(3, 3, 1), sizeList);
+    }
+
+    public void test_index_empty() {
+        final AtomicInteger count = new AtomicInteger();
+        final BulkIndexer bulkIndexer = new BulkIndexer(2, 0, executorService, docList -> {
+            count.incrementAndGet();
+            return getIds(docList);
+        });
+
+        assertTrue(bulkIndexer.index(Collections.emptyIterator()).isEmpty());
+        assertEquals(0, count.get());
+    }
+
+    public void test_index_order() {
+        final BulkIndexer bulkIndexer = new BulkIndexer(3, 0, executorService, docList -> {
+            // earlier requests finish later
+            sleep(docList.get(0).get("id").equals("doc0") ? 100L : 0L);
+            return getIds(docList);
+        });
+
+        final List<String> expected = IntStream.range(0, 10).mapToObj(i -> "doc" + i).toList();
+        assertEquals(expected, bulkIndexer.index(createDocs(10)));
+    }
+
+    public void test_index_singleInFlight() {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final BulkIndexer bulkIndexer = new BulkIndexer(1, 0, executorService, docList -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            sleep(20L);
+            inFlight.decrementAndGet();
+            return getIds(docList);
+        });
+
+        assertEquals(5, bulkIndexer.index(createDocs(5)).size());
+        assertEquals(1, maxInFlight.get());
+    }
+
+    public void test_index_overlap() {
+        // the first request waits until the documents of the second one are prepared
+        final CountDownLatch prepared = new CountDownLatch(1);
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        final Iterator<Map<String, Object>> docs = createDocs(2);
+        final Iterator<Map<String, Object>> docIterator = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return docs.hasNext();
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                final Map<String, Object> doc = docs.next();
+                if (doc.get("id").equals("doc1")) {
+                    prepared.countDown();
+                }
+                return doc;
+            }
+        };
+        final BulkIndexer bulkIndexer = new BulkIndexer(1, 0, executorService, docList -> {
+            if (docList.get(0).get("id").equals("doc0")) {
+                try {
+                    overlapped.set(prepared.await(10, TimeUnit.SECONDS));
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return getIds(docList);
+        });
+
+        assertEquals(List.of("doc0", "doc1"), bulkIndexer.index(docIterator));
+        assertTrue(overlapped.get());
+    }
+
+    public void test_index_requestFailure() {
+        final AtomicInteger count = new AtomicInteger();
+        final BulkIndexer bulkIndexer = new BulkIndexer(2, 0, executorService, docList -> {
+            if (count.incrementAndGet() == 2) {
+                throw new IllegalStateException("Bulk failed.");
+            }
+            return getIds(docList);
+        });
+
+        try {
+            bulkIndexer.index(createDocs(6));
+            fail();
+        } catch (final IllegalStateException e) {
+            assertEquals("Bulk failed.", e.getMessage());
+        }
+        // the third request is not sent after the second one failed
+        assertEquals(2, count.get());
+    }
+
+    public void test_index_documentFailure() {
+        final AtomicBoolean finished = new AtomicBoolean();
+        final Iterator<Map<String, Object>> docs = createDocs(2);
+        final Iterator<Map<String, Object>> docIterator = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                if (docs.hasNext()) {
+                    return docs.next();
+                }
+                throw new IllegalArgumentException("Invalid document.");
+            }
+        };
+        final BulkIndexer bulkIndexer = new BulkIndexer(2, 0, executorService, docList -> {
+            sleep(100L);
+            finished.set(true);
+            return getIds(docList);
+        });
+
+        try {
+            bulkIndexer.index(docIterator);
+            fail();
+        } catch (final IllegalArgumentException e) {
+            assertEquals("Invalid document.", e.getMessage());
+        }
+        // the caller does not return while a bulk request is running
+        assertTrue(finished.get());
+    }
+
+    public void test_estimateSize() {
+        final BulkIndexer bulkIndexer = new BulkIndexer(1, 0, executorService, this::getIds);
+        assertEquals(5, bulkIndexer.estimateSize("abc"));
+        assertEquals(16, bulkIndexer.estimateSize(1));
+        assertEquals(14, bulkIndexer.estimateSize(Map.of("id", "doc0")));
+        assertEquals(2 + 6 + 1 + 6 + 1, bulkIndexer.estimateSize(List.of("doc0", "doc1")));
+        assertEquals(2 + 6 + 1 + 6 + 1, bulkIndexer.estimateSize(new String[] { "doc0", "doc1" }));
+        assertEquals(3 * 12 + 2, bulkIndexer.estimateSize(new float[3]));
+    }
+
+    private Iterator<Map<String, Object>> createDocs(final int size) {
+        return IntStream.range(0, size).mapToObj(i -> Map.<String, Object> of("id", "doc" + i)).iterator();
+    }
+
+    private String[] getIds(final List<Map<String, Object>> docList) {
+        return docList.stream().map(doc -> (String) doc.get("id")).toArray(String[]::new);
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class DigestDeduplicatorTest extends TestCase {
+
+    public void test_wrap() {
+        final Map<String, String> indexedDigestMap = new HashMap<>();
+        indexedDigestMap.put("1", "a");
+        indexedDigestMap.put("2", "b");
+        indexedDigestMap.put("3-0", "c");
+        indexedDigestMap.put("3-1", "d");
+        final List<List<String>> loadedIdList = new ArrayList<>();
+        final DigestDeduplicator deduplicator = new DigestDeduplicator("_id", "digest", idList -> {
+            loadedIdList.add(idList);
+            final Map<String, String> digestMap = new HashMap<>();
+            idList.forEach(id -> {
+                if (indexedDigestMap.containsKey(id)) {
+                    digestMap.put(id, indexedDigestMap.get(id));
+                }
+            });
+            return digestMap;
+        });
+        final List<String> requestedIdList = new ArrayList<>();
+        final BulkIndexer.BulkRequester requester = deduplicator.wrap(docList -> {
+            final String[] ids = docList.stream().map(doc -> (String) doc.get("_id")).toArray(n -> new String[n]);
+            requestedIdList.addAll(Arrays.asList(ids));
+            return ids;
+        });
+
+        final String[] ids = requester.request(Arrays.asList(createDoc("1", "a"), createDoc("2", "x"), createDoc("3-0", "c"),
+                createDoc("3-1", "d"), createDoc("4", "e"), createDoc("5", null)));
+        assertEquals(Arrays.asList("2", "4", "5", "1", "3-0", "3-1"), Arrays.asList(ids));
+        assertEquals(Arrays.asList("2", "4", "5"), requestedIdList);
+        assertEquals(Arrays.asList(Arrays.asList("1", "2", "3-0", "3-1", "4")), loadedIdList);
+
+        final UpsertIdCollector idCollector = new UpsertIdCollector();
+        idCollector.add("1", null);
+        idCollector.add("2", null);
+        idCollector.add("3-0", "3");
+        idCollector.add("3-1", "3");
+        idCollector.add("4", null);
+        idCollector.add("5", null);
+        assertEquals(Arrays.asList("1", "3"), deduplicator.getUnchangedIdList(idCollector));
+    }
+
+    public void test_wrap_partiallyChanged() {
+        final DigestDeduplicator deduplicator =
+                new DigestDeduplicator("_id", "digest", idList -> Collections.singletonMap("3-0", "c"));
+        final BulkIndexer.BulkRequester requester = deduplicator.wrap(docList -> new String[docList.size()]);
+        requester.request(Arrays.asList(createDoc("3-0", "c"), createDoc("3-1", "x")));
+
+        final UpsertIdCollector idCollector = new UpsertIdCollector();
+        idCollector.add("3-0", "3");
+        idCollector.add("3-1", "3");
+        assertEquals(Collections.emptyList(), deduplicator.getUnchangedIdList(idCollector));
+    }
+
+    public void test_wrap_failedToLoad() {
+        final DigestDeduplicator deduplicator = new DigestDeduplicator("_id", "digest", idList -> {
+            throw new IllegalStateException("test");
+        });
+        final BulkIndexer.BulkRequester requester = deduplicator.wrap(docList -> new String[] { "1" });
+        assertEquals(Arrays.asList("1"), Arrays.asList(requester.request(Arrays.asList(createDoc("1", "a")))));
+        assertEquals(Collections.emptyList(), deduplicator.getUnchangedIdList(new UpsertIdCollector()));
+    }
+
+    public void test_wrap_disabled() {
+        final BulkIndexer.BulkRequester requester = docList -> new String[] { "1" };
+        assertSame(requester, new DigestDeduplicator("_id", null, idList -> {
+            throw new IllegalStateException("test");
+        }).wrap(requester));
+    }
+
+    private Map<String, Object> createDoc(final String id, final String digest) {
+        final Map<String, Object> doc = new HashMap<>();
+        doc.put("_id", id);
+        if (digest != null) {
+            doc.put("digest", digest);
+        }
+        return doc;
+    }
+}
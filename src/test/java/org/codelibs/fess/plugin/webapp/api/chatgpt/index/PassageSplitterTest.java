@@ -0,0 +1,49 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.index;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class PassageSplitterTest extends TestCase {
+
+    public void test_split_short() {
+        final List<String> passageList = new PassageSplitter(100, 10).split("This is a test.");
+        assertEquals(1, passageList.size());
+        assertEquals("This is a test.", passageList.get(0));
+    }
+
+    public void test_split_sentences() {
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            buf.append("Sentence number ").append(i).append(" is here. ");
+        }
+        final List<String> passageList = new PassageSplitter(100, 30).split(buf.toString());
+        assertEquals(5, passageList.size());
+        assertEquals("Sentence number 0 is here. Sentence number 1 is here. Sentence number 2 is here.", passageList.get(0));
+        assertEquals("Sentence number 2 is here. Sentence number 3 is here. Sentence number 4 is here.", passageList.get(1));
+        assertEquals("Sentence number 8 is here. Sentence number 9 is here.", passageList.get(4));
+    }
+
+    public void test_split_longSentence() {
+        final List<String> passageList = new PassageSplitter(50, 10).split("x".repeat(130));
+        assertEquals(3, passageList.size());
+        for (final String passage : passageList) {
+            assertEquals(50, passage.length());
+        }
+    }
+}
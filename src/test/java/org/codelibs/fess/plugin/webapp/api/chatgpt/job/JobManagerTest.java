@@ -0,0 +1,131 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.job;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class JobManagerTest extends TestCase {
+
+    private JobManager jobManager;
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (jobManager != null) {
+            jobManager.close();
+        }
+        super.tearDown();
+    }
+
+    public void test_submit() throws Exception {
+        jobManager = new JobManager(1, 10, 60000L);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        final Job job = jobManager.submit("upsert", List.of("Rguest"), j -> {
+            started.countDown();
+            await(finish);
+            j.addSucceeded(new String[] { "doc1" });
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertEquals(Job.Status.RUNNING, job.getStatus());
+
+        finish.countDown();
+        waitForDone(job);
+        assertEquals(Job.Status.COMPLETED, job.getStatus());
+        assertTrue(job.toJsonString().contains("\"ids\":[\"doc1\"]"));
+    }
+
+    public void test_submit_failed() throws Exception {
+        jobManager = new JobManager(1, 10, 60000L);
+        final Job job = jobManager.submit("upsert", List.of("Rguest"), j -> {
+            throw new IllegalStateException("Broken.");
+        });
+        waitForDone(job);
+        assertEquals(Job.Status.FAILED, job.getStatus());
+        assertTrue(job.toJsonString().contains("\"message\":\"Broken.\""));
+
+        final Job failedJob = jobManager.submit("upsert", List.of("Rguest"), j -> j.fail("Invalid body."));
+        waitForDone(failedJob);
+        assertEquals(Job.Status.FAILED, failedJob.getStatus());
+        assertTrue(failedJob.toJsonString().contains("\"message\":\"Invalid body.\""));
+    }
+
+    public void test_getJob() throws Exception {
+        jobManager = new JobManager(1, 10, 60000L);
+        final Job job = jobManager.submit("upsert", List.of("Rguest", "Radmin"), j -> {});
+        waitForDone(job);
+
+        assertSame(job, jobManager.getJob(job.getId(), List.of("Rguest", "Radmin")));
+        assertNull(jobManager.getJob(job.getId(), List.of("Rguest")));
+        assertNull(jobManager.getJob(job.getId(), List.of("Radmin", "Rguest", "Rother")));
+        assertNull(jobManager.getJob("unknown", List.of("Rguest", "Radmin")));
+    }
+
+    public void test_submit_queueFull() throws Exception {
+        jobManager = new JobManager(1, 1, 60000L);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        final Job running = jobManager.submit("upsert", List.of("Rguest"), j -> {
+            started.countDown();
+            await(finish);
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        final Job queued = jobManager.submit("upsert", List.of("Rguest"), j -> {});
+        assertEquals(Job.Status.QUEUED, queued.getStatus());
+
+        try {
+            jobManager.submit("upsert", List.of("Rguest"), j -> {});
+            fail();
+        } catch (final RejectedExecutionException e) {
+            // expected
+        }
+        assertEquals(2, jobManager.jobMap.size());
+
+        finish.countDown();
+        waitForDone(running);
+        waitForDone(queued);
+        assertEquals(Job.Status.COMPLETED, queued.getStatus());
+    }
+
+    public void test_purge() throws Exception {
+        jobManager = new JobManager(1, 10, 0L);
+        final Job job = jobManager.submit("upsert", List.of("Rguest"), j -> {});
+        waitForDone(job);
+        Thread.sleep(10L);
+
+        jobManager.purge();
+        assertNull(jobManager.getJob(job.getId(), List.of("Rguest")));
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitForDone(final Job job) throws InterruptedException {
+        for (int i = 0; i < 1000 && !job.isDone(); i++) {
+            Thread.sleep(10L);
+        }
+        assertTrue(job.isDone());
+    }
+}
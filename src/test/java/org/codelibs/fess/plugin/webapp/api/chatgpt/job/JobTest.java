@@ -0,0 +1,73 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.job;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class JobTest extends TestCase {
+
+    public void test_status() {
+        final Job job = new Job("job1", "upsert", List.of("Rguest"), 1000L);
+        assertEquals(Job.Status.QUEUED, job.getStatus());
+        assertFalse(job.isDone());
+        assertEquals(1000L, job.getUpdatedTime());
+
+        job.start();
+        assertEquals(Job.Status.RUNNING, job.getStatus());
+        assertFalse(job.isDone());
+        assertTrue(job.getUpdatedTime() > 1000L);
+
+        job.complete();
+        assertEquals(Job.Status.COMPLETED, job.getStatus());
+        assertTrue(job.isDone());
+    }
+
+    public void test_fail() {
+        final Job job = new Job("job1", "upsert", List.of("Rguest"), 1000L);
+        job.start();
+        job.fail("Broken \"body\".");
+        assertEquals(Job.Status.FAILED, job.getStatus());
+        assertTrue(job.isDone());
+        assertTrue(job.toJsonString().contains("\"status\":\"failed\",\"message\":\"Broken \\\"body\\\".\""));
+    }
+
+    public void test_toJsonString() {
+        final Job job = new Job("job1", "upsert", List.of("Rguest"), 1000L);
+        assertTrue(job.toJsonString().startsWith("{\"job_id\":\"job1\",\"type\":\"upsert\",\"status\":\"queued\",\"created_time\":1000,"));
+
+        job.start();
+        job.addSucceeded(new String[] { "doc1", "doc2" });
+        job.addUnchanged(List.of("doc2"));
+        job.addFailure(2, "doc3", "Invalid text.");
+        job.addFailure(-1, null, null);
+        job.complete();
+        final String json = job.toJsonString();
+        assertTrue(json, json.contains("\"status\":\"completed\""));
+        assertTrue(json, json.contains("\"processed\":4,\"succeeded\":2,\"failed\":2"));
+        assertTrue(json, json.endsWith("\"ids\":[\"doc1\",\"doc2\"],\"unchanged\":[\"doc2\"],\"failures\":["
+                + "{\"position\":2,\"id\":\"doc3\",\"msg\":\"Invalid text.\"},{\"msg\":\"Unknown error.\"}]}"));
+    }
+
+    public void test_addSucceeded_count() {
+        final Job job = new Job("job1", "delete", List.of("Rguest"), 1000L);
+        job.addSucceeded(10L);
+        job.addSucceeded(5L);
+        final String json = job.toJsonString();
+        assertTrue(json, json.contains("\"processed\":15,\"succeeded\":15,\"failed\":0,\"ids\":[]"));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.limit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class AdaptiveConcurrencyLimiterTest extends TestCase {
+
+    public void test_tryAcquire() {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 2.0, () -> 0L);
+        final AdaptiveConcurrencyLimiter.Permit permit1 = limiter.tryAcquire();
+        final AdaptiveConcurrencyLimiter.Permit permit2 = limiter.tryAcquire();
+        assertNotNull(permit1);
+        assertNotNull(permit2);
+        assertNull(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+
+        permit1.ignore();
+        permit1.ignore();
+        assertEquals(1, limiter.getInFlight());
+        assertNotNull(limiter.tryAcquire());
+        assertEquals(2, limiter.getLimit());
+    }
+
+    public void test_limit() {
+        final long[] time = { 0L };
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 100, 2.0, () -> time[0]);
+
+        // the limit grows while the latency is stable
+        for (int i = 0; i < 100; i++) {
+            runRequests(limiter, time, TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        final int grownLimit = limiter.getLimit();
+        assertTrue(grownLimit > 10);
+
+        // and shrinks when the latency gets much longer
+        for (int i = 0; i < 20; i++) {
+            runRequests(limiter, time, TimeUnit.MILLISECONDS.toNanos(1000));
+        }
+        assertTrue(limiter.getLimit() < grownLimit);
+        assertEquals(1L, limiter.getRetryAfterSeconds());
+    }
+
+    public void test_limit_notSaturated() {
+        final long[] time = { 0L };
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 100, 2.0, () -> time[0]);
+        for (int i = 0; i < 100; i++) {
+            final AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+            time[0] += TimeUnit.SECONDS.toNanos(i % 10 + 1);
+            permit.success();
+        }
+        assertEquals(10, limiter.getLimit());
+        assertTrue(limiter.getRetryAfterSeconds() > 1L);
+    }
+
+    public void test_dropped() {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 10, 100, 2.0, () -> 0L);
+        limiter.tryAcquire().dropped();
+        assertEquals(18, limiter.getLimit());
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire().dropped();
+        }
+        assertEquals(10, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    private void runRequests(final AdaptiveConcurrencyLimiter limiter, final long[] time, final long latency) {
+        final List<AdaptiveConcurrencyLimiter.Permit> permitList = new ArrayList<>();
+        AdaptiveConcurrencyLimiter.Permit permit;
+        while ((permit = limiter.tryAcquire()) != null) {
+            permitList.add(permit);
+        }
+        time[0] += latency;
+        permitList.forEach(AdaptiveConcurrencyLimiter.Permit::success);
+    }
+}
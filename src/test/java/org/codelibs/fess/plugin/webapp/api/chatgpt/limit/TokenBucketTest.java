@@ -0,0 +1,97 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.limit;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class TokenBucketTest extends TestCase {
+
+    public void test_tryConsume() {
+        final long[] now = { 0L };
+        final TokenBucket bucket = new TokenBucket(2, 4, () -> now[0]);
+        assertEquals(4, bucket.getCapacity());
+        assertEquals(4, bucket.getRemaining());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(bucket.tryConsume(1));
+        }
+        assertFalse(bucket.tryConsume(1));
+        assertEquals(0, bucket.getRemaining());
+        assertEquals(1, bucket.getRetryAfterSeconds(1));
+
+        now[0] += TimeUnit.MILLISECONDS.toNanos(500);
+        assertEquals(1, bucket.getRemaining());
+        assertTrue(bucket.tryConsume(1));
+        assertFalse(bucket.tryConsume(1));
+
+        now[0] += TimeUnit.SECONDS.toNanos(10);
+        assertEquals(4, bucket.getRemaining());
+    }
+
+    public void test_tryConsume_cost() {
+        final long[] now = { 0L };
+        final TokenBucket bucket = new TokenBucket(10, 10, () -> now[0]);
+        assertTrue(bucket.tryConsume(2.5));
+        assertEquals(7, bucket.getRemaining());
+        assertFalse(bucket.tryConsume(8));
+        assertEquals(7, bucket.getRemaining());
+
+        // a cost larger than the capacity takes a full bucket
+        now[0] += TimeUnit.SECONDS.toNanos(1);
+        assertTrue(bucket.tryConsume(100));
+        assertEquals(0, bucket.getRemaining());
+        assertEquals(1, bucket.getRetryAfterSeconds(10));
+    }
+
+    public void test_reserve() {
+        final long[] now = { 0L };
+        final TokenBucket bucket = new TokenBucket(1, 2, () -> now[0]);
+        assertEquals(0, bucket.reserve(1));
+        assertEquals(0, bucket.reserve(1));
+        assertEquals(TimeUnit.SECONDS.toNanos(1), bucket.reserve(1));
+        assertEquals(TimeUnit.SECONDS.toNanos(2), bucket.reserve(1));
+        assertFalse(bucket.tryConsume(1));
+
+        now[0] += TimeUnit.SECONDS.toNanos(3);
+        assertEquals(1, bucket.getRemaining());
+        assertTrue(bucket.tryConsume(1));
+        assertFalse(bucket.tryConsume(1));
+        now[0] += TimeUnit.SECONDS.toNanos(1);
+        assertTrue(bucket.tryConsume(1));
+    }
+
+    public void test_refund() {
+        final long[] now = { 0L };
+        final TokenBucket bucket = new TokenBucket(1, 4, () -> now[0]);
+        assertTrue(bucket.tryConsume(3));
+        bucket.refund(2);
+        assertEquals(3, bucket.getRemaining());
+        // the bucket never exceeds its capacity
+        bucket.refund(10);
+        assertEquals(4, bucket.getRemaining());
+        assertTrue(bucket.tryConsume(4));
+        assertFalse(bucket.tryConsume(1));
+    }
+
+    public void test_hasSameLimits() {
+        final TokenQuota quota1 = new TokenQuota(new TokenBucket(10, 10), null, new TokenBucket(5, 10));
+        assertTrue(quota1.hasSameLimits(new TokenQuota(new TokenBucket(10, 10), null, new TokenBucket(5, 10))));
+        assertFalse(quota1.hasSameLimits(new TokenQuota(new TokenBucket(10, 20), null, new TokenBucket(5, 10))));
+        assertFalse(quota1.hasSameLimits(new TokenQuota(new TokenBucket(10, 10), new TokenBucket(1, 1), new TokenBucket(5, 10))));
+        assertFalse(quota1.hasSameLimits(new TokenQuota(null, null, new TokenBucket(5, 10))));
+    }
+}
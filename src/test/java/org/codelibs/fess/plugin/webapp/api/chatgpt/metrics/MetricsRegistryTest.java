@@ -0,0 +1,54 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.metrics;
+
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+public class MetricsRegistryTest extends TestCase {
+
+    public void test_writeTo() throws Exception {
+        final MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("requests_total", "Requests.", "endpoint", "query").increment();
+        registry.counter("requests_total", "Requests.", "endpoint", "upsert").add(3);
+        registry.counter("requests_total", "Requests.", "endpoint", "query").increment();
+        final Histogram histogram = registry.histogram("latency_seconds", "Latency.", new double[] { 0.1, 1 }, "endpoint", "q\"x");
+        histogram.observe(0.05);
+        histogram.observe(0.5);
+        histogram.observe(5);
+        registry.register("size", "Size.", "gauge", () -> 1.5);
+
+        final StringWriter out = new StringWriter();
+        registry.writeTo(out);
+        assertEquals("""
+                # HELP latency_seconds Latency.
+                # TYPE latency_seconds histogram
+                latency_seconds_bucket{endpoint="q\\"x",le="0.1"} 1
+                latency_seconds_bucket{endpoint="q\\"x",le="1"} 2
+                latency_seconds_bucket{endpoint="q\\"x",le="+Inf"} 3
+                latency_seconds_sum{endpoint="q\\"x"} 5.55
+                latency_seconds_count{endpoint="q\\"x"} 3
+                # HELP requests_total Requests.
+                # TYPE requests_total counter
+                requests_total{endpoint="query"} 2
+                requests_total{endpoint="upsert"} 3
+                # HELP size Size.
+                # TYPE size gauge
+                size 1.5
+                """, out.toString());
+    }
+}
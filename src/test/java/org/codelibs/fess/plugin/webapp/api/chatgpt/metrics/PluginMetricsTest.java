@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.metrics;
+
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+public class PluginMetricsTest extends TestCase {
+
+    public void test_recordRequest() throws Exception {
+        final PluginMetrics metrics = new PluginMetrics();
+        metrics.recordRequest("query", 200, 2_000_000L, 100);
+        metrics.recordRequest("query", 429, 1_000_000L, 50);
+        metrics.recordRequest("query", 429, 1_000_000L, 50);
+        metrics.recordRequest("upsert", 500, 1_000_000L, 50);
+
+        final StringWriter out = new StringWriter();
+        metrics.writeTo(out);
+        final String text = out.toString();
+        assertTrue(text, text.contains("chatgpt_requests_total{endpoint=\"query\"} 3\n"));
+        assertTrue(text, text.contains("chatgpt_requests_total{endpoint=\"upsert\"} 1\n"));
+        assertTrue(text, text.contains("chatgpt_errors_total{endpoint=\"query\",status=\"429\"} 2\n"));
+        assertTrue(text, text.contains("chatgpt_errors_total{endpoint=\"upsert\",status=\"500\"} 1\n"));
+        assertFalse(text, text.contains("status=\"200\""));
+        assertTrue(text, text.contains("chatgpt_request_duration_seconds_count{endpoint=\"query\"} 3\n"));
+        assertTrue(text, text.contains("chatgpt_response_size_bytes_sum{endpoint=\"query\"} 200\n"));
+    }
+
+    public void test_recordRequest_reuse() {
+        final PluginMetrics metrics = new PluginMetrics();
+        metrics.recordRequest("query", 404, 1_000_000L, 50);
+        final PluginMetrics.EndpointMetrics endpointMetrics = metrics.getEndpointMetrics("query");
+        assertSame(endpointMetrics, metrics.getEndpointMetrics(new String("query")));
+        assertSame(endpointMetrics.getErrors(404), endpointMetrics.getErrors(404));
+        assertSame(endpointMetrics.getPhaseDuration(PluginMetrics.PHASE_AUTH), endpointMetrics.getPhaseDuration("auth"));
+        // statuses out of the range are looked up in the registry
+        assertSame(endpointMetrics.getErrors(999), endpointMetrics.getErrors(999));
+    }
+
+    public void test_recordPhase() throws Exception {
+        final PluginMetrics metrics = new PluginMetrics();
+        metrics.recordPhase("query", PluginMetrics.PHASE_AUTH, 1_000_000L);
+        metrics.recordPhase("query", PluginMetrics.PHASE_SEARCH, 1_000_000L);
+        metrics.recordPhase("query", PluginMetrics.PHASE_SEARCH, 1_000_000L);
+
+        final StringWriter out = new StringWriter();
+        metrics.writeTo(out);
+        final String text = out.toString();
+        assertTrue(text, text.contains("chatgpt_phase_duration_seconds_count{endpoint=\"query\",phase=\"auth\"} 1\n"));
+        assertTrue(text, text.contains("chatgpt_phase_duration_seconds_count{endpoint=\"query\",phase=\"search\"} 2\n"));
+    }
+
+    public void test_recordBulk() throws Exception {
+        final PluginMetrics metrics = new PluginMetrics();
+        metrics.recordBulk(100, 1_000_000L, false);
+        metrics.recordBulk(20, 1_000_000L, true);
+
+        final StringWriter out = new StringWriter();
+        metrics.writeTo(out);
+        final String text = out.toString();
+        assertTrue(text, text.contains("# TYPE chatgpt_bulk_request_documents histogram\n"));
+        assertTrue(text, text.contains("chatgpt_bulk_request_documents_bucket{le=\"25\"} 1\n"));
+        assertTrue(text, text.contains("chatgpt_bulk_request_documents_sum 120\n"));
+        assertTrue(text, text.contains("chatgpt_bulk_duration_seconds_count 2\n"));
+        assertTrue(text, text.contains("chatgpt_bulk_failures_total 1\n"));
+    }
+}
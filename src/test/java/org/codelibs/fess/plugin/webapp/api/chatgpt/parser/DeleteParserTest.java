@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.parser;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.DeleteRequest;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Query;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Source;
+
+import junit.framework.TestCase;
+
+public class DeleteParserTest extends TestCase {
+
+    public void test_parse() throws Exception {
+        String body = """
+                {
+                  "ids": ["ID1", 2, "ID3"],
+                  "filter": {
+                    "source": "chat",
+                    "source_id": "SOURCE_ID",
+                    "end_date": "2013-05-05 12:30:45"
+                  },
+                  "unknown": { "ids": ["IGNORED"] }
+                }""";
+
+        try (DeleteParser parser = new DeleteParser(new ByteArrayInputStream(body.getBytes()))) {
+            DeleteRequest request = parser.parse();
+            assertEquals(Arrays.asList("ID1", "ID3"), request.getIdList());
+            assertFalse(request.isDeleteAll());
+            assertFalse(request.isEmpty());
+            Query.Filter filter = request.getFilter();
+            assertEquals(Source.CHAT, filter.getSource());
+            assertEquals("SOURCE_ID", filter.getSourceId());
+            assertNull(filter.getStartDate());
+            assertEquals("2013-05-05T12:30:45.000Z", filter.getEndDate());
+            assertFalse(filter.isEmpty());
+        }
+    }
+
+    public void test_parse_deleteAll() throws Exception {
+        try (DeleteParser parser = new DeleteParser(new ByteArrayInputStream("{\"delete_all\":true}".getBytes()))) {
+            DeleteRequest request = parser.parse();
+            assertTrue(request.isDeleteAll());
+            assertEquals(Collections.emptyList(), request.getIdList());
+            assertNull(request.getFilter());
+            assertFalse(request.isEmpty());
+        }
+    }
+
+    public void test_parse_empty() throws Exception {
+        try (DeleteParser parser = new DeleteParser(new ByteArrayInputStream("{}".getBytes()))) {
+            assertTrue(parser.parse().isEmpty());
+        }
+        try (DeleteParser parser = new DeleteParser(new ByteArrayInputStream("{\"filter\":{\"source\":\"unknown\"}}".getBytes()))) {
+            final DeleteRequest request = parser.parse();
+            assertTrue(request.getFilter().isEmpty());
+            assertTrue(request.isEmpty());
+        }
+        try (DeleteParser parser = new DeleteParser(new ByteArrayInputStream("{\"delete_all\":\"true\",\"ids\":[]}".getBytes()))) {
+            assertTrue(parser.parse().isEmpty());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.parser;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.codelibs.fess.api.WebApiManagerFactory;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.auth.PluginAuthenticator;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Document;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Source;
+import org.codelibs.fess.util.ComponentUtil;
+import org.dbflute.utflute.lastaflute.LastaFluteTestCase;
+
+public class DocumentParserTest extends LastaFluteTestCase {
+
+    private WebApiManagerFactory webApiManagerFactory;
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        ComponentUtil.setFessConfig(new FessConfig.SimpleImpl() {
+            private static final long serialVersionUID = 1L;
+        });
+        webApiManagerFactory = new WebApiManagerFactory();
+        ComponentUtil.register(webApiManagerFactory, "webApiManagerFactory");
+        PluginAuthenticator pluginAuthenticator = new PluginAuthenticator();
+        ComponentUtil.register(pluginAuthenticator, "pluginAuthenticator");
+        super.setUp();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        ComponentUtil.setFessConfig(null);
+        super.tearDown();
+    }
+
+    public void test_parse() throws Exception {
+        String body = """
+                {
+                  "documents": [
+                    {
+                      "id": "ID1",
+                      "text": "TEXT1",
+                      "metadata": {
+                        "source": "email",
+                        "source_id": "SOURCE_ID",
+                        "url": "https://example.com/",
+                        "author": "AUTHOR",
+                        "created_at": "2013-05-05 12:30:45"
+                      }
+                    },
+                    {
+                      "metadata": { "source": "file" },
+                      "text": "TEXT2"
+                    },
+                    {
+                      "id": "ID3",
+                      "text": 3
+                    }
+                  ]
+                }""";
+
+        try (DocumentParser parser = new DocumentParser(new ByteArrayInputStream(body.getBytes()))) {
+            Document[] documents = parser.parse();
+            assertEquals(2, documents.length);
+            Document document = documents[0];
+            assertEquals("ID1", document.getId());
+            assertEquals("TEXT1", document.getText());
+            Document.Metadata metadata = document.getMetadata();
+            assertEquals(Source.EMAIL, metadata.getSource());
+            assertEquals("SOURCE_ID", metadata.getSourceId());
+            assertEquals("https://example.com/", metadata.getUrl());
+            assertEquals("AUTHOR", metadata.getAuthor());
+            assertEquals(1367757045000L, metadata.getCreatedAt());
+
+            document = documents[1];
+            assertNull(document.getId());
+            assertEquals("TEXT2", document.getText());
+            assertEquals(Source.FILE, document.getMetadata().getSource());
+        }
+    }
+
+    public void test_parse_embedding() throws Exception {
+        String body = """
+                {"documents":[{"text":"a","embedding":[1,0.25]},{"text":"b"}]}""";
+
+        try (DocumentParser parser = new DocumentParser(new ByteArrayInputStream(body.getBytes()))) {
+            Document[] documents = parser.parse();
+            assertEquals(2, documents.length);
+            assertTrue(Arrays.equals(new float[] { 1.0f, 0.25f }, documents[0].getEmbedding()));
+            assertNull(documents[1].getEmbedding());
+        }
+    }
+
+    public void test_stream() throws Exception {
+        String body = """
+                {"documents":[{"text":"a"},{"text":"b"},{"text":"c"}],"ignored":{}}""";
+
+        try (DocumentParser parser = new DocumentParser(new ByteArrayInputStream(body.getBytes()))) {
+            final Iterator<Document> iterator = parser.iterator();
+            assertTrue(iterator.hasNext());
+            assertEquals("a", iterator.next().getText());
+            assertEquals("b", iterator.next().getText());
+            assertEquals("c", iterator.next().getText());
+            assertFalse(iterator.hasNext());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.parser;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.codelibs.fess.plugin.webapp.api.chatgpt.exception.FessChatGptResponseException;
+
+import junit.framework.TestCase;
+
+public class MultipartParserTest extends TestCase {
+
+    public void test_getBoundary() {
+        assertEquals("abc", MultipartParser.getBoundary("multipart/form-data; boundary=abc"));
+        assertEquals("a b", MultipartParser.getBoundary("Multipart/Form-Data; charset=UTF-8; boundary=\"a b\""));
+        assertNull(MultipartParser.getBoundary("application/json"));
+        assertNull(MultipartParser.getBoundary("multipart/form-data"));
+        assertNull(MultipartParser.getBoundary(null));
+    }
+
+    public void test_parse() throws Exception {
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            content.append("line ").append(i).append("\r\n-");
+        }
+        final String body = "preamble\r\n" //
+                + "--BOUNDARY\r\n" //
+                + "Content-Disposition: form-data; name=\"metadata\"\r\n" //
+                + "\r\n" //
+                + "{\"source\":\"file\"}\r\n" //
+                + "--BOUNDARY\r\n" //
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"test.txt\"\r\n" //
+                + "Content-Type: text/plain\r\n" //
+                + "\r\n" //
+                + content + "\r\n" //
+                + "--BOUNDARY--\r\n";
+
+        Path file;
+        try (MultipartParser parser =
+                new MultipartParser(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), "BOUNDARY", 0)) {
+            final List<MultipartParser.Part> partList = parser.parse();
+            assertEquals(2, partList.size());
+
+            MultipartParser.Part part = partList.get(0);
+            assertEquals("metadata", part.getName());
+            assertNull(part.getFilename());
+            assertNull(part.getFile());
+            assertEquals("{\"source\":\"file\"}", part.getValue());
+
+            part = partList.get(1);
+            assertEquals("file", part.getName());
+            assertEquals("test.txt", part.getFilename());
+            assertEquals("text/plain", part.getContentType());
+            file = part.getFile();
+            assertEquals(content.toString(), new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        }
+        assertFalse(Files.exists(file));
+    }
+
+    public void test_parse_tooLarge() throws Exception {
+        final String body = "--BOUNDARY\r\n" //
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"test.txt\"\r\n" //
+                + "\r\n" //
+                + "0123456789\r\n" //
+                + "--BOUNDARY--\r\n";
+
+        try (MultipartParser parser =
+                new MultipartParser(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), "BOUNDARY", 5)) {
+            parser.parse();
+            fail();
+        } catch (final FessChatGptResponseException e) {
+            assertEquals(413, e.getStatus());
+        }
+    }
+}
@@ -16,6 +16,9 @@
 package org.codelibs.fess.plugin.webapp.api.chatgpt.parser;
 
 import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.lucene.queryparser.classic.QueryParser.Operator;
 import org.codelibs.fess.api.WebApiManagerFactory;
@@ -23,6 +26,7 @@ import org.codelibs.fess.mylasta.direction.FessConfig;
 import org.codelibs.fess.plugin.webapp.api.chatgpt.auth.PluginAuthenticator;
 import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Query;
 import org.codelibs.fess.plugin.webapp.api.chatgpt.entity.Source;
+import org.codelibs.fess.plugin.webapp.api.chatgpt.exception.FessChatGptResponseException;
 import org.codelibs.fess.util.ComponentUtil;
 import org.dbflute.utflute.lastaflute.LastaFluteTestCase;
 
@@ -95,4 +99,128 @@ public class QueryParserTest extends LastaFluteTestCase {
 
         }
     }
+
+    public void test_parse_skipUnknownFields() throws Exception {
+        String body = """
+                {
+                  "options": { "queries": [ { "query": "IGNORED" } ] },
+                  "queries": [
+                    { "query": "Q1", "unknown": { "a": [ 1, 2, { "b": "c" } ] }, "top_k": "5" },
+                    { "top_k": 1 },
+                    "invalid",
+                    { "filter": { "source": "chat", "author": 1 }, "query": "Q2" }
+                  ]
+                }""";
+
+        try (QueryParser parser = new QueryParser(new ByteArrayInputStream(body.getBytes()))) {
+            Query[] queries = parser.parse();
+            assertEquals(2, queries.length);
+            assertEquals("Q1", queries[0].getQuery());
+            assertEquals(3, queries[0].getTopK());
+            assertEquals("Q2", queries[1].getQuery());
+            assertEquals(Source.CHAT, queries[1].getFilter().getSource());
+            assertNull(queries[1].getFilter().getAuthor());
+        }
+    }
+
+    public void test_parse_embedding() throws Exception {
+        String body = """
+                {
+                  "queries": [
+                    { "query": "Q1", "embedding": [0.5, -1, 2.25e-3] },
+                    { "query": "Q2", "embedding": "invalid" }
+                  ]
+                }""";
+
+        try (QueryParser parser = new QueryParser(new ByteArrayInputStream(body.getBytes()))) {
+            Query[] queries = parser.parse();
+            assertEquals(2, queries.length);
+            assertTrue(Arrays.equals(new float[] { 0.5f, -1.0f, 0.00225f }, queries[0].getEmbedding()));
+            assertNull(queries[1].getEmbedding());
+        }
+
+        body = """
+                { "queries": [{ "query": "Q1", "embedding": [0.5, "invalid"] }] }""";
+        try (QueryParser parser = new QueryParser(new ByteArrayInputStream(body.getBytes()))) {
+            parser.parse();
+            fail();
+        } catch (final FessChatGptResponseException e) {
+            assertEquals(HttpServletResponse.SC_BAD_REQUEST, e.getStatus());
+        }
+    }
+
+    public void test_parse_highlight() throws Exception {
+        String body = """
+                {
+                  "queries": [
+                    { "query": "Q1", "highlight": { "fragment_size": 200, "number_of_fragments": 5, "include_text": true } },
+                    { "query": "Q2", "highlight": true },
+                    { "query": "Q3", "highlight": false },
+                    { "query": "Q4" }
+                  ]
+                }""";
+
+        try (QueryParser parser = new QueryParser(new ByteArrayInputStream(body.getBytes()))) {
+            Query[] queries = parser.parse();
+            assertEquals(4, queries.length);
+            assertEquals(200, queries[0].getHighlight().getFragmentSize());
+            assertEquals(5, queries[0].getHighlight().getNumberOfFragments());
+            assertTrue(queries[0].getHighlight().isTextIncluded());
+            assertEquals(0, queries[1].getHighlight().getFragmentSize());
+            assertEquals(0, queries[1].getHighlight().getNumberOfFragments());
+            assertFalse(queries[1].getHighlight().isTextIncluded());
+            assertNull(queries[2].getHighlight());
+            assertNull(queries[3].getHighlight());
+        }
+    }
+
+    public void test_parse_fields() throws Exception {
+        String body = """
+                {
+                  "queries": [
+                    { "query": "Q1", "fields": { "include": ["url", "source_id", 1], "exclude": ["text"] } },
+                    { "query": "Q2", "fields": { "include": [] } },
+                    { "query": "Q3" }
+                  ]
+                }""";
+
+        try (QueryParser parser = new QueryParser(new ByteArrayInputStream(body.getBytes()))) {
+            Query[] queries = parser.parse();
+            assertEquals(3, queries.length);
+            assertEquals(Arrays.asList("url", "source_id"), queries[0].getIncludeFieldList());
+            assertEquals(Arrays.asList("text"), queries[0].getExcludeFieldList());
+            assertTrue(queries[1].getIncludeFieldList().isEmpty());
+            assertNull(queries[1].getExcludeFieldList());
+            assertNull(queries[2].getIncludeFieldList());
+            assertNull(queries[2].getExcludeFieldList());
+        }
+    }
+
+    public void test_parse_cursor() throws Exception {
+        String body = """
+                {
+                  "queries": [
+                    { "query": "Q1", "paginate": true },
+                    { "query": "Q2", "cursor": "abc" },
+                    { "query": "Q3", "cursor": "" }
+                  ]
+                }""";
+
+        try (QueryParser parser = new QueryParser(new ByteArrayInputStream(body.getBytes()))) {
+            Query[] queries = parser.parse();
+            assertEquals(3, queries.length);
+            assertTrue(queries[0].isPaginated());
+            assertNull(queries[0].getCursor());
+            assertTrue(queries[1].isPaginated());
+            assertEquals("abc", queries[1].getCursor());
+            assertFalse(queries[2].isPaginated());
+            assertNull(queries[2].getCursor());
+        }
+    }
+
+    public void test_parse_empty() throws Exception {
+        try (QueryParser parser = new QueryParser(new ByteArrayInputStream("{}".getBytes()))) {
+            assertEquals(0, parser.parse().length);
+        }
+    }
 }
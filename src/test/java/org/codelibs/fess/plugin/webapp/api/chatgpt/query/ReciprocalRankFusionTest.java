@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.query;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codelibs.fess.Constants;
+
+import junit.framework.TestCase;
+
+public class ReciprocalRankFusionTest extends TestCase {
+
+    public void test_fuse() {
+        final List<Map<String, Object>> keywordList = Arrays.asList(doc("a", 10.0f), doc("b", 5.0f), doc("c", 1.0f));
+        final List<Map<String, Object>> knnList = Arrays.asList(doc("c", 0.9f), doc("a", 0.8f), doc("d", 0.7f));
+        final List<Map<String, Object>> fusedList = new ReciprocalRankFusion(60).fuse(Arrays.asList(keywordList, knnList), "_id", 3);
+        assertEquals(3, fusedList.size());
+        assertEquals("a", fusedList.get(0).get("_id"));
+        assertEquals("c", fusedList.get(1).get("_id"));
+        assertEquals("b", fusedList.get(2).get("_id"));
+        final float maxScore = 2.0f / 61;
+        assertEquals((1.0f / 61 + 1.0f / 62) / maxScore, (Float) fusedList.get(0).get(Constants.SCORE), 0.0001f);
+        assertEquals((1.0f / 63 + 1.0f / 61) / maxScore, (Float) fusedList.get(1).get(Constants.SCORE), 0.0001f);
+        assertEquals((1.0f / 62) / maxScore, (Float) fusedList.get(2).get(Constants.SCORE), 0.0001f);
+        // the input documents are not modified
+        assertEquals(10.0f, keywordList.get(0).get(Constants.SCORE));
+    }
+
+    public void test_fuse_top() {
+        final List<Map<String, Object>> keywordList = Arrays.asList(doc("a", 10.0f), doc("b", 5.0f));
+        final List<Map<String, Object>> knnList = Arrays.asList(doc("a", 0.9f));
+        final List<Map<String, Object>> fusedList = new ReciprocalRankFusion(60).fuse(Arrays.asList(keywordList, knnList), "_id", 10);
+        assertEquals(2, fusedList.size());
+        assertEquals(1.0f, (Float) fusedList.get(0).get(Constants.SCORE), 0.0001f);
+        assertEquals("b", fusedList.get(1).get("_id"));
+    }
+
+    public void test_fuse_empty() {
+        final List<Map<String, Object>> knnList = Arrays.asList(doc("a", 0.9f), doc("b", 0.8f));
+        final List<Map<String, Object>> fusedList =
+                new ReciprocalRankFusion(60).fuse(Arrays.asList(Collections.emptyList(), knnList), "_id", 10);
+        assertEquals(2, fusedList.size());
+        assertEquals("a", fusedList.get(0).get("_id"));
+        assertEquals("b", fusedList.get(1).get("_id"));
+
+        assertTrue(new ReciprocalRankFusion(60).fuse(Collections.emptyList(), "_id", 10).isEmpty());
+    }
+
+    private static Map<String, Object> doc(final String id, final float score) {
+        final Map<String, Object> doc = new HashMap<>();
+        doc.put("_id", id);
+        doc.put(Constants.SCORE, score);
+        return doc;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.query;
+
+import junit.framework.TestCase;
+
+public class SearchCursorTest extends TestCase {
+
+    public void test_encode() {
+        final SearchCursor cursor = new SearchCursor("1a2b", 20.5f, 12.345678f, "doc:1");
+        final String token = cursor.encode();
+        assertFalse(token.contains("doc"));
+        assertFalse(token.contains("="));
+
+        final SearchCursor decoded = SearchCursor.decode(token);
+        assertEquals("1a2b", decoded.getFingerprint());
+        assertEquals(20.5f, decoded.getMaxScore());
+        assertEquals(12.345678f, decoded.getScore());
+        assertEquals("doc:1", decoded.getDocId());
+        assertEquals(2, decoded.getSearchAfter().length);
+        assertEquals(12.345678f, decoded.getSearchAfter()[0]);
+        assertEquals("doc:1", decoded.getSearchAfter()[1]);
+    }
+
+    public void test_decode_invalid() {
+        for (final String token : new String[] { "", "!!", "MTphYmM6eDpk", new SearchCursor("a", 1.0f, 1.0f, "").encode() }) {
+            try {
+                SearchCursor.decode(token);
+                fail(token);
+            } catch (final IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+import org.codelibs.core.io.InputStreamUtil;
+
+import junit.framework.TestCase;
+
+public class StaticResourceTest extends TestCase {
+
+    public void test_create() throws IOException {
+        final byte[] content = "abcdefghij".repeat(100).getBytes("UTF-8");
+        final StaticResource resource = new StaticResource(content, "text/plain", 1234567L, "public, max-age=60");
+        assertEquals(1234000L, resource.getLastModified());
+        assertEquals(34, resource.getEtag().length());
+        assertEquals(resource.getEtag(), new StaticResource(content, "text/plain", 0L, null).getEtag());
+        assertNotNull(resource.gzipContent);
+        assertTrue(resource.gzipContent.length < content.length);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(resource.gzipContent))) {
+            assertEquals(new String(content, "UTF-8"), new String(InputStreamUtil.getBytes(in), "UTF-8"));
+        }
+
+        final StaticResource small = new StaticResource("a".getBytes("UTF-8"), "text/plain", 0L, null);
+        assertNull(small.gzipContent);
+    }
+
+    public void test_acceptsGzip() {
+        assertTrue(StaticResource.acceptsGzip("gzip"));
+        assertTrue(StaticResource.acceptsGzip("deflate, gzip;q=0.5"));
+        assertTrue(StaticResource.acceptsGzip("*"));
+        assertFalse(StaticResource.acceptsGzip("gzip;q=0"));
+        assertFalse(StaticResource.acceptsGzip("deflate, br"));
+        assertFalse(StaticResource.acceptsGzip(null));
+    }
+}
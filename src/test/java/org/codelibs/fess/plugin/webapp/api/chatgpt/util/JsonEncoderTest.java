@@ -0,0 +1,76 @@
+/*
+ * Copyright 2012-2024 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.chatgpt.util;
+
+import java.util.Base64;
+import java.util.Random;
+
+import org.apache.commons.text.StringEscapeUtils;
+
+import junit.framework.TestCase;
+
+public class JsonEncoderTest extends TestCase {
+
+    public void test_appendEscaped() {
+        final String[] values = { "", "fess", "a\"b\\c/d", "\b\f\n\r\t", "\u0000\u0001\u001f\u007f\u0080", "あいう",
+                "😀", "\ud83d", "</script>", "a".repeat(10000) + "あ" };
+        for (final String value : values) {
+            final JsonEncoder encoder = new JsonEncoder(1);
+            encoder.appendEscaped(value);
+            assertEquals(StringEscapeUtils.escapeJson(value), encoder.toString());
+        }
+    }
+
+    public void test_appendEscaped_null() {
+        final JsonEncoder encoder = new JsonEncoder();
+        encoder.appendEscaped(null);
+        assertEquals("", encoder.toString());
+    }
+
+    public void test_append() {
+        final JsonEncoder encoder = new JsonEncoder(4);
+        encoder.append('{').append("\"a\":").append(10).append(",\"b\":").append(0.5f).append(",\"c\":").appendString("x/y").append('}');
+        assertEquals("{\"a\":10,\"b\":0.5,\"c\":\"x\\/y\"}", encoder.toString());
+
+        final float[] values = { 0.0f, 1.0f, 0.123456789f, 1.0E-5f, 1.0E10f, -3.5f, Float.MIN_VALUE, Float.MAX_VALUE };
+        for (final float value : values) {
+            encoder.reset();
+            encoder.append(value);
+            assertEquals(Float.toString(value), encoder.toString());
+        }
+    }
+
+    public void test_appendBase64() {
+        final Random random = new Random(1);
+        for (int size = 0; size < 10; size++) {
+            final byte[] data = new byte[size];
+            random.nextBytes(data);
+            final JsonEncoder encoder = new JsonEncoder(1);
+            encoder.appendBase64(data, 0, size);
+            assertEquals(Base64.getEncoder().encodeToString(data), encoder.toString());
+        }
+    }
+
+    public void test_reset() {
+        final JsonEncoder encoder = new JsonEncoder(8);
+        encoder.appendString("あ".repeat(100));
+        assertEquals(602, encoder.length());
+        encoder.reset();
+        assertEquals(0, encoder.length());
+        encoder.appendString("fess");
+        assertEquals("\"fess\"", encoder.toString());
+    }
+}